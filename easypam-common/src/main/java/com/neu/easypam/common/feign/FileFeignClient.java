@@ -30,9 +30,21 @@ public interface FileFeignClient {
     @GetMapping("/internal/{fileId}/download-url")
     Result<String> getShareDownloadUrl(@PathVariable("fileId") Long fileId);
 
+    /**
+     * 内部接口：获取分享下载的重定向地址（未启用重定向时返回 null）
+     */
+    @GetMapping("/internal/{fileId}/redirect-url")
+    Result<String> getSharedRedirectUrl(@PathVariable("fileId") Long fileId);
+
     @PostMapping("/internal/save-shared")
     Result<FileInfoDTO> saveShareFile(@RequestBody SaveShareDTO dto);
 
+    /**
+     * 内部接口：提交保存分享的后台任务（大文件夹），返回任务ID
+     */
+    @PostMapping("/internal/save-shared/job")
+    Result<Long> submitSaveShareJob(@RequestBody SaveShareDTO dto);
+
     /**
      * 内部接口：获取文件夹内容（用于分享浏览）
      */
@@ -61,6 +61,7 @@ public class NotifyMessage implements Serializable {
         public static final String SHARE_RECEIVED = "SHARE_RECEIVED";      // 收到分享
         public static final String STORAGE_WARNING = "STORAGE_WARNING";    // 存储空间预警
         public static final String STORAGE_FULL = "STORAGE_FULL";          // 存储空间已满
+        public static final String FILE_JOB_FINISHED = "FILE_JOB_FINISHED"; // 后台文件任务结束
     }
 
     public static NotifyMessage create(String type, Long userId, String title, String content) {
@@ -144,4 +144,18 @@ public class NotifyProducer {
         );
         send(msg);
     }
+
+    /**
+     * 发送后台文件任务结束通知（大目录复制 / 删除等）
+     */
+    public void sendFileJobFinished(Long userId, Long jobId, String title, String content) {
+        NotifyMessage msg = NotifyMessage.create(
+                NotifyMessage.Type.FILE_JOB_FINISHED,
+                userId,
+                title,
+                content
+        );
+        msg.setBizId(jobId);
+        send(msg);
+    }
 }
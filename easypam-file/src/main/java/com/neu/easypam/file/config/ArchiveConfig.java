@@ -0,0 +1,66 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 打包下载配置
+ * 小文件由后台线程按顺序预取到内存，写 ZIP 时不再逐个等待对象存储往返
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.archive")
+public class ArchiveConfig {
+    /**
+     * 预取线程数（所有打包请求共享）
+     */
+    private int prefetchThreads = 16;
+
+    /**
+     * 单个打包请求最多提前预取的文件数
+     */
+    private int prefetchCount = 32;
+
+    /**
+     * 单个打包请求预取占用的内存上限（字节）
+     */
+    private long prefetchMemory = 64L * 1024 * 1024;
+
+    /**
+     * 所有打包请求预取占用的内存总上限（字节），用满后其余文件改为流式读取
+     */
+    private long prefetchTotalMemory = 256L * 1024 * 1024;
+
+    /**
+     * 允许预取到内存的最大文件大小（字节），更大的文件写入时直接流式读取
+     */
+    private long prefetchMaxFileSize = 8L * 1024 * 1024;
+
+    /**
+     * 打包时每次查询子孙节点的根文件夹数量
+     */
+    private int queryBatchSize = 500;
+
+    /**
+     * 已压缩格式的扩展名，这类文件不再压缩
+     */
+    private List<String> storedExtensions = List.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp4", "mov", "mkv", "avi", "webm", "flv",
+            "mp3", "aac", "m4a", "ogg", "flac",
+            "zip", "rar", "7z", "gz", "tgz", "bz2", "xz", "zst",
+            "docx", "xlsx", "pptx", "apk", "jar");
+
+    /**
+     * 浏览 ZIP 时允许读取的中央目录最大字节数
+     */
+    private long zipDirectoryMaxSize = 64L * 1024 * 1024;
+
+    /**
+     * 本地缓存的 ZIP 中央目录数量
+     */
+    private int zipDirectoryCacheSize = 64;
+}
@@ -0,0 +1,39 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 下载带宽限制配置（令牌桶），可通过 Nacos 动态调整，修改后对进行中的下载立即生效
+ * 速率单位为字节/秒，0 表示不限制
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.bandwidth")
+public class BandwidthConfig {
+    /**
+     * 是否启用带宽限制
+     */
+    private boolean enabled = false;
+
+    /**
+     * 单个文件服务节点的总下载速率
+     */
+    private long globalRate = 0;
+
+    /**
+     * 单个用户的下载速率
+     */
+    private long userRate = 0;
+
+    /**
+     * 单个分享的下载速率（分享下载不区分访问者）
+     */
+    private long shareRate = 0;
+
+    /**
+     * 允许的突发时长（毫秒），桶容量 = 速率 × 突发时长
+     */
+    private long burstMillis = 1000;
+}
@@ -0,0 +1,39 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 块存储配置（内容定义分块 + 块级去重）
+ * 开启后，超过阈值的文件（单次上传或分片上传合并后）按 FastCDC 切分为变长块，相同内容的块只存一份
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.block-store")
+public class BlockStoreConfig {
+    /**
+     * 是否启用块存储
+     */
+    private boolean enabled = false;
+
+    /**
+     * 启用块存储的最小文件大小（字节），小文件仍整体存储
+     */
+    private long minFileSize = 64L * 1024 * 1024;
+
+    /**
+     * 最小块大小（字节）
+     */
+    private int minBlockSize = 512 * 1024;
+
+    /**
+     * 平均块大小（字节），需为2的幂
+     */
+    private int avgBlockSize = 1024 * 1024;
+
+    /**
+     * 最大块大小（字节）
+     */
+    private int maxBlockSize = 4 * 1024 * 1024;
+}
@@ -3,6 +3,7 @@ package com.neu.easypam.file.config;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.entity.FileStorage;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -27,6 +28,29 @@ public class CacheConfig {
                 .build();
     }
 
+    /**
+     * 存储记录本地缓存（md5 -> FileStorage），用于秒传探测
+     */
+    @Bean
+    public Cache<String, FileStorage> fileStorageCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 预签名地址本地缓存（缓存键 -> "复用截止时间戳|地址"），读取时按复用截止时间校验
+     */
+    @Bean
+    public Cache<String, String> presignedUrlCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(50000)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+    }
+
     /**
      * RedisTemplate 配置（L2）
      */
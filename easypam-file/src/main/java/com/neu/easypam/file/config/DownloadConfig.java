@@ -0,0 +1,58 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 下载配置
+ * 重定向模式下服务只做鉴权，随后 302 跳转到短时效的预签名地址，由客户端直接从对象存储下载，
+ * 文件内容不再经过文件服务（及分享服务）转发
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.download")
+public class DownloadConfig {
+
+    public enum Mode {
+        /**
+         * 由文件服务读取对象存储并转发给客户端
+         */
+        STREAM,
+        /**
+         * 302 重定向到预签名地址（启用用户级 / 分享级限速时，受限的下载仍转发）
+         */
+        REDIRECT
+    }
+
+    /**
+     * 下载模式
+     */
+    private Mode mode = Mode.STREAM;
+
+    /**
+     * 预签名地址有效期（秒），只需覆盖客户端发起请求的时间
+     */
+    private int redirectExpireSeconds = 300;
+
+    /**
+     * 重定向的最小文件大小（字节），更小的文件仍直接转发，省去一次跳转
+     */
+    private long redirectMinSize = 0;
+
+    /**
+     * 转发模式下使用 Servlet 异步 I/O：连接只在可写时占用线程，
+     * 慢速客户端不再长时间占用 Tomcat 工作线程
+     */
+    private boolean nonBlocking = false;
+
+    /**
+     * 非阻塞下载读取对象存储的线程数，只在读取数据块时占用，与连接数无关
+     */
+    private int ioThreads = 16;
+
+    /**
+     * 非阻塞下载每次读取并写出的数据块大小（字节）
+     */
+    private int chunkSize = 64 * 1024;
+}
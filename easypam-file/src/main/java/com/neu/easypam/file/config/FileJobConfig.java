@@ -0,0 +1,41 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 后台文件任务配置
+ * 大目录复制 / 删除等操作提交为后台任务，按批执行、每批单独提交，
+ * 批次之间短暂停顿，避免长事务长时间持有行锁、占满数据库
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.job")
+public class FileJobConfig {
+
+    /**
+     * 同时执行的任务数（每个实例）
+     */
+    private int threads = 2;
+
+    /**
+     * 每批处理的节点数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 批次之间的停顿（毫秒），让出数据库给在线请求
+     */
+    private long batchIntervalMillis = 50;
+
+    /**
+     * 每个用户同时排队 / 执行中的任务上限
+     */
+    private int maxActivePerUser = 5;
+
+    /**
+     * 心跳超时（秒）：超过该时间未推进的任务视为执行实例已中断，由其他实例从检查点接管
+     */
+    private long staleTimeoutSeconds = 600;
+}
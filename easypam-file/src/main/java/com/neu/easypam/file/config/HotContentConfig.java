@@ -0,0 +1,39 @@
+package com.neu.easypam.file.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热点小文件内容缓存配置
+ * 按热点访问排行准入，内容以堆外内存缓存在节点本地，按存储 MD5 去重
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.hot-content")
+public class HotContentConfig {
+    /**
+     * 是否启用内容缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 堆外内存上限（字节），包含已移出缓存但仍在被读取的内容
+     */
+    private long maxMemory = 256L * 1024 * 1024;
+
+    /**
+     * 可缓存的最大文件大小（字节）
+     */
+    private long maxFileSize = 4L * 1024 * 1024;
+
+    /**
+     * 从热点排行中取前 N 个文件作为准入候选
+     */
+    private int hotTopN = 200;
+
+    /**
+     * 准入的最低访问分数
+     */
+    private double minScore = 3;
+}
@@ -1,10 +1,13 @@
 package com.neu.easypam.file.config;
 
+import com.neu.easypam.file.util.MultipartMinioClient;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Data
 @Configuration
@@ -14,12 +17,41 @@ public class MinioConfig {
     private String accessKey;
     private String secretKey;
     private String bucket;
+    /**
+     * 客户端可访问的对象存储地址，用于签发下载重定向地址和分片直传地址；为空时使用 endpoint
+     */
+    private String publicEndpoint;
+    /**
+     * 签发预签名地址时使用的区域，显式指定以免向对象存储查询
+     */
+    private String region = "us-east-1";
 
     @Bean
+    @Primary
     public MinioClient minioClient() {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    /**
+     * 仅用于签发面向客户端的预签名地址（签名包含 Host，必须使用客户端访问的地址签发）
+     */
+    @Bean
+    public MinioClient presignMinioClient() {
+        return MinioClient.builder()
+                .endpoint(publicEndpoint != null && !publicEndpoint.isEmpty() ? publicEndpoint : endpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+    }
+
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        return new MultipartMinioClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build());
+    }
 }
@@ -4,6 +4,7 @@ import com.neu.easypam.common.result.Result;
 import com.neu.easypam.file.entity.FileInfo;
 import com.neu.easypam.file.service.ChunkUploadService;
 import com.neu.easypam.file.vo.ChunkInitVO;
+import com.neu.easypam.file.vo.ChunkVerifyStatsVO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -26,8 +27,10 @@ public class ChunkUploadController {
             @RequestParam("fileMd5") String fileMd5,
             @RequestParam(value = "parentId", defaultValue = "0") Long parentId,
             @RequestParam(value = "chunkSize", required = false) Integer chunkSize,
+            @RequestParam(value = "presigned", defaultValue = "false") boolean presigned,
             @RequestHeader("X-User-Id") Long userId) {
-        return Result.success(chunkUploadService.initUpload(userId, parentId, fileName, fileSize, fileMd5, chunkSize));
+        return Result.success(chunkUploadService.initUpload(userId, parentId, fileName, fileSize, fileMd5,
+                chunkSize, presigned));
     }
 
     @Operation(summary = "上传分片")
@@ -36,8 +39,20 @@ public class ChunkUploadController {
             @RequestParam("uploadId") Long uploadId,
             @RequestParam("chunkIndex") Integer chunkIndex,
             @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "chunkMd5", required = false) String chunkMd5,
             @RequestHeader("X-User-Id") Long userId) {
-        chunkUploadService.uploadChunk(uploadId, chunkIndex, file, userId);
+        chunkUploadService.uploadChunk(uploadId, chunkIndex, file, chunkMd5, userId);
+        return Result.success();
+    }
+
+    @Operation(summary = "上报直传分片完成")
+    @PostMapping("/report")
+    public Result<Void> reportChunk(
+            @RequestParam("uploadId") Long uploadId,
+            @RequestParam("chunkIndex") Integer chunkIndex,
+            @RequestParam("etag") String etag,
+            @RequestHeader("X-User-Id") Long userId) {
+        chunkUploadService.reportChunk(uploadId, chunkIndex, etag, userId);
         return Result.success();
     }
 
@@ -49,11 +64,27 @@ public class ChunkUploadController {
         return Result.success(chunkUploadService.mergeChunks(uploadId, userId));
     }
 
+    @Operation(summary = "取消分片上传")
+    @PostMapping("/cancel")
+    public Result<Void> cancelUpload(
+            @RequestParam("uploadId") Long uploadId,
+            @RequestHeader("X-User-Id") Long userId) {
+        chunkUploadService.cancelUpload(uploadId, userId);
+        return Result.success();
+    }
+
     @Operation(summary = "获取上传状态")
     @GetMapping("/status")
     public Result<ChunkInitVO> getUploadStatus(
             @RequestParam("uploadId") Long uploadId,
+            @RequestParam(value = "presigned", defaultValue = "false") boolean presigned,
             @RequestHeader("X-User-Id") Long userId) {
-        return Result.success(chunkUploadService.getUploadStatus(uploadId, userId));
+        return Result.success(chunkUploadService.getUploadStatus(uploadId, userId, presigned));
+    }
+
+    @Operation(summary = "获取整文件MD5校验统计")
+    @GetMapping("/md5-stats")
+    public Result<ChunkVerifyStatsVO> getMd5VerifyStats() {
+        return Result.success(chunkUploadService.getMd5VerifyStats());
     }
 }
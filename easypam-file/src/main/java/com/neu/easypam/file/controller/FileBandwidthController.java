@@ -0,0 +1,26 @@
+package com.neu.easypam.file.controller;
+
+import com.neu.easypam.common.result.Result;
+import com.neu.easypam.file.service.BandwidthService;
+import com.neu.easypam.file.vo.BandwidthStatsVO;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@Tag(name = "下载限速")
+@RestController
+@RequestMapping("/file/bandwidth")
+@RequiredArgsConstructor
+public class FileBandwidthController {
+
+    private final BandwidthService bandwidthService;
+
+    @Operation(summary = "获取下载限速统计")
+    @GetMapping("/stats")
+    public Result<BandwidthStatsVO> getStats() {
+        return Result.success(bandwidthService.getStats());
+    }
+}
@@ -6,8 +6,12 @@ import com.neu.easypam.common.mq.OperationLogMessage;
 import com.neu.easypam.common.mq.OperationLogProducer;
 import com.neu.easypam.common.result.Result;
 import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.entity.FileJob;
 import com.neu.easypam.file.service.FileCacheService;
+import com.neu.easypam.file.service.FileJobService;
 import com.neu.easypam.file.service.FileService;
+import com.neu.easypam.file.vo.CursorPageVO;
+import com.neu.easypam.file.vo.ZipEntryVO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
@@ -30,6 +34,7 @@ public class FileController {
     private final FileService fileService;
     private final OperationLogProducer operationLogProducer;
     private final FileCacheService fileCacheService;
+    private final FileJobService fileJobService;
 
     @Operation(summary = "上传文件")
     @PostMapping("/upload")
@@ -46,6 +51,18 @@ public class FileController {
         return Result.success(fileInfo);
     }
 
+    @Operation(summary = "流式上传文件", description = "边接收边写入存储，不落本地临时文件；表单字段 parentId（可选，默认根目录）必须位于 file 之前，位于其后时拒绝上传")
+    @PostMapping("/upload/stream")
+    public Result<FileInfo> uploadStream(
+            @RequestHeader("X-User-Id") Long userId,
+            HttpServletRequest request) {
+        FileInfo fileInfo = fileService.uploadStream(request, userId);
+        operationLogProducer.log(userId, OperationLogMessage.Operation.UPLOAD,
+                "FILE", fileInfo.getId(), fileInfo.getFileName(),
+                getClientIp(request), request.getHeader("User-Agent"));
+        return Result.success(fileInfo);
+    }
+
     @Operation(summary = "秒传检测")
     @PostMapping("/quick-upload")
     public Result<FileInfo> quickUpload(
@@ -86,6 +103,20 @@ public class FileController {
             ,@RequestParam(value = "sortOrder",defaultValue = "desc") String sortOrder) {
         return Result.success(fileService.listFilesByPage(userId,parentId,page,size,sortBy,sortOrder));
     }
+
+    @Operation(summary = "获取文件列表（游标分页）", description = "cursor 为上一页返回的 nextCursor，第一页不传；withTotal 为 true 时才统计总数")
+    @GetMapping("/list/cursor")
+    public Result<CursorPageVO<FileInfo>> listByCursor(
+            @RequestHeader("X-User-Id") Long userId,
+            @RequestParam(value = "parentId", defaultValue = "0") Long parentId,
+            @RequestParam(value = "size", defaultValue = "50") int size,
+            @RequestParam(value = "sortBy", defaultValue = "createTime") String sortBy,
+            @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal) {
+        return Result.success(fileService.listFilesByCursor(userId, parentId, size, sortBy, sortOrder,
+                cursor, withTotal));
+    }
     @Operation(summary = "删除文件")
     @DeleteMapping("/{fileId}")
     public Result<Void> delete(
@@ -185,7 +216,7 @@ public class FileController {
             HttpServletRequest request,
             HttpServletResponse response) throws IOException {
         FileInfo file = fileCacheService.getFileInfo(fileId);
-        fileService.download(fileId, userId, response);
+        fileService.download(fileId, userId, request, response);
         if (file != null) {
             // 记录热点访问
             fileCacheService.recordAccess(fileId);
@@ -203,6 +234,16 @@ public class FileController {
         fileService.batchDownload(fileIds,userId,response);
     }
 
+    @Operation(summary = "下载文件夹（不压缩的TAR，支持断点续传）")
+    @GetMapping("/{folderId}/download-tar")
+    public void downloadFolderAsTar(
+            @PathVariable Long folderId,
+            @RequestHeader("X-User-Id") Long userId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        fileService.downloadFolderAsTar(folderId, userId, request, response);
+    }
+
     // ========== 回收站接口 ==========
 
     @Operation(summary = "移入回收站")
@@ -282,9 +323,17 @@ public class FileController {
     }
     @Operation(summary = "内部接口：下载分享文件")
     @GetMapping("/internal/{fileId}/download")
-    public Result<String> downloadByShared(@PathVariable("fileId") Long fileId,HttpServletResponse response){
-        fileService.downloadByShared(fileId,response);
-        return Result.success("下载成功");
+    public void downloadByShared(@PathVariable("fileId") Long fileId, HttpServletRequest request,
+                                 HttpServletResponse response) {
+        fileService.downloadByShared(fileId, request, response);
+        // 记录热点访问
+        fileCacheService.recordAccess(fileId);
+    }
+
+    @Operation(summary = "内部接口：获取分享下载的重定向地址")
+    @GetMapping("/internal/{fileId}/redirect-url")
+    public Result<String> getSharedRedirectUrl(@PathVariable Long fileId) {
+        return Result.success(fileService.getSharedRedirectUrl(fileId));
     }
 
     @Operation(summary = "内部接口：获取下载链接（用于分享）")
@@ -307,6 +356,13 @@ public class FileController {
         return Result.success(fileService.saveShared(saveShareDTO));
     }
 
+    @Operation(summary = "内部接口：提交保存分享的后台任务", description = "用于分享的大文件夹，立即返回任务ID")
+    @PostMapping("/internal/save-shared/job")
+    public Result<Long> submitSaveSharedJob(@RequestBody SaveShareDTO saveShareDTO) {
+        return Result.success(fileJobService.submit(FileJob.Type.SAVE_SHARED, saveShareDTO.getTargetUserId(),
+                saveShareDTO.getSourceFileId(), saveShareDTO.getParentId() != null ? saveShareDTO.getParentId() : 0L));
+    }
+
     @Operation(summary = "内部接口：获取文件夹内容（用于分享浏览）")
     @GetMapping("/internal/{folderId}/children")
     public Result<List<FileInfo>> listFolderChildren(@PathVariable Long folderId) {
@@ -315,8 +371,16 @@ public class FileController {
 
     @Operation(summary = "内部接口：下载文件夹为ZIP（用于分享下载）")
     @GetMapping("/internal/{folderId}/download-zip")
-    public void downloadFolderAsZip(@PathVariable Long folderId, HttpServletResponse response) {
-        fileService.downloadFolderAsZip(folderId, response);
+    public void downloadFolderAsZip(@PathVariable Long folderId, HttpServletRequest request,
+                                    HttpServletResponse response) {
+        fileService.downloadFolderAsZip(folderId, request, response);
+    }
+
+    @Operation(summary = "内部接口：下载文件夹为TAR（用于分享下载，支持断点续传）")
+    @GetMapping("/internal/{folderId}/download-tar")
+    public void downloadFolderAsTarInternal(@PathVariable Long folderId, HttpServletRequest request,
+                                            HttpServletResponse response) {
+        fileService.downloadFolderAsTar(folderId, null, request, response);
     }
 
     @Operation(summary = "获取文件缩略图")
@@ -328,6 +392,34 @@ public class FileController {
         return url != null ? Result.success(url) : Result.error("该文件不支持缩略图");
     }
 
+    @Operation(summary = "获取缩略图内容（支持条件请求）")
+    @GetMapping("/{fileId}/thumbnail/content")
+    public void downloadThumbnail(
+            @PathVariable Long fileId,
+            @RequestHeader("X-User-Id") Long userId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        fileService.downloadThumbnail(fileId, userId, request, response);
+    }
+
+    @Operation(summary = "列出ZIP压缩包中的文件（只读取中央目录）")
+    @GetMapping("/{fileId}/zip/entries")
+    public Result<List<ZipEntryVO>> listZipEntries(
+            @PathVariable Long fileId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileService.listZipEntries(fileId, userId));
+    }
+
+    @Operation(summary = "下载ZIP压缩包中的单个文件")
+    @GetMapping("/{fileId}/zip/entry")
+    public void downloadZipEntry(
+            @PathVariable Long fileId,
+            @RequestParam("path") String path,
+            @RequestHeader("X-User-Id") Long userId,
+            HttpServletResponse response) {
+        fileService.downloadZipEntry(fileId, path, userId, response);
+    }
+
     @Operation(summary = "内部接口：获取缩略图URL（用于分享预览）")
     @GetMapping("/internal/{fileId}/thumbnail")
     public Result<String> getInternalThumbnail(@PathVariable Long fileId) {
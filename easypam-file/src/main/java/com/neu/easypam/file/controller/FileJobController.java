@@ -0,0 +1,83 @@
+package com.neu.easypam.file.controller;
+
+import com.neu.easypam.common.result.Result;
+import com.neu.easypam.file.entity.FileJob;
+import com.neu.easypam.file.service.FileJobService;
+import com.neu.easypam.file.vo.FileJobVO;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@Tag(name = "后台文件任务")
+@RestController
+@RequestMapping("/file/job")
+@RequiredArgsConstructor
+public class FileJobController {
+
+    private final FileJobService fileJobService;
+
+    @Operation(summary = "提交复制任务")
+    @PostMapping("/copy")
+    public Result<Long> copy(
+            @RequestParam("fileId") Long fileId,
+            @RequestParam("targetParentId") Long targetParentId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.submit(FileJob.Type.COPY, userId, fileId, targetParentId));
+    }
+
+    @Operation(summary = "提交移入回收站任务")
+    @PostMapping("/trash")
+    public Result<Long> moveToTrash(
+            @RequestParam("fileId") Long fileId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.submit(FileJob.Type.TRASH, userId, fileId, null));
+    }
+
+    @Operation(summary = "提交恢复任务")
+    @PostMapping("/restore")
+    public Result<Long> restore(
+            @RequestParam("fileId") Long fileId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.submit(FileJob.Type.RESTORE, userId, fileId, null));
+    }
+
+    @Operation(summary = "提交彻底删除任务")
+    @PostMapping("/delete")
+    public Result<Long> deletePermanently(
+            @RequestParam("fileId") Long fileId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.submit(FileJob.Type.DELETE, userId, fileId, null));
+    }
+
+    @Operation(summary = "提交清空回收站任务")
+    @PostMapping("/empty-trash")
+    public Result<Long> emptyTrash(@RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.submit(FileJob.Type.EMPTY_TRASH, userId, null, null));
+    }
+
+    @Operation(summary = "查询任务进度")
+    @GetMapping("/{jobId}")
+    public Result<FileJobVO> getJob(
+            @PathVariable Long jobId,
+            @RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.getJob(jobId, userId));
+    }
+
+    @Operation(summary = "最近的任务列表")
+    @GetMapping("/list")
+    public Result<List<FileJobVO>> listJobs(@RequestHeader("X-User-Id") Long userId) {
+        return Result.success(fileJobService.listJobs(userId));
+    }
+
+    @Operation(summary = "取消任务", description = "执行中的任务在当前批次完成后停止，复制任务会删除已复制的部分")
+    @PostMapping("/{jobId}/cancel")
+    public Result<Void> cancel(
+            @PathVariable Long jobId,
+            @RequestHeader("X-User-Id") Long userId) {
+        fileJobService.cancel(jobId, userId);
+        return Result.success();
+    }
+}
@@ -0,0 +1,27 @@
+package com.neu.easypam.file.dto;
+
+import com.neu.easypam.file.entity.FileInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 打包条目
+ */
+@Data
+@AllArgsConstructor
+public class ArchiveEntry {
+
+    /**
+     * 包内路径，目录以 / 结尾
+     */
+    private String path;
+
+    /**
+     * 对应文件（空目录为 null）
+     */
+    private FileInfo file;
+
+    public boolean isDirectory() {
+        return file == null;
+    }
+}
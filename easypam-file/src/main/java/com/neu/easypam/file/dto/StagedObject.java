@@ -0,0 +1,38 @@
+package com.neu.easypam.file.dto;
+
+import com.neu.easypam.file.entity.FileStorageBlock;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 已写入对象存储、尚未登记到 t_file_storage 的暂存对象
+ * 上传分两阶段：先在事务外写入对象存储，再在短事务中登记元数据
+ */
+@Data
+public class StagedObject {
+
+    /**
+     * 文件内容 MD5
+     */
+    private String md5;
+
+    /**
+     * MinIO 存储路径（分块存储时为空）
+     */
+    private String storagePath;
+
+    private Long fileSize;
+
+    private String contentType;
+
+    /**
+     * 块清单（仅分块存储）
+     */
+    private List<FileStorageBlock> blocks;
+
+    /**
+     * 已切分为块的原对象（分片上传的合并结果），登记后删除；未登记时仍由暂存回收任务清理
+     */
+    private String sourcePath;
+}
@@ -17,7 +17,11 @@ public class ChunkUpload {
     private String fileMd5;
     private Integer chunkSize;      // 每个分片大小
     private Integer chunkCount;     // 总分片数
-    private String uploadedChunks;  // 已上传分片索引，逗号分隔
+    private String uploadedChunks;  // 已上传分片索引，逗号分隔（旧版本数据；上传中进度在 Redis 位图，已完成即全部分片）
+    private String storagePath;     // 最终对象存储路径
+    private String multipartUploadId; // MinIO 分片上传会话ID
+    private String partEtags;       // 已上传分片ETag，格式 index:etag，逗号分隔（旧版本数据；上传中在 Redis）
+    private Long leaderUploadId;    // 跟随的上传任务ID（相同内容正在被其他任务上传时加入等待）
     private Integer status;         // 0-上传中 1-已完成 2-已取消
     
     @TableField(fill = FieldFill.INSERT)
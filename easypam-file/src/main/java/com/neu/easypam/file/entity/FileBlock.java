@@ -0,0 +1,45 @@
+package com.neu.easypam.file.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 数据块表（块级内容寻址存储）
+ * 相同内容的块只存储一份，被多个文件/版本的块清单引用
+ */
+@Data
+@TableName("t_file_block")
+public class FileBlock {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 块内容的 SHA-256 哈希值（块寻址的 key）
+     */
+    private String blockHash;
+
+    /**
+     * MinIO 存储路径
+     */
+    private String storagePath;
+
+    /**
+     * 块大小（字节）
+     */
+    private Integer blockSize;
+
+    /**
+     * 引用计数：被多少条块清单记录引用
+     * 为 0 的块由定时任务回收
+     */
+    private Integer refCount;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
@@ -12,6 +12,7 @@ public class FileInfo {
     
     private Long userId;
     private Long parentId;      // 父文件夹ID，0表示根目录
+    private String treePath;    // 物化路径：/祖先ID/.../自身ID/，子树操作按前缀范围查询
     private String fileName;
     private Long storageId;     // 关联存储表ID（文件夹为空）
     private String filePath;    // 冗余存储路径，便于查询
@@ -20,6 +21,8 @@ public class FileInfo {
     private String contentType; // MIME类型
     private String md5;         // 文件MD5，用于秒传
     private Integer isFolder;   // 0-文件 1-文件夹
+    private Long folderSize;    // 文件夹内（含子目录）未删除文件的总大小，仅文件夹
+    private Integer fileCount;  // 文件夹内（含子目录）未删除文件的数量，仅文件夹
     
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime createTime;
@@ -0,0 +1,147 @@
+package com.neu.easypam.file.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台文件任务（大目录复制 / 移入回收站 / 恢复 / 彻底删除 / 清空回收站）
+ * 任务分批执行，每批一个短事务，检查点（阶段 + 已处理数）与该批数据在同一事务中提交
+ */
+@Data
+@TableName("t_file_job")
+public class FileJob {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    private Long userId;
+
+    /**
+     * 任务类型，见 {@link Type}
+     */
+    private String jobType;
+
+    /**
+     * 操作的文件ID（清空回收站为空）
+     */
+    private Long fileId;
+
+    /**
+     * 复制 / 保存分享的目标文件夹ID
+     */
+    private Long targetParentId;
+
+    /**
+     * 复制产生的新子树根节点ID
+     */
+    private Long resultFileId;
+
+    /**
+     * 复制产生的新子树物化路径，撤销时按前缀删除已插入的副本
+     */
+    private String resultPath;
+
+    /**
+     * 复制产生的新子树根节点名称（准备阶段去重后确定，收尾时插入根节点使用）
+     */
+    private String resultName;
+
+    /**
+     * 复制检查点：最后一个已复制的源节点相对源子树根节点的物化路径，
+     * 源子树按物化路径升序（先序，上级先于下级）分批复制，接管后从这里继续
+     */
+    private String checkpointPath;
+
+    /**
+     * 准备阶段预占的已用空间，收尾时按实际复制量修正，撤销时归还
+     */
+    private Long reservedSpace;
+
+    /**
+     * 状态：0-排队中 1-执行中 2-已完成 3-失败 4-已取消
+     */
+    private Integer status;
+
+    /**
+     * 执行阶段（检查点），见 {@link Phase}
+     */
+    private Integer phase;
+
+    /**
+     * 是否已请求取消，执行线程在批次之间检查
+     */
+    private Integer cancelRequested;
+
+    /**
+     * 需要处理的节点数
+     */
+    private Integer totalCount;
+
+    /**
+     * 已处理的节点数
+     */
+    private Integer processedCount;
+
+    private String errorMsg;
+
+    /**
+     * 心跳时间：每批提交时刷新，长时间未刷新的任务视为执行实例已中断
+     */
+    private LocalDateTime heartbeatTime;
+
+    /**
+     * 执行者租约（实例标识 + 随机串）：认领或接管时换发，心跳和检查点只在租约未变时写入，
+     * 被接管的原执行者即使仍存活也无法再提交批次
+     */
+    private String ownerToken;
+
+    private LocalDateTime finishTime;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+
+    /**
+     * 任务类型常量
+     */
+    public static class Type {
+        public static final String COPY = "COPY";                 // 复制
+        public static final String SAVE_SHARED = "SAVE_SHARED";   // 保存分享
+        public static final String TRASH = "TRASH";               // 移入回收站
+        public static final String RESTORE = "RESTORE";           // 从回收站恢复
+        public static final String DELETE = "DELETE";             // 彻底删除
+        public static final String EMPTY_TRASH = "EMPTY_TRASH";   // 清空回收站
+    }
+
+    /**
+     * 状态常量
+     */
+    public static class Status {
+        public static final int PENDING = 0;    // 排队中
+        public static final int RUNNING = 1;    // 执行中
+        public static final int SUCCESS = 2;    // 已完成
+        public static final int FAILED = 3;     // 失败
+        public static final int CANCELLED = 4;  // 已取消
+    }
+
+    /**
+     * 执行阶段常量
+     */
+    public static class Phase {
+        public static final int PREPARE = 0;  // 校验并处理子树根节点
+        public static final int BATCH = 1;    // 分批处理子孙节点
+        public static final int FINISH = 2;   // 收尾（统计、配额）
+        public static final int UNDO = 3;     // 撤销已完成的部分（复制类任务）
+    }
+
+    /**
+     * 复制类任务：中途取消或失败时删除已插入的副本
+     */
+    public boolean isCopy() {
+        return Type.COPY.equals(jobType) || Type.SAVE_SHARED.equals(jobType);
+    }
+}
@@ -0,0 +1,38 @@
+package com.neu.easypam.file.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 复制任务的文件夹映射
+ * 分批复制时子节点按源上级找到副本上级，与副本在同一批事务中插入，任务结束后删除
+ */
+@Data
+@TableName("t_file_job_folder")
+public class FileJobFolder {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 复制任务ID
+     */
+    private Long jobId;
+
+    /**
+     * 源文件夹ID
+     */
+    private Long sourceId;
+
+    /**
+     * 副本文件夹ID
+     */
+    private Long copyId;
+
+    /**
+     * 副本文件夹物化路径，子节点副本的物化路径由此拼接
+     */
+    private String copyPath;
+}
@@ -0,0 +1,48 @@
+package com.neu.easypam.file.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 块清单表
+ * 记录分块存储的文件由哪些块按什么顺序组成
+ */
+@Data
+@TableName("t_file_storage_block")
+public class FileStorageBlock {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 关联存储ID（t_file_storage）
+     */
+    private Long storageId;
+
+    /**
+     * 块序号（从0开始）
+     */
+    private Integer blockIndex;
+
+    /**
+     * 关联块ID（t_file_block）
+     */
+    private Long blockId;
+
+    /**
+     * 块 MinIO 存储路径（冗余，读取时无需关联块表）
+     */
+    private String blockPath;
+
+    /**
+     * 块在文件中的起始偏移
+     */
+    private Long blockOffset;
+
+    /**
+     * 块大小（字节）
+     */
+    private Integer blockSize;
+}
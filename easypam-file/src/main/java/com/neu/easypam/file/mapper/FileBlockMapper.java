@@ -0,0 +1,47 @@
+package com.neu.easypam.file.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.neu.easypam.file.entity.FileBlock;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface FileBlockMapper extends BaseMapper<FileBlock> {
+
+    /**
+     * 原子性增加引用计数
+     */
+    @Update("UPDATE t_file_block SET ref_count = ref_count + #{delta}, update_time = NOW() WHERE id = #{id}")
+    int incrementRefCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * 原子性减少引用计数
+     */
+    @Update("UPDATE t_file_block SET ref_count = ref_count - #{delta}, update_time = NOW() " +
+            "WHERE id = #{id} AND ref_count >= #{delta}")
+    int decrementRefCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * 删除无引用的块（带条件，防止删除刚被引用的块）
+     */
+    @Delete("DELETE FROM t_file_block WHERE id = #{id} AND ref_count = 0")
+    int deleteIfUnreferenced(@Param("id") Long id);
+
+    /**
+     * 回收无引用且在 before 之后未被复用的块，与 {@link #touch} 互斥：
+     * 上传复用块时先刷新更新时间，回收语句不再命中
+     */
+    @Delete("DELETE FROM t_file_block WHERE id = #{id} AND ref_count = 0 AND update_time < #{before}")
+    int deleteIfUnreferencedBefore(@Param("id") Long id, @Param("before") LocalDateTime before);
+
+    /**
+     * 上传复用已有块时刷新更新时间，保护尚未写入块清单的块不被回收
+     * @return 0 表示块已被回收
+     */
+    @Update("UPDATE t_file_block SET update_time = NOW() WHERE id = #{id}")
+    int touch(@Param("id") Long id);
+}
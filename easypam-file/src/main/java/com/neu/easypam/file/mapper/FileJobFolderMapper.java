@@ -0,0 +1,21 @@
+package com.neu.easypam.file.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.neu.easypam.file.entity.FileJobFolder;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+
+@Mapper
+public interface FileJobFolderMapper extends BaseMapper<FileJobFolder> {
+
+    /**
+     * 批量插入一批文件夹映射（一条语句），ID 由调用方预先分配
+     */
+    @Insert("<script>INSERT INTO t_file_job_folder (id, job_id, source_id, copy_id, copy_path) VALUES " +
+            "<foreach collection='folders' item='f' separator=','>" +
+            "(#{f.id}, #{f.jobId}, #{f.sourceId}, #{f.copyId}, #{f.copyPath})</foreach></script>")
+    int insertBatch(@Param("folders") Collection<FileJobFolder> folders);
+}
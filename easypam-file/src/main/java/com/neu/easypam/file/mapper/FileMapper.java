@@ -3,7 +3,39 @@ package com.neu.easypam.file.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.neu.easypam.file.entity.FileInfo;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
 
 @Mapper
 public interface FileMapper extends BaseMapper<FileInfo> {
+
+    /**
+     * 整棵子树改挂到新位置：物化路径前缀 oldPrefix 替换为 newPrefix（包含子树根节点）
+     * 只是位置变化，保持 update_time 不变
+     */
+    @Update("UPDATE t_file SET tree_path = CONCAT(#{newPrefix}, SUBSTRING(tree_path, CHAR_LENGTH(#{oldPrefix}) + 1)), " +
+            "update_time = update_time WHERE user_id = #{userId} AND tree_path LIKE CONCAT(#{oldPrefix}, '%')")
+    int moveSubtree(@Param("userId") Long userId, @Param("oldPrefix") String oldPrefix,
+                    @Param("newPrefix") String newPrefix);
+
+    /**
+     * 累加上级文件夹的统计（大小 / 文件数），一条语句更新整条祖先链
+     */
+    @Update("<script>UPDATE t_file SET folder_size = folder_size + #{sizeDelta}, " +
+            "file_count = file_count + #{countDelta}, update_time = update_time WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int addFolderStats(@Param("ids") Collection<Long> ids, @Param("sizeDelta") long sizeDelta,
+                       @Param("countDelta") long countDelta);
+
+    /**
+     * 批量写入文件夹统计（大小 / 文件数），一条语句更新一批文件夹
+     */
+    @Update("<script>UPDATE t_file SET " +
+            "folder_size = CASE id <foreach collection='folders' item='f'>WHEN #{f.id} THEN #{f.folderSize} </foreach>END, " +
+            "file_count = CASE id <foreach collection='folders' item='f'>WHEN #{f.id} THEN #{f.fileCount} </foreach>END, " +
+            "update_time = update_time WHERE id IN " +
+            "<foreach collection='folders' item='f' open='(' separator=',' close=')'>#{f.id}</foreach></script>")
+    int updateFolderStats(@Param("folders") Collection<FileInfo> folders);
 }
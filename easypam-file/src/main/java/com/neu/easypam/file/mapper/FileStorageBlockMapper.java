@@ -0,0 +1,9 @@
+package com.neu.easypam.file.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.neu.easypam.file.entity.FileStorageBlock;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface FileStorageBlockMapper extends BaseMapper<FileStorageBlock> {
+}
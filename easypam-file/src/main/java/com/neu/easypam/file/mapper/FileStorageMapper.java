@@ -6,6 +6,8 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.Map;
+
 @Mapper
 public interface FileStorageMapper extends BaseMapper<FileStorage> {
     
@@ -22,4 +24,15 @@ public interface FileStorageMapper extends BaseMapper<FileStorage> {
      */
     @Update("UPDATE t_file_storage SET ref_count = ref_count - 1, update_time = NOW() WHERE id = #{id} AND ref_count > 0")
     int decrementRefCount(@Param("id") Long id);
+
+    /**
+     * 批量增加引用计数：每条存储记录增加各自的数量，一条语句完成
+     * @param deltas 存储记录ID -> 增加的引用数
+     * @return 匹配到的记录数
+     */
+    @Update("<script>UPDATE t_file_storage SET ref_count = ref_count + CASE id " +
+            "<foreach collection='deltas' index='id' item='delta'>WHEN #{id} THEN #{delta} </foreach>" +
+            "END, update_time = NOW() WHERE id IN " +
+            "<foreach collection='deltas' index='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int incrementRefCounts(@Param("deltas") Map<Long, Integer> deltas);
 }
@@ -0,0 +1,46 @@
+package com.neu.easypam.file.service;
+
+import com.neu.easypam.file.dto.ArchiveEntry;
+import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.util.TarLayout;
+import com.neu.easypam.file.util.ZipDirectory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * 打包下载服务
+ */
+public interface ArchiveService {
+
+    /**
+     * 展开待打包的文件/文件夹，按层批量查询子节点
+     * @param userId 非空时只包含该用户的文件
+     * @return 按目录顺序排列的条目，空文件夹以目录条目表示
+     */
+    List<ArchiveEntry> collectEntries(List<FileInfo> roots, Long userId);
+
+    /**
+     * 将条目写为 ZIP，小文件并发预取、按顺序写出，已压缩格式的文件不再压缩
+     */
+    void writeZip(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException;
+
+    /**
+     * 输出 TAR 归档的指定区间，文件内容只读取区间覆盖的部分
+     * @param start  归档内起始偏移
+     * @param length 输出长度
+     */
+    void writeTar(TarLayout layout, long start, long length, OutputStream outputStream) throws IOException;
+
+    /**
+     * 读取已上传 ZIP 的中央目录，只做区间读取，按内容 MD5 缓存
+     */
+    ZipDirectory readZipDirectory(FileInfo file);
+
+    /**
+     * 打开 ZIP 中单个条目解压后的内容，只读取该条目的本地文件头和压缩数据
+     */
+    InputStream openZipEntry(FileInfo file, ZipDirectory.Entry entry) throws IOException;
+}
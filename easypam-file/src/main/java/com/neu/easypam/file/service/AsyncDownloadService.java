@@ -0,0 +1,25 @@
+package com.neu.easypam.file.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * 非阻塞下载服务：基于 Servlet 异步 I/O（WriteListener）输出文件内容
+ * 请求线程设置好响应头后立即释放，之后只在输出缓冲可写时读取一块数据并写出，
+ * 连接数不再受 Tomcat 工作线程数限制
+ */
+public interface AsyncDownloadService {
+
+    /**
+     * 开始异步输出，调用前需设置好状态码和全部响应头
+     * @param source    打开内容输入流，在读取线程中调用，读到流结束为止
+     * @param userId    下载用户，用于限速，分享下载时为空
+     * @param shareCode 分享码，用于限速，非分享下载时为空
+     */
+    void start(HttpServletRequest request, HttpServletResponse response, Callable<InputStream> source,
+               Long userId, String shareCode) throws IOException;
+}
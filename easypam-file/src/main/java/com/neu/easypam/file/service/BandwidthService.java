@@ -0,0 +1,44 @@
+package com.neu.easypam.file.service;
+
+import com.neu.easypam.file.vo.BandwidthStatsVO;
+
+import java.io.OutputStream;
+
+/**
+ * 下载带宽限制服务
+ */
+public interface BandwidthService {
+
+    /**
+     * 分享服务转发下载时携带的分享码请求头
+     */
+    String SHARE_CODE_HEADER = "X-Share-Code";
+
+    /**
+     * 包装下载输出流，按全局、用户、分享三级令牌桶限速
+     * @param userId    下载用户，分享下载时为空
+     * @param shareCode 分享码，非分享下载时为空
+     * @return 未启用限速时返回原输出流
+     */
+    OutputStream throttle(OutputStream outputStream, Long userId, String shareCode);
+
+    /**
+     * 为即将写出的数据预扣令牌并计入统计，不阻塞当前线程
+     * 供非阻塞下载使用，由调用方在返回的时间之后再继续写出
+     * @return 需要等待的纳秒数，未启用限速时返回 0
+     */
+    long acquire(int bytes, Long userId, String shareCode);
+
+    /**
+     * 下载是否受用户级或分享级限速
+     * 重定向下载由客户端直接访问对象存储，文件服务无法限速，受限时必须转发
+     * @param userId 下载用户，分享下载时为空
+     * @param shared 是否为分享下载
+     */
+    boolean isThrottled(Long userId, boolean shared);
+
+    /**
+     * 获取限速统计
+     */
+    BandwidthStatsVO getStats();
+}
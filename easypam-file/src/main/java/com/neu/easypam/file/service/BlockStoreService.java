@@ -0,0 +1,60 @@
+package com.neu.easypam.file.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.neu.easypam.file.entity.FileBlock;
+import com.neu.easypam.file.entity.FileStorageBlock;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 块存储服务（内容定义分块 + 块级去重）
+ * 分块存储的文件在 t_file_storage 中的 storagePath 为 manifest/{storageId}，
+ * 实际内容由 t_file_storage_block 块清单描述
+ */
+public interface BlockStoreService extends IService<FileBlock> {
+
+    String MANIFEST_PREFIX = "manifest/";
+
+    /**
+     * 判断存储路径是否为块清单
+     */
+    static boolean isManifest(String storagePath) {
+        return storagePath != null && storagePath.startsWith(MANIFEST_PREFIX);
+    }
+
+    /**
+     * 判断该大小的文件是否走块存储（未启用或大小未知时返回 false）
+     */
+    boolean supports(long size);
+
+    /**
+     * 切分输入流并上传新块（已存在的块直接复用）
+     * @return 按顺序排列的块清单，尚未关联存储、未增加块引用
+     */
+    List<FileStorageBlock> writeBlocks(InputStream inputStream);
+
+    /**
+     * 保存块清单并增加块引用计数
+     */
+    void saveManifest(Long storageId, List<FileStorageBlock> blocks);
+
+    /**
+     * 按块清单重组读取文件内容
+     * @param offset 起始偏移
+     * @param length 读取长度，-1 表示读到末尾
+     */
+    InputStream open(Long storageId, long offset, long length);
+
+    /**
+     * 释放块清单：减少块引用计数，无引用的块立即删除
+     */
+    void release(Long storageId);
+
+    /**
+     * 回收无引用的块（上传后因整文件去重命中而未被引用的块）
+     * @return 回收数量
+     */
+    int cleanupUnreferencedBlocks(LocalDateTime before, int limit);
+}
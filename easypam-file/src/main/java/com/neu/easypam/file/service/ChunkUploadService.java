@@ -4,27 +4,56 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.neu.easypam.file.entity.ChunkUpload;
 import com.neu.easypam.file.entity.FileInfo;
 import com.neu.easypam.file.vo.ChunkInitVO;
+import com.neu.easypam.file.vo.ChunkVerifyStatsVO;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
+
 public interface ChunkUploadService extends IService<ChunkUpload> {
     
     /**
      * 初始化分片上传
+     * @param presigned 是否返回未上传分片的预签名直传URL（客户端直传对象存储，不经过文件服务）
      */
-    ChunkInitVO initUpload(Long userId, Long parentId, String fileName, Long fileSize, String fileMd5, Integer chunkSize);
+    ChunkInitVO initUpload(Long userId, Long parentId, String fileName, Long fileSize, String fileMd5,
+                           Integer chunkSize, boolean presigned);
     
     /**
      * 上传分片
+     * @param chunkMd5 分片 MD5（可选），服务端边上传边计算并校验
+     */
+    void uploadChunk(Long uploadId, Integer chunkIndex, MultipartFile file, String chunkMd5, Long userId);
+    
+    /**
+     * 上报直传分片完成（配合预签名URL使用）
+     * @param etag 对象存储返回的分片 ETag
      */
-    void uploadChunk(Long uploadId, Integer chunkIndex, MultipartFile file, Long userId);
+    void reportChunk(Long uploadId, Integer chunkIndex, String etag, Long userId);
     
     /**
      * 合并分片
      */
     FileInfo mergeChunks(Long uploadId, Long userId);
     
+    /**
+     * 取消分片上传（释放对象存储中已上传的分片）
+     */
+    void cancelUpload(Long uploadId, Long userId);
+    
+    /**
+     * 整文件 MD5 校验统计：合并时需要回读对象存储补算的次数和字节数
+     */
+    ChunkVerifyStatsVO getMd5VerifyStats();
+
     /**
      * 获取上传状态（已上传的分片）
+     * @param presigned 是否为未上传分片重新签发直传URL
+     */
+    ChunkInitVO getUploadStatus(Long uploadId, Long userId, boolean presigned);
+
+    /**
+     * 回收被放弃的上传任务：before 之后没有分片进展的任务置为已取消，并中止对象存储中的分片上传会话
+     * @return 处理的任务数（仍有进展的任务只刷新检查时间）
      */
-    ChunkInitVO getUploadStatus(Long uploadId, Long userId);
+    int cleanupExpiredUploads(LocalDateTime before, int limit);
 }
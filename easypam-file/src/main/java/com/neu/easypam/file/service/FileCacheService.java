@@ -32,6 +32,12 @@ public interface FileCacheService {
      */
     void recordAccess(Long fileId);
 
+    /**
+     * 获取热点文件ID（按访问分数倒序）
+     * @param minScore 最低访问分数
+     */
+    List<Long> getHotFileIds(double minScore, int limit);
+
     /**
      * 获取热点文件列表
      */
@@ -0,0 +1,38 @@
+package com.neu.easypam.file.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.neu.easypam.file.entity.FileJob;
+import com.neu.easypam.file.vo.FileJobVO;
+
+import java.util.List;
+
+public interface FileJobService extends IService<FileJob> {
+
+    /**
+     * 提交后台任务，立即返回任务ID，任务在后台分批执行
+     * @param jobType 任务类型，见 {@link FileJob.Type}
+     * @param fileId 操作的文件ID（清空回收站为空）
+     * @param targetParentId 复制 / 保存分享的目标文件夹ID
+     */
+    Long submit(String jobType, Long userId, Long fileId, Long targetParentId);
+
+    /**
+     * 查询任务进度
+     */
+    FileJobVO getJob(Long jobId, Long userId);
+
+    /**
+     * 最近的任务列表
+     */
+    List<FileJobVO> listJobs(Long userId);
+
+    /**
+     * 取消任务：排队中的直接取消，执行中的在当前批次提交后停止（复制类任务会删除已复制的部分）
+     */
+    void cancel(Long jobId, Long userId);
+
+    /**
+     * 接管心跳超时的任务（执行实例已中断），从最后提交的检查点继续
+     */
+    void recoverStaleJobs();
+}
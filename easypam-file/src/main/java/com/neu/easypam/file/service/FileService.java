@@ -4,6 +4,11 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.neu.easypam.common.dto.SaveShareDTO;
 import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.entity.FileJob;
+import com.neu.easypam.file.entity.FileStorage;
+import com.neu.easypam.file.vo.CursorPageVO;
+import com.neu.easypam.file.vo.ZipEntryVO;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -12,6 +17,12 @@ import java.util.List;
 
 public interface FileService extends IService<FileInfo> {
     FileInfo upload(MultipartFile file, Long userId, Long parentId);
+
+    /**
+     * 流式上传：边解析 multipart 请求体边写入 MinIO，不落本地临时文件
+     * 表单字段 parentId 必须位于文件字段 file 之前，位于其后时丢弃已暂存的文件并拒绝上传
+     */
+    FileInfo uploadStream(HttpServletRequest request, Long userId);
     void delete(Long fileId, Long userId);
     void rename(Long fileId, String newName, Long userId);
     List<FileInfo> listFiles(Long userId, Long parentId);
@@ -24,12 +35,34 @@ public interface FileService extends IService<FileInfo> {
      */
     String getDownloadUrl(Long fileId, Long userId, Integer expireMinutes);
     FileInfo quickUpload(String md5, String fileName, Long userId, Long parentId);
-    void download(Long fileId, Long userId, HttpServletResponse response) throws IOException;
+
+    /**
+     * 引用已有存储创建文件记录（秒传）
+     * @return 存储记录已被删除时返回 null
+     */
+    FileInfo linkStorage(FileStorage storage, String fileName, Long userId, Long parentId);
+    /**
+     * 流式下载，支持 Range 断点续传
+     */
+    void download(Long fileId, Long userId, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * 文件内容变化（上传新版本、回滚版本）后，把大小变化累加到所有上级文件夹
+     */
+    void applySizeChange(FileInfo file, long sizeDelta);
 
     void batchDownload(List<Long> fileIds, Long userId, HttpServletResponse response);
 
     IPage<FileInfo> listFilesByPage(Long userId,Long parentId, int page, int size, String sortBy, String sortOrder);
 
+    /**
+     * 游标分页（keyset）：按 (isFolder, 排序列, id) 从上一页末尾继续，深翻页不再扫描并丢弃前面的记录
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param withTotal 是否统计总数（额外一次 COUNT）
+     */
+    CursorPageVO<FileInfo> listFilesByCursor(Long userId, Long parentId, int size, String sortBy, String sortOrder,
+                                             String cursor, boolean withTotal);
+
     /**
      * 移动文件/文件夹
      * @param fileId 文件ID
@@ -84,7 +117,26 @@ public interface FileService extends IService<FileInfo> {
      */
     void emptyTrash(Long userId);
 
-    void downloadByShared(Long fileId, HttpServletResponse response);
+    /**
+     * 后台任务：执行下一批（最多 batchSize 个节点），推进 job 的阶段和已处理数
+     * 不开启事务，由调用方把这一批和检查点放在同一个事务中提交
+     * @return 任务全部完成时返回 true
+     */
+    boolean runJobBatch(FileJob job, int batchSize);
+
+    /**
+     * 后台任务：撤销复制类任务已插入的副本（每次最多 batchSize 个节点），事务同上
+     * @return 撤销完成时返回 true
+     */
+    boolean undoJobBatch(FileJob job, int batchSize);
+
+    void downloadByShared(Long fileId, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 内部接口：重定向模式下为分享下载签发预签名地址
+     * @return 未启用重定向或文件不支持重定向时返回 null，由分享服务继续转发
+     */
+    String getSharedRedirectUrl(Long fileId);
 
     /**
      * 内部接口：获取下载链接（不校验用户权限，用于分享下载）
@@ -106,7 +158,13 @@ public interface FileService extends IService<FileInfo> {
     /**
      * 内部接口：下载文件夹为ZIP（用于分享下载）
      */
-    void downloadFolderAsZip(Long folderId, HttpServletResponse response);
+    void downloadFolderAsZip(Long folderId, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 下载文件夹为不压缩的 TAR，预先给出 Content-Length 并支持 Range 断点续传
+     * @param userId 为空时不校验归属（内部接口，用于分享下载）
+     */
+    void downloadFolderAsTar(Long folderId, Long userId, HttpServletRequest request, HttpServletResponse response);
 
     /**
      * 获取文件缩略图URL
@@ -116,6 +174,22 @@ public interface FileService extends IService<FileInfo> {
      */
     String getThumbnailUrl(Long fileId, Long userId);
 
+    /**
+     * 直接输出缩略图内容，支持 ETag 条件请求（未变化时返回 304）
+     */
+    void downloadThumbnail(Long fileId, Long userId, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 列出 ZIP 压缩包中的条目，只读取中央目录
+     */
+    List<ZipEntryVO> listZipEntries(Long fileId, Long userId);
+
+    /**
+     * 下载 ZIP 压缩包中的单个条目，只读取该条目的压缩数据并在线解压
+     * @param path 条目在压缩包内的路径
+     */
+    void downloadZipEntry(Long fileId, String path, Long userId, HttpServletResponse response);
+
     /**
      * 内部接口：获取缩略图URL（用于分享预览）
      */
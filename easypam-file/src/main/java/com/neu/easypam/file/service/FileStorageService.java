@@ -1,30 +1,119 @@
 package com.neu.easypam.file.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.neu.easypam.file.dto.StagedObject;
 import com.neu.easypam.file.entity.FileStorage;
 import com.neu.easypam.file.vo.StorageStatsVO;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Map;
+
 public interface FileStorageService extends IService<FileStorage> {
     
     /**
      * 存储文件（去重）
-     * 如果相同 MD5 的文件已存在，增加引用计数
-     * 否则上传到 MinIO 并创建新记录
-     * 
+     * 等价于 stage + commit：先在事务外写入 MinIO，再在短事务中登记，失败时丢弃暂存对象
+     *
      * @return 存储记录
      */
-    FileStorage store(MultipartFile file, String md5);
-    
+    FileStorage store(MultipartFile file);
+
+    /**
+     * 存储文件（去重），直接消费输入流
+     * @param size 流长度，未知时传 -1
+     */
+    FileStorage store(InputStream inputStream, long size, String fileName, String contentType);
+
+    /**
+     * 暂存文件：写入 MinIO 并计算 MD5，不访问数据库，调用方不应持有事务
+     * 上传流只读取一遍：边写入 MinIO 边计算 MD5
+     */
+    StagedObject stage(MultipartFile file);
+
+    /**
+     * 暂存文件，直接消费输入流
+     * @param size 流长度，未知时传 -1
+     */
+    StagedObject stage(InputStream inputStream, long size, String fileName, String contentType);
+
     /**
-     * 根据 MD5 查找已存在的存储
+     * 将已写入 MinIO 的对象（如分片上传合并结果）登记为暂存对象
+     * 达到块存储阈值时读取该对象切分为块，登记后删除原对象
+     */
+    StagedObject stageExisting(String md5, String storagePath, long fileSize, String contentType);
+
+    /**
+     * 登记暂存对象（去重），应在调用方的短事务中执行
+     * 如果相同 MD5 的存储已存在，事务提交后删除暂存对象并复用已有存储
+     */
+    FileStorage commit(StagedObject staged);
+
+    /**
+     * 丢弃未登记的暂存对象（登记事务失败时的补偿）
+     */
+    void discard(StagedObject staged);
+
+    /**
+     * 回收超时未登记的暂存对象
+     * @return 本次处理的暂存记录数量
+     */
+    int cleanupStagedObjects(LocalDateTime before, int limit);
+
+    /**
+     * 打开存储内容的输入流（兼容整对象存储与分块存储）
+     */
+    InputStream openStream(String storagePath);
+
+    /**
+     * 打开存储内容指定区间的输入流
+     * @param length 读取长度，-1 表示读到末尾
+     */
+    InputStream openStream(String storagePath, long offset, long length);
+
+    /**
+     * 签发面向客户端的预签名下载地址，响应头中的文件名和类型由签名参数覆盖
+     * @return 分块存储的文件无法签发，返回 null
+     */
+    String presignDownload(String storagePath, String fileName, String contentType, int expireSeconds);
+
+    /**
+     * 签发面向客户端的预签名 GET 地址
+     * 同一对象、有效期和响应参数在前一半有效期内返回同一地址（本地缓存 + Redis），
+     * 减少签名计算，地址稳定后浏览器缓存才能命中
+     * @param responseParams 覆盖响应头的签名参数（如 response-cache-control），可为空
+     * @return 分块存储的文件无法签发，返回 null
+     */
+    String presignGet(String storagePath, int expireSeconds, Map<String, String> responseParams);
+
+    /**
+     * 根据 MD5 查找已存在的存储（秒传探测）
+     * 先经本地布隆过滤器排除不存在的 MD5，命中时走本地缓存
+     * 其他节点刚写入的 MD5 可能短暂判定为不存在，调用方按正常上传处理即可
      */
     FileStorage findByMd5(String md5);
+
+    /**
+     * 全量重建 MD5 布隆过滤器
+     */
+    void rebuildMd5Filter();
+
+    /**
+     * 增量同步 MD5 布隆过滤器
+     */
+    void refreshMd5Filter();
     
     /**
      * 增加引用计数
      */
     void incrementRef(Long storageId);
+
+    /**
+     * 批量增加引用计数（复制文件夹、保存分享），按存储记录聚合后分批一条语句更新
+     * @param refs 存储记录ID -> 增加的引用数
+     */
+    void incrementRefs(Map<Long, Integer> refs);
     
     /**
      * 减少引用计数，如果为0则删除实际文件
@@ -0,0 +1,36 @@
+package com.neu.easypam.file.service;
+
+import com.neu.easypam.file.entity.FileInfo;
+
+import java.io.InputStream;
+
+/**
+ * 热点小文件内容缓存
+ */
+public interface HotContentService {
+
+    /**
+     * 打开文件内容指定区间的输入流，热点小文件从本地缓存读取，其余读取对象存储
+     * @param length 读取长度，-1 表示读到末尾
+     */
+    InputStream openStream(FileInfo fileInfo, long offset, long length);
+
+    /**
+     * 根据热点访问排行刷新准入名单，移出不再热门的缓存内容
+     */
+    void refreshAdmission();
+
+    /**
+     * 缓存条目数
+     */
+    long getCachedCount();
+
+    /**
+     * 缓存占用字节数
+     */
+    long getCachedBytes();
+
+    long getHitCount();
+
+    long getMissCount();
+}
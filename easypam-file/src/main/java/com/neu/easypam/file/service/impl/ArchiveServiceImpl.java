@@ -0,0 +1,425 @@
+package com.neu.easypam.file.service.impl;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.neu.easypam.common.exception.BusinessException;
+import com.neu.easypam.file.config.ArchiveConfig;
+import com.neu.easypam.file.dto.ArchiveEntry;
+import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.mapper.FileMapper;
+import com.neu.easypam.file.service.ArchiveService;
+import com.neu.easypam.file.service.FileStorageService;
+import com.neu.easypam.file.util.TarLayout;
+import com.neu.easypam.file.util.ZipDirectory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ArchiveServiceImpl implements ArchiveService {
+
+    private final FileMapper fileMapper;
+    private final FileStorageService fileStorageService;
+    private final ArchiveConfig archiveConfig;
+
+    // 已压缩格式的 MIME 类型，与扩展名任一命中即不再压缩
+    private static final Set<String> STORED_CONTENT_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/avif",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/vnd.rar", "application/x-bzip2", "application/x-xz");
+
+    private ExecutorService prefetchExecutor;
+    // 所有打包请求已预取（含读取中、尚未写出）的字节数，不超过 prefetchTotalMemory
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+    private Set<String> storedExtensions;
+    // 内容 MD5 -> ZIP 中央目录，相同内容的压缩包共用
+    private Cache<String, ZipDirectory> zipDirectoryCache;
+
+    @PostConstruct
+    public void init() {
+        int threads = archiveConfig.getPrefetchThreads();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("zip-prefetch-").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        prefetchExecutor = executor;
+        storedExtensions = archiveConfig.getStoredExtensions().stream()
+                .map(ext -> ext.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        zipDirectoryCache = Caffeine.newBuilder()
+                .maximumSize(archiveConfig.getZipDirectoryCacheSize())
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Override
+    public List<ArchiveEntry> collectEntries(List<FileInfo> roots, Long userId) {
+        Map<Long, List<FileInfo>> children = loadDescendants(roots, userId);
+        List<ArchiveEntry> entries = new ArrayList<>();
+        for (FileInfo root : roots) {
+            appendEntries(root, root.getFileName(), children, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * 按物化路径一次查询所有根文件夹的子孙节点
+     * @return 父文件夹ID -> 子节点
+     */
+    private Map<Long, List<FileInfo>> loadDescendants(List<FileInfo> roots, Long userId) {
+        List<String> rootPaths = roots.stream()
+                .filter(file -> file.getIsFolder() == 1)
+                .map(FileInfo::getTreePath)
+                .collect(Collectors.toList());
+        if (rootPaths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (rootPaths.contains(null)) {
+            throw new BusinessException("目录路径未初始化，请先执行升级脚本");
+        }
+        Map<Long, List<FileInfo>> children = new HashMap<>();
+        int batchSize = archiveConfig.getQueryBatchSize();
+        for (int i = 0; i < rootPaths.size(); i += batchSize) {
+            List<String> batch = rootPaths.subList(i, Math.min(i + batchSize, rootPaths.size()));
+            List<FileInfo> descendants = fileMapper.selectList(new LambdaQueryWrapper<FileInfo>()
+                    .eq(userId != null, FileInfo::getUserId, userId)
+                    .eq(FileInfo::getDeleted, 0)
+                    .and(wrapper -> batch.forEach(path -> wrapper.or().likeRight(FileInfo::getTreePath, path))));
+            for (FileInfo file : descendants) {
+                children.computeIfAbsent(file.getParentId(), k -> new ArrayList<>()).add(file);
+            }
+        }
+        return children;
+    }
+
+    private void appendEntries(FileInfo node, String path, Map<Long, List<FileInfo>> children,
+                               List<ArchiveEntry> entries) {
+        if (node.getIsFolder() != 1) {
+            entries.add(new ArchiveEntry(path, node));
+            return;
+        }
+        List<FileInfo> kids = children.getOrDefault(node.getId(), Collections.emptyList());
+        // 空文件夹保留目录条目
+        if (kids.isEmpty()) {
+            entries.add(new ArchiveEntry(path + "/", null));
+            return;
+        }
+        for (FileInfo kid : kids) {
+            appendEntries(kid, path + "/" + kid.getFileName(), children, entries);
+        }
+    }
+
+    @Override
+    public void writeZip(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(outputStream);
+        Prefetcher prefetcher = new Prefetcher(entries);
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                ArchiveEntry entry = entries.get(i);
+                if (entry.isDirectory()) {
+                    zos.putNextEntry(new ZipEntry(entry.getPath()));
+                    zos.closeEntry();
+                    continue;
+                }
+                byte[] data = prefetcher.take(i);
+                if (data != null) {
+                    try {
+                        writeBuffered(zos, entry, data);
+                    } finally {
+                        releasePrefetch(data.length);
+                    }
+                } else {
+                    writeStreaming(zos, entry);
+                }
+            }
+            // 只结束 ZIP，输出流由调用方关闭
+            zos.finish();
+        } finally {
+            prefetcher.cancel();
+        }
+    }
+
+    @Override
+    public void writeTar(TarLayout layout, long start, long length, OutputStream outputStream) throws IOException {
+        List<TarLayout.Segment> segments = layout.getSegments();
+        long position = start;
+        long end = start + length;
+        for (int i = layout.indexOf(start); i < segments.size() && position < end; i++) {
+            TarLayout.Segment segment = segments.get(i);
+            long offset = position - segment.getOffset();
+            long count = Math.min(segment.getLength() - offset, end - position);
+            if (segment.getBytes() != null) {
+                outputStream.write(segment.getBytes(), (int) offset, (int) count);
+            } else {
+                FileInfo file = segment.getFile();
+                try (InputStream inputStream = fileStorageService.openStream(file.getFilePath(), offset, count)) {
+                    // 归档布局按元数据中的大小计算，内容长度不一致时无法继续
+                    if (inputStream.transferTo(outputStream) != count) {
+                        throw new BusinessException("文件内容与记录大小不一致: " + file.getFileName());
+                    }
+                }
+            }
+            position += count;
+        }
+    }
+
+    @Override
+    public ZipDirectory readZipDirectory(FileInfo file) {
+        String key = file.getMd5() != null ? file.getMd5() : file.getFilePath();
+        return zipDirectoryCache.get(key, k -> {
+            try {
+                ZipDirectory directory = ZipDirectory.read(file.getFileSize(), archiveConfig.getZipDirectoryMaxSize(),
+                        (offset, length) -> readRange(file.getFilePath(), offset, length));
+                log.debug("读取 ZIP 目录：{}，{} 个条目，目录 {} 字节", file.getFileName(),
+                        directory.getEntries().size(), directory.getDirectorySize());
+                return directory;
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("无法解析压缩包：" + e.getMessage());
+            } catch (IOException e) {
+                throw new BusinessException("读取压缩包失败：" + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public InputStream openZipEntry(FileInfo file, ZipDirectory.Entry entry) throws IOException {
+        if (entry.isEncrypted()) {
+            throw new BusinessException("不支持加密的压缩包条目");
+        }
+        if (entry.getMethod() != ZipEntry.STORED && entry.getMethod() != ZipEntry.DEFLATED) {
+            throw new BusinessException("不支持的压缩方式：" + entry.getMethod());
+        }
+        // 本地文件头中的扩展字段长度可能与中央目录不同，先读取定长部分确定数据起点
+        long headerOffset = entry.getLocalHeaderOffset();
+        int dataOffset;
+        try {
+            dataOffset = ZipDirectory.dataOffset(
+                    readRange(file.getFilePath(), headerOffset, ZipDirectory.LOCAL_HEADER_SIZE));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("无法解析压缩包：" + e.getMessage());
+        }
+        long dataStart = headerOffset + dataOffset;
+        if (dataStart + entry.getCompressedSize() > file.getFileSize()) {
+            throw new BusinessException("压缩包条目位置无效");
+        }
+        InputStream raw = fileStorageService.openStream(file.getFilePath(), dataStart, entry.getCompressedSize());
+        if (entry.getMethod() == ZipEntry.STORED) {
+            return raw;
+        }
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(raw, inflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private byte[] readRange(String path, long offset, int length) throws IOException {
+        try (InputStream inputStream = fileStorageService.openStream(path, offset, length)) {
+            byte[] data = inputStream.readNBytes(length);
+            if (data.length != length) {
+                throw new IOException("区间读取不完整");
+            }
+            return data;
+        }
+    }
+
+    /**
+     * 已预取的文件：内容和 CRC 已知，已压缩格式直接以 STORED 写入
+     */
+    private void writeBuffered(ZipOutputStream zos, ArchiveEntry entry, byte[] data) throws IOException {
+        ZipEntry zipEntry = newZipEntry(entry);
+        if (isCompressed(entry.getFile())) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(data.length);
+            zipEntry.setCompressedSize(data.length);
+            zipEntry.setCrc(crc.getValue());
+        } else {
+            zos.setLevel(Deflater.DEFAULT_COMPRESSION);
+        }
+        zos.putNextEntry(zipEntry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    /**
+     * 大文件：边读边写。STORED 需要预先知道 CRC，已压缩格式改用 0 级压缩，只做拷贝不消耗压缩 CPU
+     */
+    private void writeStreaming(ZipOutputStream zos, ArchiveEntry entry) throws IOException {
+        zos.setLevel(isCompressed(entry.getFile()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        zos.putNextEntry(newZipEntry(entry));
+        try (InputStream inputStream = fileStorageService.openStream(entry.getFile().getFilePath())) {
+            inputStream.transferTo(zos);
+        }
+        zos.closeEntry();
+    }
+
+    private ZipEntry newZipEntry(ArchiveEntry entry) {
+        ZipEntry zipEntry = new ZipEntry(entry.getPath());
+        FileInfo file = entry.getFile();
+        if (file.getUpdateTime() != null) {
+            zipEntry.setTime(file.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return zipEntry;
+    }
+
+    private boolean isCompressed(FileInfo file) {
+        String contentType = file.getContentType();
+        if (contentType != null) {
+            contentType = contentType.toLowerCase(Locale.ROOT);
+            if (STORED_CONTENT_TYPES.contains(contentType) || contentType.startsWith("video/")) {
+                return true;
+            }
+        }
+        String fileName = file.getFileName();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 从所有请求共享的预取内存中预留，不阻塞
+     */
+    private boolean reservePrefetch(long size) {
+        long limit = archiveConfig.getPrefetchTotalMemory();
+        while (true) {
+            long used = prefetchedBytes.get();
+            if (used + size > limit) {
+                return false;
+            }
+            if (prefetchedBytes.compareAndSet(used, used + size)) {
+                return true;
+            }
+        }
+    }
+
+    private void releasePrefetch(long size) {
+        prefetchedBytes.addAndGet(-size);
+    }
+
+    private boolean isPrefetchable(ArchiveEntry entry) {
+        return !entry.isDirectory() && entry.getFile().getFileSize() <= archiveConfig.getPrefetchMaxFileSize();
+    }
+
+    /**
+     * 顺序预取窗口：提前提交后续小文件的读取任务，受文件数、单请求内存和全局内存三个上限约束
+     * 只在写 ZIP 的线程中访问；取出的内容写出后由调用方归还全局内存
+     */
+    private class Prefetcher {
+
+        private final List<ArchiveEntry> entries;
+        private final Map<Integer, Future<byte[]>> pending = new HashMap<>();
+        private int next;
+        private long bufferedBytes;
+
+        Prefetcher(List<ArchiveEntry> entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * 取出第 index 个条目的预取内容
+         * @return 未预取（目录、大文件或超出内存预算）时返回 null，由调用方流式读取
+         */
+        byte[] take(int index) throws IOException {
+            fill();
+            Future<byte[]> future = pending.remove(index);
+            next = Math.max(next, index + 1);
+            if (future == null) {
+                return null;
+            }
+            long size = entries.get(index).getFile().getFileSize();
+            bufferedBytes -= size;
+            fill();
+            try {
+                byte[] data = future.get();
+                // 按实际读到的长度归还，与预留不同时先修正
+                if (data.length != size) {
+                    prefetchedBytes.addAndGet(data.length - size);
+                }
+                return data;
+            } catch (InterruptedException e) {
+                releasePrefetch(size);
+                Thread.currentThread().interrupt();
+                throw new BusinessException("文件压缩被中断");
+            } catch (ExecutionException e) {
+                releasePrefetch(size);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new BusinessException("读取文件失败: " + cause.getMessage());
+            }
+        }
+
+        private void fill() {
+            while (next < entries.size() && pending.size() < archiveConfig.getPrefetchCount()) {
+                ArchiveEntry entry = entries.get(next);
+                if (!isPrefetchable(entry)) {
+                    next++;
+                    continue;
+                }
+                long size = entry.getFile().getFileSize();
+                if (bufferedBytes + size > archiveConfig.getPrefetchMemory() && !pending.isEmpty()) {
+                    return;
+                }
+                if (!reservePrefetch(size)) {
+                    // 全局预算用满：有在途预取时等它们写出后再试，否则该文件改为流式读取
+                    if (!pending.isEmpty()) {
+                        return;
+                    }
+                    next++;
+                    continue;
+                }
+                bufferedBytes += size;
+                String path = entry.getFile().getFilePath();
+                pending.put(next, prefetchExecutor.submit(() -> {
+                    try (InputStream inputStream = fileStorageService.openStream(path)) {
+                        return inputStream.readAllBytes();
+                    }
+                }));
+                next++;
+            }
+        }
+
+        void cancel() {
+            pending.forEach((index, future) -> {
+                future.cancel(true);
+                releasePrefetch(entries.get(index).getFile().getFileSize());
+            });
+            pending.clear();
+            bufferedBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.neu.easypam.file.service.impl;
+
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.neu.easypam.file.config.DownloadConfig;
+import com.neu.easypam.file.service.AsyncDownloadService;
+import com.neu.easypam.file.service.BandwidthService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AsyncDownloadServiceImpl implements AsyncDownloadService {
+
+    private final DownloadConfig downloadConfig;
+    private final BandwidthService bandwidthService;
+
+    // 读取对象存储的线程：对象存储在内网，读取一块很快，慢的是客户端
+    private ExecutorService ioExecutor;
+    // 限速等待结束后再交付数据块，不占用读取线程
+    private ScheduledExecutorService throttleScheduler;
+
+    @PostConstruct
+    public void init() {
+        int threads = downloadConfig.getIoThreads();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("download-io-").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        ioExecutor = executor;
+        throttleScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("download-throttle-").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        throttleScheduler.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    @Override
+    public void start(HttpServletRequest request, HttpServletResponse response, Callable<InputStream> source,
+                      Long userId, String shareCode) throws IOException {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // 传输时长取决于文件大小和客户端网速，不设超时；客户端断开时由 onError 结束
+        asyncContext.setTimeout(0);
+        Transfer transfer = new Transfer(asyncContext, response, source, userId, shareCode);
+        asyncContext.addListener(transfer);
+        // 注册后容器在输出可写时回调 onWritePossible
+        response.getOutputStream().setWriteListener(transfer);
+    }
+
+    /**
+     * 单个连接的传输状态
+     * 读取线程读好下一块后交付，输出可写时写出；写出当前块的同时预读下一块。
+     * 写出只在 isReady() 为 true 时进行，不会阻塞任何线程，状态变更都在对象锁内完成
+     */
+    private class Transfer implements WriteListener, AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final ServletOutputStream outputStream;
+        private final Callable<InputStream> source;
+        private final Long userId;
+        private final String shareCode;
+
+        private InputStream inputStream;
+        // 已读取、等待写出的数据块
+        private byte[] chunk;
+        private int chunkLength;
+        private boolean reading;
+        private boolean eof;
+        private boolean finished;
+
+        Transfer(AsyncContext asyncContext, HttpServletResponse response, Callable<InputStream> source,
+                 Long userId, String shareCode) throws IOException {
+            this.asyncContext = asyncContext;
+            this.response = response;
+            this.outputStream = response.getOutputStream();
+            this.source = source;
+            this.userId = userId;
+            this.shareCode = shareCode;
+        }
+
+        @Override
+        public void onWritePossible() {
+            pump();
+        }
+
+        /**
+         * 在输出可写期间尽量写出；没有可写数据时发起读取，读到后由读取线程再次调用
+         */
+        private synchronized void pump() {
+            try {
+                while (!finished && outputStream.isReady()) {
+                    if (chunk != null) {
+                        byte[] data = chunk;
+                        int length = chunkLength;
+                        chunk = null;
+                        readAhead();
+                        outputStream.write(data, 0, length);
+                        continue;
+                    }
+                    if (eof) {
+                        finish();
+                        return;
+                    }
+                    readAhead();
+                    return;
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void readAhead() {
+            if (reading || eof) {
+                return;
+            }
+            reading = true;
+            ioExecutor.execute(this::readChunk);
+        }
+
+        /**
+         * 读取线程：读取一块并预扣限速令牌，需要等待时延后交付
+         */
+        private void readChunk() {
+            byte[] buffer = new byte[downloadConfig.getChunkSize()];
+            int length;
+            try {
+                InputStream in = openSource();
+                if (in == null) {
+                    return;
+                }
+                length = in.readNBytes(buffer, 0, buffer.length);
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            long wait = length > 0 ? bandwidthService.acquire(length, userId, shareCode) : 0;
+            if (wait > 0) {
+                throttleScheduler.schedule(() -> deliver(buffer, length), wait, TimeUnit.NANOSECONDS);
+            } else {
+                deliver(buffer, length);
+            }
+        }
+
+        private InputStream openSource() throws Exception {
+            synchronized (this) {
+                if (finished) {
+                    return null;
+                }
+                if (inputStream != null) {
+                    return inputStream;
+                }
+            }
+            InputStream opened = source.call();
+            synchronized (this) {
+                if (finished) {
+                    IoUtil.close(opened);
+                    return null;
+                }
+                inputStream = opened;
+                return opened;
+            }
+        }
+
+        private void deliver(byte[] buffer, int length) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                reading = false;
+                // 读不满一块说明已到流末尾，省去一次读取
+                eof = length < buffer.length;
+                if (length > 0) {
+                    chunk = buffer;
+                    chunkLength = length;
+                }
+            }
+            pump();
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            IoUtil.close(inputStream);
+            asyncContext.complete();
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            IoUtil.close(inputStream);
+            if (response.isCommitted()) {
+                // 多数是客户端中途断开
+                log.debug("非阻塞下载中断：{}", e.getMessage());
+            } else {
+                log.error("非阻塞下载失败", e);
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            Throwable t = event.getThrowable();
+            fail(t != null ? t : new IOException("下载连接异常"));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            fail(new TimeoutException("下载超时"));
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            finished = true;
+            IoUtil.close(inputStream);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
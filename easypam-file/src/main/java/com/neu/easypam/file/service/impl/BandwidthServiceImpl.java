@@ -0,0 +1,162 @@
+package com.neu.easypam.file.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.neu.easypam.file.config.BandwidthConfig;
+import com.neu.easypam.file.service.BandwidthService;
+import com.neu.easypam.file.util.TokenBucket;
+import com.neu.easypam.file.vo.BandwidthStatsVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Service
+@RequiredArgsConstructor
+public class BandwidthServiceImpl implements BandwidthService {
+
+    private final BandwidthConfig bandwidthConfig;
+
+    // 每次申请令牌的最大字节数，避免一次大块写入长时间独占带宽
+    private static final int SLICE_SIZE = 16 * 1024;
+
+    private final TokenBucket globalBucket = new TokenBucket(0);
+
+    // 空闲一段时间的用户 / 分享令牌桶自动回收
+    private final Cache<Long, TokenBucket> userBuckets = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+    private final Cache<String, TokenBucket> shareBuckets = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder throttledBytes = new LongAdder();
+    private final LongAdder throttleWaitNanos = new LongAdder();
+
+    @Override
+    public OutputStream throttle(OutputStream outputStream, Long userId, String shareCode) {
+        if (!bandwidthConfig.isEnabled()) {
+            return outputStream;
+        }
+        return new ThrottledOutputStream(outputStream, userId, shareCode);
+    }
+
+    @Override
+    public long acquire(int bytes, Long userId, String shareCode) {
+        if (!bandwidthConfig.isEnabled()) {
+            return 0;
+        }
+        long wait = reserve(bytes, userId, shareCode);
+        totalBytes.add(bytes);
+        if (wait > 0) {
+            throttledBytes.add(bytes);
+            throttleWaitNanos.add(wait);
+        }
+        return wait;
+    }
+
+    @Override
+    public boolean isThrottled(Long userId, boolean shared) {
+        if (!bandwidthConfig.isEnabled()) {
+            return false;
+        }
+        return (userId != null && bandwidthConfig.getUserRate() > 0)
+                || (shared && bandwidthConfig.getShareRate() > 0);
+    }
+
+    @Override
+    public BandwidthStatsVO getStats() {
+        BandwidthStatsVO stats = new BandwidthStatsVO();
+        stats.setTotalBytes(totalBytes.sum());
+        stats.setThrottledBytes(throttledBytes.sum());
+        stats.setThrottleWaitMillis(TimeUnit.NANOSECONDS.toMillis(throttleWaitNanos.sum()));
+        stats.setGlobalRate(bandwidthConfig.getGlobalRate());
+        stats.setUserRate(bandwidthConfig.getUserRate());
+        stats.setShareRate(bandwidthConfig.getShareRate());
+        stats.setActiveUserBuckets(userBuckets.estimatedSize());
+        stats.setActiveShareBuckets(shareBuckets.estimatedSize());
+        return stats;
+    }
+
+    /**
+     * 从各级令牌桶预扣令牌，返回需要等待的最长时间
+     * 每次都读取最新配置，Nacos 调整速率后无需重建令牌桶
+     */
+    private long reserve(int bytes, Long userId, String shareCode) {
+        long wait = 0;
+        long globalRate = bandwidthConfig.getGlobalRate();
+        if (globalRate > 0) {
+            wait = globalBucket.reserve(bytes, globalRate, capacity(globalRate));
+        }
+        long userRate = bandwidthConfig.getUserRate();
+        if (userId != null && userRate > 0) {
+            TokenBucket bucket = userBuckets.get(userId, k -> new TokenBucket(capacity(userRate)));
+            wait = Math.max(wait, bucket.reserve(bytes, userRate, capacity(userRate)));
+        }
+        long shareRate = bandwidthConfig.getShareRate();
+        if (shareCode != null && shareRate > 0) {
+            TokenBucket bucket = shareBuckets.get(shareCode, k -> new TokenBucket(capacity(shareRate)));
+            wait = Math.max(wait, bucket.reserve(bytes, shareRate, capacity(shareRate)));
+        }
+        return wait;
+    }
+
+    private long capacity(long rate) {
+        // 容量至少容纳一次申请，否则每次写入都会等待
+        return Math.max(rate * bandwidthConfig.getBurstMillis() / 1000, SLICE_SIZE);
+    }
+
+    /**
+     * 限速输出流：按片申请令牌，令牌不足时阻塞当前下载线程
+     */
+    private class ThrottledOutputStream extends FilterOutputStream {
+
+        private final Long userId;
+        private final String shareCode;
+
+        ThrottledOutputStream(OutputStream out, Long userId, String shareCode) {
+            super(out);
+            this.userId = userId;
+            this.shareCode = shareCode;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int slice = Math.min(len, SLICE_SIZE);
+                long wait = acquire(slice, userId, shareCode);
+                if (wait > 0) {
+                    pause(wait);
+                }
+                out.write(b, off, slice);
+                off += slice;
+                len -= slice;
+            }
+        }
+
+        private void pause(long nanos) throws IOException {
+            long deadline = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("下载限速等待被中断");
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.neu.easypam.file.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.baomidou.mybatisplus.extension.toolkit.Db;
+import com.neu.easypam.common.exception.BusinessException;
+import com.neu.easypam.file.config.BlockStoreConfig;
+import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.entity.FileBlock;
+import com.neu.easypam.file.entity.FileStorageBlock;
+import com.neu.easypam.file.mapper.FileBlockMapper;
+import com.neu.easypam.file.mapper.FileStorageBlockMapper;
+import com.neu.easypam.file.service.BlockStoreService;
+import com.neu.easypam.file.util.FastCdcChunker;
+import com.neu.easypam.file.util.TransactionUtils;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BlockStoreServiceImpl extends ServiceImpl<FileBlockMapper, FileBlock> implements BlockStoreService {
+
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final BlockStoreConfig blockStoreConfig;
+    private final FileStorageBlockMapper fileStorageBlockMapper;
+
+    private static final String BLOCK_PREFIX = "blocks/";
+
+    @Override
+    public boolean supports(long size) {
+        return blockStoreConfig.isEnabled() && size >= 0 && size >= blockStoreConfig.getMinFileSize();
+    }
+
+    @Override
+    public List<FileStorageBlock> writeBlocks(InputStream inputStream) {
+        FastCdcChunker chunker = new FastCdcChunker(inputStream, blockStoreConfig.getMinBlockSize(),
+                blockStoreConfig.getAvgBlockSize(), blockStoreConfig.getMaxBlockSize());
+        List<FileStorageBlock> manifest = new ArrayList<>();
+        long offset = 0;
+        int reused = 0;
+        try {
+            byte[] chunk;
+            while ((chunk = chunker.nextChunk()) != null) {
+                String hash = DigestUtil.sha256Hex(chunk);
+                FileBlock block = findByHash(hash);
+                if (block != null && baseMapper.touch(block.getId()) == 0) {
+                    // 查到后刚好被回收，重新上传
+                    block = null;
+                }
+                if (block == null) {
+                    block = uploadBlock(hash, chunk);
+                } else {
+                    reused++;
+                }
+
+                FileStorageBlock item = new FileStorageBlock();
+                item.setBlockIndex(manifest.size());
+                item.setBlockId(block.getId());
+                item.setBlockPath(block.getStoragePath());
+                item.setBlockOffset(offset);
+                item.setBlockSize(chunk.length);
+                manifest.add(item);
+                offset += chunk.length;
+            }
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BusinessException("分块存储失败：" + e.getMessage());
+        }
+        log.info("分块完成：总大小={}，块数={}，复用块={}", offset, manifest.size(), reused);
+        return manifest;
+    }
+
+    private FileBlock findByHash(String hash) {
+        return getOne(new LambdaQueryWrapper<FileBlock>()
+                .eq(FileBlock::getBlockHash, hash)
+                .last("LIMIT 1"));
+    }
+
+    /**
+     * 上传新块。块路径包含块记录 ID，回收旧记录时删除的对象不会是重新上传的同内容块
+     */
+    private FileBlock uploadBlock(String hash, byte[] chunk) throws Exception {
+        FileBlock block = new FileBlock();
+        block.setId(IdWorker.getId(block));
+        String storagePath = BLOCK_PREFIX + hash.substring(0, 2) + "/" + hash + "-" + block.getId();
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(minioConfig.getBucket())
+                .object(storagePath)
+                .stream(new ByteArrayInputStream(chunk), chunk.length, -1)
+                .contentType("application/octet-stream")
+                .build());
+
+        block.setBlockHash(hash);
+        block.setStoragePath(storagePath);
+        block.setBlockSize(chunk.length);
+        // 引用计数在保存块清单时增加，未被引用的块由定时任务回收
+        block.setRefCount(0);
+        try {
+            save(block);
+            return block;
+        } catch (DuplicateKeyException e) {
+            // 并发上传了相同的块：删除本次写入的对象，复用先登记的块
+            deleteFromMinio(storagePath);
+            FileBlock existing = findByHash(hash);
+            if (existing == null || baseMapper.touch(existing.getId()) == 0) {
+                throw new BusinessException("分块存储失败：块记录冲突");
+            }
+            return existing;
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void saveManifest(Long storageId, List<FileStorageBlock> blocks) {
+        blocks.forEach(block -> block.setStorageId(storageId));
+        Db.saveBatch(blocks);
+
+        // 同一块在文件内可能出现多次，按块聚合后一次性增加引用
+        Map<Long, Long> refs = blocks.stream()
+                .collect(Collectors.groupingBy(FileStorageBlock::getBlockId, Collectors.counting()));
+        refs.forEach((blockId, count) -> {
+            int rows = baseMapper.incrementRefCount(blockId, count.intValue());
+            if (rows == 0) {
+                // 块在上传过程中被并发回收
+                throw new BusinessException("块存储并发冲突，请重试");
+            }
+        });
+    }
+
+    @Override
+    public InputStream open(Long storageId, long offset, long length) {
+        LambdaQueryWrapper<FileStorageBlock> wrapper = new LambdaQueryWrapper<FileStorageBlock>()
+                .eq(FileStorageBlock::getStorageId, storageId)
+                .apply("block_offset + block_size > {0}", offset)
+                .orderByAsc(FileStorageBlock::getBlockIndex);
+        long end = length >= 0 ? offset + length : Long.MAX_VALUE;
+        if (length >= 0) {
+            wrapper.lt(FileStorageBlock::getBlockOffset, end);
+        }
+        Iterator<FileStorageBlock> iterator = fileStorageBlockMapper.selectList(wrapper).iterator();
+
+        // 按需逐块打开，首尾块只读取需要的区间
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                FileStorageBlock block = iterator.next();
+                long blockStart = Math.max(offset - block.getBlockOffset(), 0);
+                long blockEnd = Math.min(end - block.getBlockOffset(), block.getBlockSize());
+                return openBlock(block.getBlockPath(), blockStart, blockEnd - blockStart);
+            }
+        });
+    }
+
+    private InputStream openBlock(String blockPath, long offset, long length) {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(blockPath)
+                    .offset(offset)
+                    .length(length)
+                    .build());
+        } catch (Exception e) {
+            throw new BusinessException("读取数据块失败：" + blockPath);
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void release(Long storageId) {
+        List<FileStorageBlock> blocks = fileStorageBlockMapper.selectList(new LambdaQueryWrapper<FileStorageBlock>()
+                .eq(FileStorageBlock::getStorageId, storageId));
+        Map<Long, FileStorageBlock> blockById = blocks.stream()
+                .collect(Collectors.toMap(FileStorageBlock::getBlockId, Function.identity(), (a, b) -> a));
+        Map<Long, Long> refs = blocks.stream()
+                .collect(Collectors.groupingBy(FileStorageBlock::getBlockId, Collectors.counting()));
+
+        int deleted = 0;
+        for (Map.Entry<Long, Long> entry : refs.entrySet()) {
+            baseMapper.decrementRefCount(entry.getKey(), entry.getValue().intValue());
+            if (baseMapper.deleteIfUnreferenced(entry.getKey()) > 0) {
+                // 事务提交后再删除实际块，回滚时块仍可用
+                String blockPath = blockById.get(entry.getKey()).getBlockPath();
+                TransactionUtils.afterCommit(() -> deleteFromMinio(blockPath));
+                deleted++;
+            }
+        }
+        fileStorageBlockMapper.delete(new LambdaQueryWrapper<FileStorageBlock>()
+                .eq(FileStorageBlock::getStorageId, storageId));
+        log.info("释放块清单：storageId={}，块数={}，物理删除块={}", storageId, blocks.size(), deleted);
+    }
+
+    @Override
+    public int cleanupUnreferencedBlocks(LocalDateTime before, int limit) {
+        List<FileBlock> candidates = list(new LambdaQueryWrapper<FileBlock>()
+                .eq(FileBlock::getRefCount, 0)
+                .lt(FileBlock::getUpdateTime, before)
+                .last("LIMIT " + limit));
+        int deleted = 0;
+        for (FileBlock block : candidates) {
+            // 条件删除：查询之后被上传复用（刷新了更新时间）或被块清单引用的块不会删除，只有删除了记录才删除对象
+            if (baseMapper.deleteIfUnreferencedBefore(block.getId(), before) > 0) {
+                deleteFromMinio(block.getStoragePath());
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private void deleteFromMinio(String storagePath) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(storagePath)
+                    .build());
+        } catch (Exception e) {
+            log.error("MinIO 块删除失败：{}", storagePath, e);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.neu.easypam.file.service.impl;
 
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.neu.easypam.common.exception.BusinessException;
 import com.neu.easypam.common.feign.StorageFeignClient;
 import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.dto.StagedObject;
 import com.neu.easypam.file.entity.ChunkUpload;
 import com.neu.easypam.file.entity.FileInfo;
 import com.neu.easypam.file.entity.FileStorage;
@@ -12,20 +16,34 @@ import com.neu.easypam.file.mapper.ChunkUploadMapper;
 import com.neu.easypam.file.service.ChunkUploadService;
 import com.neu.easypam.file.service.FileService;
 import com.neu.easypam.file.service.FileStorageService;
+import com.neu.easypam.file.util.MultipartMinioClient;
+import com.neu.easypam.file.util.ResumableMd5;
 import com.neu.easypam.file.vo.ChunkInitVO;
+import com.neu.easypam.file.vo.ChunkVerifyStatsVO;
 import io.minio.*;
+import io.minio.http.Method;
 import io.minio.messages.Part;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
@@ -33,17 +51,80 @@ import java.util.stream.Collectors;
 public class ChunkUploadServiceImpl extends ServiceImpl<ChunkUploadMapper, ChunkUpload> implements ChunkUploadService {
 
     private final MinioClient minioClient;
+    // 签发面向客户端的分片直传地址（签名包含 Host，必须使用客户端访问的地址签发）
+    @Qualifier("presignMinioClient")
+    private final MinioClient presignMinioClient;
     private final MinioConfig minioConfig;
     private final StorageFeignClient storageFeignClient;
     private final FileService fileService;
     private final FileStorageService fileStorageService;
+    private final MultipartMinioClient multipartMinioClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TransactionTemplate transactionTemplate;
 
     // 默认分片大小：5MB
     private static final int DEFAULT_CHUNK_SIZE = 5 * 1024 * 1024;
+    // S3 分片上传限制：除最后一片外每片至少 5MB，最多 10000 片
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int MAX_PART_COUNT = 10000;
+    // 单个分片最大 5GB（S3 限制），分片大小按 INT 存储，实际上限取两者较小值
+    private static final long MAX_PART_SIZE = Math.min(5L * 1024 * 1024 * 1024, Integer.MAX_VALUE);
+
+    // 分片进度：Redis 位图（第 i 位表示第 i 个分片已上传）+ ETag 哈希，hash tag 保证同槽
+    private static final String CHUNK_BITMAP_KEY = "file:chunk:{%d}:bitmap";
+    private static final String CHUNK_ETAG_KEY = "file:chunk:{%d}:etags";
+    // 整文件 MD5 增量计算状态：next 为下一个待计算分片，state 为中间状态，e{i} 为参与计算的分片 ETag
+    private static final String CHUNK_MD5_KEY = "file:chunk:{%d}:md5";
+    // 整文件 MD5 校验统计（全部节点累计）：merged 合并次数，fallback 补读次数，fallbackBytes 补读字节数
+    private static final String MD5_VERIFY_STATS_KEY = "file:chunk:md5:stats";
+    private static final long CHUNK_PROGRESS_EXPIRE_SECONDS = 7 * 24 * 3600;
+    // 分片直传URL有效期
+    private static final int PRESIGNED_PART_EXPIRE_MINUTES = 60;
+    // 进行中上传登记：相同内容（md5 + 大小）的并发上传只由第一个任务实际上传，其余任务等待其完成
+    private static final String INFLIGHT_UPLOAD_KEY = "file:chunk:inflight:%s:%d";
+    // 领导任务超过该时间没有分片进展视为停滞，跟随任务可接管上传
+    private static final long INFLIGHT_EXPIRE_SECONDS = 10 * 60;
+
+    /**
+     * Lua脚本：原子记录分片完成
+     * KEYS[1]: 分片位图key
+     * KEYS[2]: 分片ETag哈希key
+     * ARGV[1]: 分片索引
+     * ARGV[2]: 分片ETag
+     * ARGV[3]: 过期时间（秒）
+     * 返回已上传分片数
+     */
+    private static final String MARK_CHUNK_SCRIPT = """
+            redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])
+            redis.call('SETBIT', KEYS[1], ARGV[1], 1)
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            return redis.call('BITCOUNT', KEYS[1])
+            """;
+
+    /**
+     * Lua脚本：接续整文件 MD5 中间状态（只有期望的下一个分片能推进）
+     * KEYS[1]: MD5 状态哈希key
+     * ARGV[1]: 分片索引
+     * ARGV[2]: 计算该分片后的中间状态
+     * ARGV[3]: 分片ETag
+     * ARGV[4]: 过期时间（秒）
+     * 返回 1 表示推进成功
+     */
+    private static final String FOLD_CHUNK_SCRIPT = """
+            local next = tonumber(redis.call('HGET', KEYS[1], 'next') or '0')
+            if next ~= tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'next', next + 1, 'state', ARGV[2], 'e' .. ARGV[1], ARGV[3])
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """;
 
 
     @Override
-    public ChunkInitVO initUpload(Long userId, Long parentId, String fileName, Long fileSize, String fileMd5, Integer chunkSize) {
+    public ChunkInitVO initUpload(Long userId, Long parentId, String fileName, Long fileSize, String fileMd5,
+                                  Integer chunkSize, boolean presigned) {
         // 1. 校验存储空间
         storageFeignClient.validateSpace(userId, fileSize);
 
@@ -63,12 +144,21 @@ public class ChunkUploadServiceImpl extends ServiceImpl<ChunkUploadMapper, Chunk
                 .eq(ChunkUpload::getStatus, 0));
 
         if (existingTask != null) {
-            return buildChunkInitVO(existingTask);
+            if (existingTask.getMultipartUploadId() != null || existingTask.getLeaderUploadId() != null) {
+                return buildChunkInitVO(existingTask, presigned);
+            }
+            // 旧版任务（分片存为独立对象）无法续传，作废后重新上传
+            existingTask.setStatus(2);
+            updateById(existingTask);
         }
 
-        // 4. 创建新的上传任务
-        int actualChunkSize = chunkSize != null ? chunkSize : DEFAULT_CHUNK_SIZE;
-        int chunkCount = (int) Math.ceil((double) fileSize / actualChunkSize);
+        // 4. 创建新的上传任务（分片大小需满足对象存储的分片限制）
+        long actualChunkSize = Math.max(chunkSize != null ? chunkSize : DEFAULT_CHUNK_SIZE, MIN_PART_SIZE);
+        actualChunkSize = Math.max(actualChunkSize, (fileSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        if (actualChunkSize > MAX_PART_SIZE) {
+            throw new BusinessException("文件过大，超出分片上传上限");
+        }
+        int chunkCount = (int) Math.max(1, (fileSize + actualChunkSize - 1) / actualChunkSize);
 
         ChunkUpload task = new ChunkUpload();
         task.setUserId(userId);
@@ -76,57 +166,290 @@ public class ChunkUploadServiceImpl extends ServiceImpl<ChunkUploadMapper, Chunk
         task.setFileName(fileName);
         task.setFileSize(fileSize);
         task.setFileMd5(fileMd5);
-        task.setChunkSize(actualChunkSize);
+        task.setChunkSize(Math.toIntExact(actualChunkSize));
         task.setChunkCount(chunkCount);
         task.setUploadedChunks("");
+        task.setPartEtags("");
         task.setStatus(0);
+
+        // 5. 相同内容正在被其他任务上传：加入该任务，等待其完成后直接引用存储
+        ChunkUpload leader = findInflightLeader(fileMd5, fileSize);
+        if (leader != null) {
+            task.setLeaderUploadId(leader.getId());
+            save(task);
+            log.info("相同内容正在上传，加入等待: uploadId={}, leaderUploadId={}", task.getId(), leader.getId());
+            return buildChunkInitVO(task, presigned);
+        }
+
+        // 6. 在 MinIO 上开启分片上传会话，分片直接写入最终对象
+        startMultipartUpload(task);
         save(task);
+        registerInflight(task);
 
-        ChunkInitVO vo = new ChunkInitVO();
-        vo.setUploadId(task.getId());
-        vo.setQuickUpload(false);
-        vo.setUploadedChunks(new ArrayList<>());
-        vo.setChunkCount(chunkCount);
-        return vo;
+        return buildChunkInitVO(task, presigned);
+    }
+
+    private void startMultipartUpload(ChunkUpload task) {
+        String storagePath = buildStoragePath(task.getFileName());
+        try {
+            ensureBucketExists();
+            task.setMultipartUploadId(multipartMinioClient.initiate(
+                    minioConfig.getBucket(), storagePath, getContentType(task.getFileName())));
+            task.setStoragePath(storagePath);
+        } catch (Exception e) {
+            log.error("初始化分片上传会话失败", e);
+            throw new BusinessException("初始化分片上传失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查找正在上传相同内容的领导任务
+     */
+    private ChunkUpload findInflightLeader(String fileMd5, Long fileSize) {
+        String leaderId = stringRedisTemplate.opsForValue().get(inflightKey(fileMd5, fileSize));
+        if (leaderId == null) {
+            return null;
+        }
+        ChunkUpload leader = getById(Long.valueOf(leaderId));
+        return leader != null && leader.getStatus() == 0 && leader.getMultipartUploadId() != null ? leader : null;
+    }
+
+    private String inflightKey(String fileMd5, Long fileSize) {
+        return String.format(INFLIGHT_UPLOAD_KEY, fileMd5, fileSize);
+    }
+
+    private void registerInflight(ChunkUpload task) {
+        stringRedisTemplate.opsForValue().setIfAbsent(inflightKey(task.getFileMd5(), task.getFileSize()),
+                String.valueOf(task.getId()), INFLIGHT_EXPIRE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private boolean isInflightLeader(ChunkUpload task) {
+        return String.valueOf(task.getId()).equals(
+                stringRedisTemplate.opsForValue().get(inflightKey(task.getFileMd5(), task.getFileSize())));
+    }
+
+    /**
+     * 领导任务有分片进展时续期登记
+     */
+    private void touchInflight(ChunkUpload task) {
+        if (isInflightLeader(task)) {
+            stringRedisTemplate.expire(inflightKey(task.getFileMd5(), task.getFileSize()),
+                    INFLIGHT_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void releaseInflight(ChunkUpload task) {
+        if (isInflightLeader(task)) {
+            stringRedisTemplate.delete(inflightKey(task.getFileMd5(), task.getFileSize()));
+        }
+    }
+
+    /**
+     * 处理跟随任务：领导任务已完成则直接引用其存储；已取消或停滞则由当前任务接管上传
+     * @return 引用存储成功时返回文件信息
+     */
+    private FileInfo resolveFollower(ChunkUpload task) {
+        ChunkUpload leader = getById(task.getLeaderUploadId());
+        if (leader != null && leader.getStatus() == 1) {
+            FileStorage storage = fileStorageService.getOne(new LambdaQueryWrapper<FileStorage>()
+                    .eq(FileStorage::getMd5, task.getFileMd5())
+                    .last("LIMIT 1"));
+            if (storage != null) {
+                // 条件更新任务状态，防止并发轮询重复创建文件记录
+                boolean claimed = lambdaUpdate()
+                        .eq(ChunkUpload::getId, task.getId())
+                        .eq(ChunkUpload::getStatus, 0)
+                        .set(ChunkUpload::getStatus, 1)
+                        .update();
+                if (!claimed) {
+                    task.setStatus(getById(task.getId()).getStatus());
+                    return null;
+                }
+                FileInfo fileInfo = null;
+                try {
+                    fileInfo = fileService.linkStorage(storage, task.getFileName(), task.getUserId(), task.getParentId());
+                } finally {
+                    if (fileInfo == null) {
+                        lambdaUpdate().eq(ChunkUpload::getId, task.getId()).set(ChunkUpload::getStatus, 0).update();
+                    }
+                }
+                if (fileInfo != null) {
+                    task.setStatus(1);
+                    log.info("相同内容上传完成，直接引用存储: uploadId={}, leaderUploadId={}", task.getId(), leader.getId());
+                    return fileInfo;
+                }
+            }
+        }
+
+        if (leader != null && leader.getStatus() == 0 && isInflightLeader(leader)) {
+            return null;
+        }
+
+        // 领导任务已取消、停滞或存储已被删除：优先加入新的领导任务，否则由当前任务接管
+        ChunkUpload newLeader = findInflightLeader(task.getFileMd5(), task.getFileSize());
+        if (newLeader != null && !newLeader.getId().equals(task.getLeaderUploadId())
+                && isInflightLeader(newLeader)) {
+            task.setLeaderUploadId(newLeader.getId());
+            lambdaUpdate().eq(ChunkUpload::getId, task.getId())
+                    .set(ChunkUpload::getLeaderUploadId, newLeader.getId())
+                    .update();
+            return null;
+        }
+        startMultipartUpload(task);
+        lambdaUpdate().eq(ChunkUpload::getId, task.getId())
+                .set(ChunkUpload::getStoragePath, task.getStoragePath())
+                .set(ChunkUpload::getMultipartUploadId, task.getMultipartUploadId())
+                .set(ChunkUpload::getLeaderUploadId, null)
+                .update();
+        log.info("接管相同内容的上传: uploadId={}, 原leaderUploadId={}", task.getId(), task.getLeaderUploadId());
+        task.setLeaderUploadId(null);
+        registerInflight(task);
+        return null;
     }
 
     @Override
-    public void uploadChunk(Long uploadId, Integer chunkIndex, MultipartFile file, Long userId) {
+    public void uploadChunk(Long uploadId, Integer chunkIndex, MultipartFile file, String chunkMd5, Long userId) {
         // 1. 获取上传任务
-        ChunkUpload task = getById(uploadId);
-        if (task == null || !task.getUserId().equals(userId)) {
-            throw new BusinessException("上传任务不存在或无权限");
-        }
-        if (task.getStatus() != 0) {
-            throw new BusinessException("上传任务已完成或已取消");
+        ChunkUpload task = getUploadingTask(uploadId, chunkIndex, userId);
+        long expectedSize = getExpectedChunkSize(task, chunkIndex);
+        if (file.getSize() != expectedSize) {
+            throw new BusinessException("分片大小不正确，期望: " + expectedSize + "，实际: " + file.getSize());
         }
 
         try {
-            // 2. 上传分片到MinIO
-            String chunkPath = getChunkPath(task.getId(), chunkIndex);
-            ensureBucketExists();
-            
+            // 2. 该分片恰好是整文件 MD5 待计算的下一个分片时，接续中间状态边上传边计算
+            String md5Key = String.format(CHUNK_MD5_KEY, task.getId());
+            List<Object> md5State = stringRedisTemplate.opsForHash().multiGet(md5Key, List.of("next", "state"));
+            int next = md5State.get(0) != null ? Integer.parseInt((String) md5State.get(0)) : 0;
+            ResumableMd5 fileDigest = next == chunkIndex ? ResumableMd5.restore((String) md5State.get(1)) : null;
+            MessageDigest chunkDigest = DigestUtil.digester(DigestAlgorithm.MD5).getDigest();
+
+            // 3. 作为 MinIO 分片直接上传（partNumber 从1开始），同时计算分片 MD5
+            String etag;
             try (InputStream inputStream = file.getInputStream()) {
-                minioClient.putObject(PutObjectArgs.builder()
-                        .bucket(minioConfig.getBucket())
-                        .object(chunkPath)
-                        .stream(inputStream, file.getSize(), -1)
-                        .build());
+                InputStream digestStream = new DigestInputStream(inputStream, chunkDigest);
+                if (fileDigest != null) {
+                    digestStream = fileDigest.wrap(digestStream);
+                }
+                etag = multipartMinioClient.uploadPart(minioConfig.getBucket(), task.getStoragePath(),
+                        task.getMultipartUploadId(), chunkIndex + 1, digestStream, file.getSize());
             }
 
-            // 3. 更新已上传分片记录
-            updateUploadedChunks(task, chunkIndex);
-            log.info("分片上传成功: uploadId={}, chunkIndex={}", uploadId, chunkIndex);
+            // 4. 校验客户端提供的分片 MD5
+            String actualChunkMd5 = HexUtil.encodeHexStr(chunkDigest.digest());
+            if (chunkMd5 != null && !chunkMd5.equalsIgnoreCase(actualChunkMd5)) {
+                throw new BusinessException("分片" + chunkIndex + "校验失败，请重新上传");
+            }
 
+            // 5. 原子记录分片进度（无需加锁，多线程多实例并发安全）
+            long uploadedCount = markChunkUploaded(task.getId(), chunkIndex, etag);
+            // 乱序到达的分片（并行上传）不在请求线程上等待前序分片，合并时从未接续的位置补读
+            if (fileDigest != null) {
+                foldChunk(task.getId(), chunkIndex, fileDigest.exportState(), etag);
+            }
+            touchInflight(task);
+            log.info("分片上传成功: uploadId={}, chunkIndex={}, 进度={}/{}",
+                    uploadId, chunkIndex, uploadedCount, task.getChunkCount());
+
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("分片上传失败", e);
             throw new BusinessException("分片上传失败: " + e.getMessage());
         }
     }
 
+    private long getExpectedChunkSize(ChunkUpload task, int chunkIndex) {
+        if (chunkIndex < task.getChunkCount() - 1) {
+            return task.getChunkSize();
+        }
+        return task.getFileSize() - (long) task.getChunkSize() * (task.getChunkCount() - 1);
+    }
+
+    private void foldChunk(Long uploadId, int chunkIndex, String state, String etag) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>(FOLD_CHUNK_SCRIPT, Long.class);
+        stringRedisTemplate.execute(script, List.of(String.format(CHUNK_MD5_KEY, uploadId)),
+                String.valueOf(chunkIndex), state, etag, String.valueOf(CHUNK_PROGRESS_EXPIRE_SECONDS));
+    }
+
+    /**
+     * 校验整文件 MD5，防止客户端声明的 MD5 与内容不符而污染去重表
+     * 经服务端上传的分片已在上传时按顺序增量计算，只需补读未能接续计算的部分（乱序到达的分片及其之后的分片，或直传模式）
+     */
+    private void verifyFileMd5(ChunkUpload task, Map<Integer, String> etags) throws Exception {
+        Map<Object, Object> md5State = stringRedisTemplate.opsForHash()
+                .entries(String.format(CHUNK_MD5_KEY, task.getId()));
+        int hashed = md5State.get("next") != null ? Integer.parseInt((String) md5State.get("next")) : 0;
+        // 参与计算的必须是最终合并的那次分片上传，否则从头计算
+        for (int i = 0; i < hashed; i++) {
+            if (!Objects.equals(etags.get(i), md5State.get("e" + i))) {
+                hashed = 0;
+                break;
+            }
+        }
+        ResumableMd5 fileDigest = hashed > 0
+                ? ResumableMd5.restore((String) md5State.get("state")) : new ResumableMd5();
+
+        stringRedisTemplate.opsForHash().increment(MD5_VERIFY_STATS_KEY, "merged", 1);
+        if (hashed < task.getChunkCount()) {
+            long offset = (long) hashed * task.getChunkSize();
+            stringRedisTemplate.opsForHash().increment(MD5_VERIFY_STATS_KEY, "fallback", 1);
+            stringRedisTemplate.opsForHash().increment(MD5_VERIFY_STATS_KEY, "fallbackBytes", task.getFileSize() - offset);
+            try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(task.getStoragePath())
+                    .offset(offset)
+                    .build())) {
+                fileDigest.wrap(inputStream).transferTo(OutputStream.nullOutputStream());
+            }
+            log.warn("补读计算整文件MD5: uploadId={}, 起始分片={}, 补读字节={}",
+                    task.getId(), hashed, task.getFileSize() - offset);
+        }
+
+        if (!fileDigest.hex().equalsIgnoreCase(task.getFileMd5())) {
+            deleteFromMinio(task.getStoragePath());
+            lambdaUpdate().eq(ChunkUpload::getId, task.getId())
+                    .eq(ChunkUpload::getStatus, 0)
+                    .set(ChunkUpload::getStatus, 2)
+                    .update();
+            clearChunkProgress(task.getId());
+            releaseInflight(task);
+            throw new BusinessException("文件内容与声明的MD5不一致，请重新上传");
+        }
+    }
+
+
+    @Override
+    public void reportChunk(Long uploadId, Integer chunkIndex, String etag, Long userId) {
+        ChunkUpload task = getUploadingTask(uploadId, chunkIndex, userId);
+        if (etag == null || etag.isBlank()) {
+            throw new BusinessException("分片ETag不能为空");
+        }
+        // 直传模式下分片已写入对象存储，这里只记录进度；ETag 错误会在合并时被对象存储拒绝
+        long uploadedCount = markChunkUploaded(task.getId(), chunkIndex, etag.replace("\"", ""));
+        touchInflight(task);
+        log.info("直传分片上报: uploadId={}, chunkIndex={}, 进度={}/{}",
+                uploadId, chunkIndex, uploadedCount, task.getChunkCount());
+    }
+
+    private ChunkUpload getUploadingTask(Long uploadId, Integer chunkIndex, Long userId) {
+        ChunkUpload task = getById(uploadId);
+        if (task == null || !task.getUserId().equals(userId)) {
+            throw new BusinessException("上传任务不存在或无权限");
+        }
+        if (task.getStatus() != 0) {
+            throw new BusinessException("上传任务已完成或已取消");
+        }
+        if (task.getMultipartUploadId() == null) {
+            throw new BusinessException("相同内容正在上传中，无需上传分片");
+        }
+        if (chunkIndex == null || chunkIndex < 0 || chunkIndex >= task.getChunkCount()) {
+            throw new BusinessException("分片索引越界");
+        }
+        return task;
+    }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public FileInfo mergeChunks(Long uploadId, Long userId) {
         // 1. 获取上传任务
         ChunkUpload task = getById(uploadId);
@@ -137,142 +460,322 @@ public class ChunkUploadServiceImpl extends ServiceImpl<ChunkUploadMapper, Chunk
             throw new BusinessException("上传任务已完成或已取消");
         }
 
-        // 2. 检查所有分片是否已上传
-        List<Integer> uploadedChunks = parseUploadedChunks(task.getUploadedChunks());
-        if (uploadedChunks.size() != task.getChunkCount()) {
-            throw new BusinessException("还有分片未上传完成，已上传: " + uploadedChunks.size() + "/" + task.getChunkCount());
+        // 跟随任务：领导任务完成后直接引用存储
+        if (task.getLeaderUploadId() != null) {
+            FileInfo fileInfo = resolveFollower(task);
+            if (fileInfo != null) {
+                return fileInfo;
+            }
+            if (task.getStatus() != 0) {
+                throw new BusinessException("上传任务已完成或已取消");
+            }
+            if (task.getLeaderUploadId() != null) {
+                throw new BusinessException("相同内容正在上传中，请稍后重试");
+            }
         }
 
-        try {
-            // 3. 合并分片
-            String finalPath = mergeChunksInMinio(task);
-
-            // 4. 创建文件记录
-            FileInfo fileInfo = createFileRecord(task, finalPath);
-
-            // 5. 更新存储空间
-            storageFeignClient.addUsedSpace(userId, task.getFileSize());
-
-            // 6. 更新任务状态
-            task.setStatus(1);
-            updateById(task);
+        // 2. 检查所有分片是否已上传（BITCOUNT，O(1)）
+        long uploadedCount = countUploadedChunks(task.getId());
+        if (uploadedCount != task.getChunkCount()) {
+            throw new BusinessException("还有分片未上传完成，已上传: " + uploadedCount + "/" + task.getChunkCount());
+        }
 
-            // 7. 删除分片文件
-            deleteChunks(task);
+        try {
+            // 3. 完成分片上传（事务外，服务端拼接，无需 compose 和删除临时分片）
+            Map<Integer, String> etags = getPartEtags(task.getId());
+            try {
+                completeMultipartUpload(task, etags);
+            } catch (Exception e) {
+                // 上次合并已完成分片会话但登记失败时，对象已存在，直接重新登记
+                if (!objectExists(task.getStoragePath())) {
+                    throw e;
+                }
+                log.info("分片会话已完成，重新登记: uploadId={}", uploadId);
+            }
+            verifyMergedSize(task);
+            verifyFileMd5(task, etags);
+            StagedObject staged = fileStorageService.stageExisting(task.getFileMd5(), task.getStoragePath(),
+                    task.getFileSize(), getContentType(task.getFileName()));
+
+            // 4. 短事务：登记存储、创建文件记录、更新存储空间和任务状态
+            // 已完成的任务即全部分片已上传，不再把分片列表和 ETag 写回数据库（上万个分片会超出列长度）
+            FileInfo fileInfo = transactionTemplate.execute(status -> {
+                // 条件更新任务状态，防止并发合并重复创建文件记录
+                boolean updated = lambdaUpdate()
+                        .eq(ChunkUpload::getId, task.getId())
+                        .eq(ChunkUpload::getStatus, 0)
+                        .set(ChunkUpload::getStatus, 1)
+                        .update();
+                if (!updated) {
+                    throw new BusinessException("上传任务已完成或已取消");
+                }
+                FileInfo created = createFileRecord(task, staged);
+                storageFeignClient.addUsedSpace(userId, task.getFileSize());
+                return created;
+            });
+
+            // 5. 分片进度已落库，清理 Redis；跟随任务此后可直接引用存储
+            clearChunkProgress(task.getId());
+            releaseInflight(task);
 
             log.info("分片合并成功: uploadId={}, fileName={}", uploadId, task.getFileName());
             return fileInfo;
 
         } catch (Exception e) {
+            // 合并后的对象保留在暂存记录中，重试合并时复用，超时未登记由定时任务回收
             log.error("分片合并失败", e);
             throw new BusinessException("分片合并失败: " + e.getMessage());
         }
     }
 
     @Override
-    public ChunkInitVO getUploadStatus(Long uploadId, Long userId) {
+    public void cancelUpload(Long uploadId, Long userId) {
         ChunkUpload task = getById(uploadId);
         if (task == null || !task.getUserId().equals(userId)) {
             throw new BusinessException("上传任务不存在或无权限");
         }
-        return buildChunkInitVO(task);
+        if (task.getStatus() != 0) {
+            throw new BusinessException("上传任务已完成或已取消");
+        }
+
+        // 取消 MinIO 分片上传会话，释放已上传的分片（跟随任务没有会话）
+        if (task.getMultipartUploadId() != null) {
+            try {
+                multipartMinioClient.abort(minioConfig.getBucket(), task.getStoragePath(), task.getMultipartUploadId());
+            } catch (Exception e) {
+                log.warn("取消分片上传会话失败: uploadId={}, {}", uploadId, e.getMessage());
+            }
+            // 跟随任务下次轮询时接管上传
+            releaseInflight(task);
+        }
+
+        task.setStatus(2);
+        updateById(task);
+        clearChunkProgress(uploadId);
+        log.info("分片上传已取消: uploadId={}", uploadId);
     }
 
-    private ChunkInitVO buildChunkInitVO(ChunkUpload task) {
+    @Override
+    public ChunkVerifyStatsVO getMd5VerifyStats() {
+        Map<Object, Object> stats = stringRedisTemplate.opsForHash().entries(MD5_VERIFY_STATS_KEY);
+        ChunkVerifyStatsVO vo = new ChunkVerifyStatsVO();
+        vo.setMergedCount(parseLong(stats.get("merged")));
+        vo.setFallbackCount(parseLong(stats.get("fallback")));
+        vo.setFallbackBytes(parseLong(stats.get("fallbackBytes")));
+        vo.setFallbackRate(vo.getMergedCount() > 0 ? (double) vo.getFallbackCount() / vo.getMergedCount() : 0.0);
+        return vo;
+    }
+
+    private long parseLong(Object value) {
+        return value != null ? Long.parseLong((String) value) : 0L;
+    }
+
+    @Override
+    public ChunkInitVO getUploadStatus(Long uploadId, Long userId, boolean presigned) {
+        ChunkUpload task = getById(uploadId);
+        if (task == null || !task.getUserId().equals(userId)) {
+            throw new BusinessException("上传任务不存在或无权限");
+        }
+        return buildChunkInitVO(task, presigned);
+    }
+
+    private ChunkInitVO buildChunkInitVO(ChunkUpload task, boolean presigned) {
         ChunkInitVO vo = new ChunkInitVO();
         vo.setUploadId(task.getId());
+        if (task.getStatus() == 0 && task.getLeaderUploadId() != null) {
+            FileInfo fileInfo = resolveFollower(task);
+            if (fileInfo != null) {
+                vo.setQuickUpload(true);
+                vo.setFileId(fileInfo.getId());
+                return vo;
+            }
+            if (task.getStatus() == 0 && task.getLeaderUploadId() != null) {
+                vo.setQuickUpload(false);
+                vo.setWaiting(true);
+                vo.setUploadedChunks(Collections.emptyList());
+                vo.setChunkCount(task.getChunkCount());
+                vo.setChunkSize(task.getChunkSize());
+                return vo;
+            }
+        }
         vo.setQuickUpload(false);
-        vo.setUploadedChunks(parseUploadedChunks(task.getUploadedChunks()));
+        vo.setWaiting(false);
+        vo.setUploadedChunks(task.getStatus() == 0
+                ? getUploadedChunks(task.getId())
+                : task.getStatus() == 1 ? allChunks(task.getChunkCount()) : Collections.emptyList());
         vo.setChunkCount(task.getChunkCount());
+        vo.setChunkSize(task.getChunkSize());
+        if (presigned && task.getStatus() == 0) {
+            vo.setPartUploadUrls(presignMissingParts(task, vo.getUploadedChunks()));
+        }
         return vo;
     }
 
-    private List<Integer> parseUploadedChunks(String uploadedChunks) {
-        if (uploadedChunks == null || uploadedChunks.isEmpty()) {
-            return new ArrayList<>();
+    /**
+     * 为未上传的分片签发预签名 PUT URL，客户端直传 MinIO 后通过 report 接口上报 ETag
+     * 使用客户端可访问的地址（minio.public-endpoint）签发
+     */
+    private Map<Integer, String> presignMissingParts(ChunkUpload task, List<Integer> uploadedChunks) {
+        Set<Integer> uploaded = new HashSet<>(uploadedChunks);
+        Map<Integer, String> urls = new TreeMap<>();
+        try {
+            for (int i = 0; i < task.getChunkCount(); i++) {
+                if (uploaded.contains(i)) {
+                    continue;
+                }
+                urls.put(i, presignMinioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                        .method(Method.PUT)
+                        .bucket(minioConfig.getBucket())
+                        .object(task.getStoragePath())
+                        .extraQueryParams(Map.of(
+                                "uploadId", task.getMultipartUploadId(),
+                                "partNumber", String.valueOf(i + 1)))
+                        .expiry(PRESIGNED_PART_EXPIRE_MINUTES, TimeUnit.MINUTES)
+                        .build()));
+            }
+        } catch (Exception e) {
+            log.error("签发分片直传URL失败", e);
+            throw new BusinessException("签发分片直传URL失败");
+        }
+        return urls;
+    }
+
+    /**
+     * 校验合并后对象大小与初始化时声明的一致（直传模式下服务端不经手分片数据）
+     */
+    private boolean objectExists(String objectName) {
+        try {
+            minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(objectName)
+                    .build());
+            return true;
+        } catch (Exception e) {
+            return false;
         }
-        return Arrays.stream(uploadedChunks.split(","))
-                .filter(s -> !s.isEmpty())
-                .map(Integer::parseInt)
-                .sorted()
-                .collect(Collectors.toList());
     }
 
-    private synchronized void updateUploadedChunks(ChunkUpload task, Integer chunkIndex) {
-        List<Integer> chunks = parseUploadedChunks(task.getUploadedChunks());
-        if (!chunks.contains(chunkIndex)) {
-            chunks.add(chunkIndex);
-            Collections.sort(chunks);
-            task.setUploadedChunks(chunks.stream().map(String::valueOf).collect(Collectors.joining(",")));
-            updateById(task);
+    private void verifyMergedSize(ChunkUpload task) throws Exception {
+        long actualSize = minioClient.statObject(StatObjectArgs.builder()
+                .bucket(minioConfig.getBucket())
+                .object(task.getStoragePath())
+                .build()).size();
+        if (actualSize != task.getFileSize()) {
+            deleteFromMinio(task.getStoragePath());
+            throw new BusinessException("文件大小不一致，声明: " + task.getFileSize() + "，实际: " + actualSize);
         }
     }
 
+    private List<Integer> allChunks(int chunkCount) {
+        return IntStream.range(0, chunkCount).boxed().collect(Collectors.toList());
+    }
 
-    private String mergeChunksInMinio(ChunkUpload task) throws Exception {
-        // 生成最终文件路径
-        String extension = task.getFileName().contains(".") 
-                ? task.getFileName().substring(task.getFileName().lastIndexOf(".")) 
-                : "";
-        String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
-        String finalPath = datePath + "/" + UUID.randomUUID().toString().replace("-", "") + extension;
+    /**
+     * 原子标记分片已上传，返回已上传分片数
+     */
+    private long markChunkUploaded(Long uploadId, Integer chunkIndex, String etag) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>(MARK_CHUNK_SCRIPT, Long.class);
+        Long count = stringRedisTemplate.execute(script,
+                List.of(String.format(CHUNK_BITMAP_KEY, uploadId), String.format(CHUNK_ETAG_KEY, uploadId)),
+                String.valueOf(chunkIndex), etag, String.valueOf(CHUNK_PROGRESS_EXPIRE_SECONDS));
+        return count != null ? count : 0;
+    }
 
-        // 收集所有分片
-        List<ComposeSource> sources = new ArrayList<>();
-        for (int i = 0; i < task.getChunkCount(); i++) {
-            String chunkPath = getChunkPath(task.getId(), i);
-            sources.add(ComposeSource.builder()
-                    .bucket(minioConfig.getBucket())
-                    .object(chunkPath)
-                    .build());
+    private long countUploadedChunks(Long uploadId) {
+        byte[] key = String.format(CHUNK_BITMAP_KEY, uploadId).getBytes(StandardCharsets.UTF_8);
+        Long count = stringRedisTemplate.execute(
+                (RedisCallback<Long>) connection -> connection.stringCommands().bitCount(key));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 读取位图，解析出已上传的分片索引（Redis 位序：字节内高位在前）
+     */
+    private List<Integer> getUploadedChunks(Long uploadId) {
+        byte[] key = String.format(CHUNK_BITMAP_KEY, uploadId).getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = stringRedisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        List<Integer> chunks = new ArrayList<>();
+        if (bitmap == null) {
+            return chunks;
         }
+        for (int i = 0; i < bitmap.length; i++) {
+            for (int bit = 0; bit < 8; bit++) {
+                if ((bitmap[i] & (0x80 >>> bit)) != 0) {
+                    chunks.add(i * 8 + bit);
+                }
+            }
+        }
+        return chunks;
+    }
 
-        // 合并分片
-        minioClient.composeObject(ComposeObjectArgs.builder()
-                .bucket(minioConfig.getBucket())
-                .object(finalPath)
-                .sources(sources)
-                .build());
+    private Map<Integer, String> getPartEtags(Long uploadId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash()
+                .entries(String.format(CHUNK_ETAG_KEY, uploadId));
+        Map<Integer, String> etags = new TreeMap<>();
+        entries.forEach((k, v) -> etags.put(Integer.parseInt(k.toString()), v.toString()));
+        return etags;
+    }
 
-        return finalPath;
+    @Override
+    public int cleanupExpiredUploads(LocalDateTime before, int limit) {
+        List<ChunkUpload> candidates = list(new LambdaQueryWrapper<ChunkUpload>()
+                .eq(ChunkUpload::getStatus, 0)
+                .lt(ChunkUpload::getUpdateTime, before)
+                .last("LIMIT " + limit));
+        for (ChunkUpload task : candidates) {
+            // 分片进度在每次上传分片时续期，仍存在说明任务还在上传，只刷新检查时间
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(String.format(CHUNK_BITMAP_KEY, task.getId())))) {
+                lambdaUpdate().eq(ChunkUpload::getId, task.getId())
+                        .set(ChunkUpload::getUpdateTime, LocalDateTime.now())
+                        .update();
+                continue;
+            }
+            // 条件更新，与并发合并竞争，合并已开始登记的任务不回收
+            boolean expired = lambdaUpdate()
+                    .eq(ChunkUpload::getId, task.getId())
+                    .eq(ChunkUpload::getStatus, 0)
+                    .set(ChunkUpload::getStatus, 2)
+                    .update();
+            if (!expired) {
+                continue;
+            }
+            if (task.getMultipartUploadId() != null) {
+                try {
+                    multipartMinioClient.abort(minioConfig.getBucket(), task.getStoragePath(),
+                            task.getMultipartUploadId());
+                } catch (Exception e) {
+                    log.warn("中止过期的分片上传会话失败: uploadId={}, {}", task.getId(), e.getMessage());
+                }
+                releaseInflight(task);
+            }
+            clearChunkProgress(task.getId());
+            log.info("回收过期的上传任务: uploadId={}, fileName={}", task.getId(), task.getFileName());
+        }
+        return candidates.size();
     }
 
-    private void deleteChunks(ChunkUpload task) {
+    private void clearChunkProgress(Long uploadId) {
+        stringRedisTemplate.delete(List.of(String.format(CHUNK_BITMAP_KEY, uploadId),
+                String.format(CHUNK_ETAG_KEY, uploadId), String.format(CHUNK_MD5_KEY, uploadId)));
+    }
+
+    private void completeMultipartUpload(ChunkUpload task, Map<Integer, String> etags) throws Exception {
+        Part[] parts = new Part[task.getChunkCount()];
         for (int i = 0; i < task.getChunkCount(); i++) {
-            try {
-                String chunkPath = getChunkPath(task.getId(), i);
-                minioClient.removeObject(RemoveObjectArgs.builder()
-                        .bucket(minioConfig.getBucket())
-                        .object(chunkPath)
-                        .build());
-            } catch (Exception e) {
-                log.warn("删除分片失败: {}", e.getMessage());
+            String etag = etags.get(i);
+            if (etag == null) {
+                throw new BusinessException("分片" + i + "缺少ETag，请重新上传该分片");
             }
+            parts[i] = new Part(i + 1, etag);
         }
+        multipartMinioClient.complete(minioConfig.getBucket(), task.getStoragePath(),
+                task.getMultipartUploadId(), parts);
     }
 
-    private FileInfo createFileRecord(ChunkUpload task, String filePath) {
-        // 检查是否已存在相同 MD5 的存储（去重）
-        FileStorage existing = fileStorageService.findByMd5(task.getFileMd5());
-        
-        FileStorage storage;
-        if (existing != null) {
-            // 已存在相同内容，删除刚合并的文件，复用已有存储
-            deleteFromMinio(filePath);
-            fileStorageService.incrementRef(existing.getId());
-            storage = existing;
-            log.info("分片上传去重命中：md5={}，refCount={}", task.getFileMd5(), existing.getRefCount() + 1);
-        } else {
-            // 创建新的存储记录
-            storage = new FileStorage();
-            storage.setMd5(task.getFileMd5());
-            storage.setStoragePath(filePath);
-            storage.setFileSize(task.getFileSize());
-            storage.setContentType(getContentType(task.getFileName()));
-            storage.setRefCount(1);
-            fileStorageService.save(storage);
-            log.info("分片上传新存储：md5={}，path={}", task.getFileMd5(), filePath);
-        }
+    private FileInfo createFileRecord(ChunkUpload task, StagedObject staged) {
+        // 登记存储（已存在相同内容时删除刚合并的文件，复用已有存储）
+        FileStorage storage = fileStorageService.commit(staged);
         
         // 创建用户文件记录
         FileInfo fileInfo = new FileInfo();
@@ -326,8 +829,12 @@ public class ChunkUploadServiceImpl extends ServiceImpl<ChunkUploadMapper, Chunk
         return "other";
     }
 
-    private String getChunkPath(Long uploadId, Integer chunkIndex) {
-        return "chunks/" + uploadId + "/" + chunkIndex;
+    private String buildStoragePath(String fileName) {
+        String extension = fileName != null && fileName.contains(".")
+                ? fileName.substring(fileName.lastIndexOf("."))
+                : "";
+        String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
+        return datePath + "/" + UUID.randomUUID().toString().replace("-", "") + extension;
     }
 
     private void ensureBucketExists() throws Exception {
@@ -5,6 +5,7 @@ import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.neu.easypam.file.entity.FileInfo;
 import com.neu.easypam.file.service.FileCacheService;
 import com.neu.easypam.file.service.FileService;
+import com.neu.easypam.file.service.HotContentService;
 import com.neu.easypam.file.vo.CacheStatsVO;
 import com.neu.easypam.file.vo.HotFileVO;
 import lombok.extern.slf4j.Slf4j;
@@ -25,6 +26,7 @@ public class FileCacheServiceImpl implements FileCacheService {
     private final Cache<Long, FileInfo> fileMetadataCache;
     private final RedisTemplate<String, Object> redisTemplate;
     private final FileService fileService;
+    private final HotContentService hotContentService;
 
     private static final String REDIS_FILE_PREFIX = "file:info:";
     private static final String HOT_FILE_KEY = "file:hot:access";
@@ -32,10 +34,12 @@ public class FileCacheServiceImpl implements FileCacheService {
 
     public FileCacheServiceImpl(Cache<Long, FileInfo> fileMetadataCache,
                                  RedisTemplate<String, Object> redisTemplate,
-                                 @Lazy FileService fileService) {
+                                 @Lazy FileService fileService,
+                                 @Lazy HotContentService hotContentService) {
         this.fileMetadataCache = fileMetadataCache;
         this.redisTemplate = redisTemplate;
         this.fileService = fileService;
+        this.hotContentService = hotContentService;
     }
 
     @Override
@@ -127,6 +131,19 @@ public class FileCacheServiceImpl implements FileCacheService {
         log.info("热度衰减完成，处理 {} 条", all.size());
     }
 
+    @Override
+    public List<Long> getHotFileIds(double minScore, int limit) {
+        Set<Object> members = redisTemplate.opsForZSet()
+                .reverseRangeByScore(HOT_FILE_KEY, minScore, Double.MAX_VALUE, 0, limit);
+        List<Long> result = new ArrayList<>();
+        if (members != null) {
+            for (Object member : members) {
+                result.add(Long.parseLong(member.toString()));
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<HotFileVO> getHotFiles(int limit) {
         Set<ZSetOperations.TypedTuple<Object>> topFiles = redisTemplate.opsForZSet()
@@ -174,6 +191,12 @@ public class FileCacheServiceImpl implements FileCacheService {
         Long hotCount = redisTemplate.opsForZSet().zCard(HOT_FILE_KEY);
         stats.setHotFileCount(hotCount != null ? hotCount.intValue() : 0);
 
+        // 热点内容缓存
+        stats.setContentCacheSize(hotContentService.getCachedCount());
+        stats.setContentCacheBytes(hotContentService.getCachedBytes());
+        stats.setContentHitCount(hotContentService.getHitCount());
+        stats.setContentMissCount(hotContentService.getMissCount());
+
         return stats;
     }
 }
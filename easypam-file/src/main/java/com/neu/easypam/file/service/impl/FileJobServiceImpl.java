@@ -0,0 +1,384 @@
+package com.neu.easypam.file.service.impl;
+
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.neu.easypam.common.exception.BusinessException;
+import com.neu.easypam.common.mq.NotifyProducer;
+import com.neu.easypam.file.config.FileJobConfig;
+import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.entity.FileJob;
+import com.neu.easypam.file.mapper.FileJobMapper;
+import com.neu.easypam.file.service.FileJobService;
+import com.neu.easypam.file.service.FileService;
+import com.neu.easypam.file.vo.FileJobVO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileJobServiceImpl extends ServiceImpl<FileJobMapper, FileJob> implements FileJobService {
+
+    private final FileJobConfig fileJobConfig;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+    private final NotifyProducer notifyProducer;
+
+    // 任务列表返回的条数
+    private static final int RECENT_JOB_LIMIT = 50;
+
+    // 每次扫描接管的任务数
+    private static final int RECOVER_BATCH = 100;
+
+    // 本实例标识，与每次认领生成的随机串组成执行者租约
+    private static final String INSTANCE_ID = NetUtil.getLocalHostName();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = fileJobConfig.getThreads();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("file-job-").setDaemon(true).build());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // 执行中的任务停在批次之间，检查点已提交，心跳超时后由其他实例接管
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Long submit(String jobType, Long userId, Long fileId, Long targetParentId) {
+        if (fileId != null) {
+            FileInfo file = fileService.getById(fileId);
+            if (file == null || (!FileJob.Type.SAVE_SHARED.equals(jobType) && !file.getUserId().equals(userId))) {
+                throw new BusinessException("文件不存在或无权限");
+            }
+        }
+        long active = count(new LambdaQueryWrapper<FileJob>()
+                .eq(FileJob::getUserId, userId)
+                .in(FileJob::getStatus, FileJob.Status.PENDING, FileJob.Status.RUNNING));
+        if (active >= fileJobConfig.getMaxActivePerUser()) {
+            throw new BusinessException("进行中的任务过多，请稍后再试");
+        }
+
+        FileJob job = new FileJob();
+        job.setUserId(userId);
+        job.setJobType(jobType);
+        job.setFileId(fileId);
+        job.setTargetParentId(targetParentId);
+        job.setStatus(FileJob.Status.PENDING);
+        job.setPhase(FileJob.Phase.PREPARE);
+        job.setCancelRequested(0);
+        job.setTotalCount(0);
+        job.setProcessedCount(0);
+        job.setHeartbeatTime(LocalDateTime.now());
+        save(job);
+
+        executor.execute(() -> run(job.getId()));
+        log.info("用户{}提交后台任务：jobId={}, type={}, fileId={}", userId, job.getId(), jobType, fileId);
+        return job.getId();
+    }
+
+    @Override
+    public FileJobVO getJob(Long jobId, Long userId) {
+        FileJob job = getById(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new BusinessException("任务不存在");
+        }
+        return toVO(job);
+    }
+
+    @Override
+    public List<FileJobVO> listJobs(Long userId) {
+        return list(new LambdaQueryWrapper<FileJob>()
+                .eq(FileJob::getUserId, userId)
+                .orderByDesc(FileJob::getCreateTime)
+                .last("LIMIT " + RECENT_JOB_LIMIT))
+                .stream().map(this::toVO).collect(Collectors.toList());
+    }
+
+    @Override
+    public void cancel(Long jobId, Long userId) {
+        FileJob job = getById(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new BusinessException("任务不存在");
+        }
+        if (job.getStatus() == FileJob.Status.PENDING) {
+            // 与执行线程竞争认领，失败说明任务刚开始执行
+            boolean cancelled = update(new LambdaUpdateWrapper<FileJob>()
+                    .set(FileJob::getStatus, FileJob.Status.CANCELLED)
+                    .set(FileJob::getFinishTime, LocalDateTime.now())
+                    .eq(FileJob::getId, jobId)
+                    .eq(FileJob::getStatus, FileJob.Status.PENDING));
+            if (cancelled) {
+                log.info("用户{}取消排队中的任务：jobId={}", userId, jobId);
+                return;
+            }
+            job = getById(jobId);
+        }
+        if (job.getStatus() != FileJob.Status.RUNNING) {
+            throw new BusinessException("任务已结束");
+        }
+        // 移入回收站 / 恢复开始后根节点已经变更，中途停止会留下一半在回收站中的目录
+        if (FileJob.Type.TRASH.equals(job.getJobType()) || FileJob.Type.RESTORE.equals(job.getJobType())) {
+            throw new BusinessException("该任务已开始执行，无法取消");
+        }
+        update(new LambdaUpdateWrapper<FileJob>()
+                .set(FileJob::getCancelRequested, 1)
+                .eq(FileJob::getId, jobId)
+                .eq(FileJob::getStatus, FileJob.Status.RUNNING));
+        log.info("用户{}请求取消执行中的任务：jobId={}", userId, jobId);
+    }
+
+    @Override
+    public void recoverStaleJobs() {
+        LocalDateTime deadline = LocalDateTime.now().minusSeconds(fileJobConfig.getStaleTimeoutSeconds());
+        List<FileJob> staleJobs = list(new LambdaQueryWrapper<FileJob>()
+                .in(FileJob::getStatus, FileJob.Status.PENDING, FileJob.Status.RUNNING)
+                .lt(FileJob::getHeartbeatTime, deadline)
+                .last("LIMIT " + RECOVER_BATCH));
+        for (FileJob job : staleJobs) {
+            // 乐观锁：多实例同时扫描时只有一个能接管；换发租约后原执行者（可能仍存活）的检查点不再生效
+            boolean claimed = update(new LambdaUpdateWrapper<FileJob>()
+                    .set(FileJob::getOwnerToken, newOwnerToken())
+                    .set(FileJob::getHeartbeatTime, LocalDateTime.now())
+                    .eq(FileJob::getId, job.getId())
+                    .eq(FileJob::getStatus, job.getStatus())
+                    .eq(FileJob::getHeartbeatTime, job.getHeartbeatTime()));
+            if (!claimed) {
+                continue;
+            }
+            log.warn("接管心跳超时的任务：jobId={}, type={}, phase={}, 已处理 {}/{}", job.getId(), job.getJobType(),
+                    job.getPhase(), job.getProcessedCount(), job.getTotalCount());
+            if (job.getStatus() == FileJob.Status.PENDING) {
+                executor.execute(() -> run(job.getId()));
+            } else {
+                executor.execute(() -> execute(getById(job.getId())));
+            }
+        }
+    }
+
+    /**
+     * 认领排队中的任务并执行，已被取消或已被其他实例认领时跳过
+     */
+    private void run(Long jobId) {
+        boolean claimed = update(new LambdaUpdateWrapper<FileJob>()
+                .set(FileJob::getStatus, FileJob.Status.RUNNING)
+                .set(FileJob::getOwnerToken, newOwnerToken())
+                .set(FileJob::getHeartbeatTime, LocalDateTime.now())
+                .eq(FileJob::getId, jobId)
+                .eq(FileJob::getStatus, FileJob.Status.PENDING));
+        if (claimed) {
+            execute(getById(jobId));
+        }
+    }
+
+    /**
+     * 分批执行：每批一个短事务，检查点与本批数据一起提交；批次之间检查取消请求并短暂停顿
+     * 每批先按租约刷新心跳（同时锁住任务行，接管方在本批提交前无法换发租约），
+     * 租约已被接管时回滚本批并退出，避免两个执行者同时处理同一任务
+     */
+    private void execute(FileJob job) {
+        int batchSize = fileJobConfig.getBatchSize();
+        try {
+            while (true) {
+                if (job.getPhase() != FileJob.Phase.UNDO && isCancelRequested(job.getId())) {
+                    if (!job.isCopy()) {
+                        finish(job, FileJob.Status.CANCELLED, null);
+                        return;
+                    }
+                    job.setPhase(FileJob.Phase.UNDO);
+                }
+                boolean done = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    renewLease(job);
+                    boolean finished = job.getPhase() == FileJob.Phase.UNDO
+                            ? fileService.undoJobBatch(job, batchSize)
+                            : fileService.runJobBatch(job, batchSize);
+                    saveCheckpoint(job);
+                    return finished;
+                }));
+                if (done) {
+                    if (job.getPhase() != FileJob.Phase.UNDO) {
+                        finish(job, FileJob.Status.SUCCESS, null);
+                    } else {
+                        // 撤销完成：因失败撤销的保留失败原因，否则是用户取消
+                        finish(job, job.getErrorMsg() != null ? FileJob.Status.FAILED : FileJob.Status.CANCELLED,
+                                job.getErrorMsg());
+                    }
+                    return;
+                }
+                Thread.sleep(fileJobConfig.getBatchIntervalMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("任务随实例关闭中断，等待接管：jobId={}", job.getId());
+        } catch (LeaseLostException e) {
+            log.warn("任务已被其他执行者接管，本批已回滚并停止执行：jobId={}, owner={}", job.getId(), job.getOwnerToken());
+        } catch (Exception e) {
+            handleFailure(job.getOwnerToken(), job.getId(), e);
+        }
+    }
+
+    /**
+     * 本批已回滚，回到最后提交的检查点：复制类任务先撤销已插入的副本，其他任务直接标记失败
+     */
+    private void handleFailure(String ownerToken, Long jobId, Exception e) {
+        String message = e instanceof BusinessException ? e.getMessage() : "任务执行失败：" + e.getMessage();
+        FileJob job = getById(jobId);
+        if (!ownerToken.equals(job.getOwnerToken())) {
+            log.warn("任务已被其他执行者接管，不再处理本次失败：jobId={}, 原因：{}", jobId, message);
+            return;
+        }
+        if (job.isCopy() && job.getPhase() != FileJob.Phase.UNDO) {
+            log.warn("复制任务失败，撤销已复制的部分：jobId={}, 原因：{}", jobId, message);
+            job.setPhase(FileJob.Phase.UNDO);
+            job.setErrorMsg(StrUtil.maxLength(message, 480));
+            boolean owned = update(new LambdaUpdateWrapper<FileJob>()
+                    .set(FileJob::getPhase, job.getPhase())
+                    .set(FileJob::getErrorMsg, job.getErrorMsg())
+                    .eq(FileJob::getId, jobId)
+                    .eq(FileJob::getOwnerToken, ownerToken));
+            if (owned) {
+                execute(job);
+            }
+            return;
+        }
+        log.error("任务执行失败：jobId={}, type={}, phase={}", jobId, job.getJobType(), job.getPhase(), e);
+        finish(job, FileJob.Status.FAILED, message);
+    }
+
+    private boolean isCancelRequested(Long jobId) {
+        FileJob job = getOne(new LambdaQueryWrapper<FileJob>()
+                .select(FileJob::getId, FileJob::getCancelRequested)
+                .eq(FileJob::getId, jobId));
+        return job != null && job.getCancelRequested() != null && job.getCancelRequested() == 1;
+    }
+
+    /**
+     * 按租约刷新心跳，租约已被接管时抛出异常回滚本批
+     */
+    private void renewLease(FileJob job) {
+        boolean owned = update(new LambdaUpdateWrapper<FileJob>()
+                .set(FileJob::getHeartbeatTime, LocalDateTime.now())
+                .eq(FileJob::getId, job.getId())
+                .eq(FileJob::getOwnerToken, job.getOwnerToken()));
+        if (!owned) {
+            throw new LeaseLostException();
+        }
+    }
+
+    /**
+     * 保存检查点并刷新心跳，只更新进度字段，不覆盖并发写入的取消请求；租约已被接管时抛出异常回滚本批
+     */
+    private void saveCheckpoint(FileJob job) {
+        boolean owned = update(new LambdaUpdateWrapper<FileJob>()
+                .set(FileJob::getPhase, job.getPhase())
+                .set(FileJob::getResultFileId, job.getResultFileId())
+                .set(FileJob::getResultPath, job.getResultPath())
+                .set(FileJob::getResultName, job.getResultName())
+                .set(FileJob::getCheckpointPath, job.getCheckpointPath())
+                .set(FileJob::getReservedSpace, job.getReservedSpace())
+                .set(FileJob::getTotalCount, job.getTotalCount())
+                .set(FileJob::getProcessedCount, job.getProcessedCount())
+                .set(FileJob::getHeartbeatTime, LocalDateTime.now())
+                .eq(FileJob::getId, job.getId())
+                .eq(FileJob::getOwnerToken, job.getOwnerToken()));
+        if (!owned) {
+            throw new LeaseLostException();
+        }
+    }
+
+    private void finish(FileJob job, int status, String errorMsg) {
+        boolean owned = update(new LambdaUpdateWrapper<FileJob>()
+                .set(FileJob::getStatus, status)
+                .set(FileJob::getErrorMsg, StrUtil.maxLength(errorMsg, 480))
+                .set(FileJob::getFinishTime, LocalDateTime.now())
+                .eq(FileJob::getId, job.getId())
+                .eq(FileJob::getOwnerToken, job.getOwnerToken()));
+        if (!owned) {
+            log.warn("任务已被其他执行者接管，不再标记结束：jobId={}", job.getId());
+            return;
+        }
+        log.info("任务结束：jobId={}, type={}, status={}, 已处理 {}/{}", job.getId(), job.getJobType(), status,
+                job.getProcessedCount(), job.getTotalCount());
+
+        // 用户主动取消的不再通知
+        if (status == FileJob.Status.SUCCESS) {
+            notifyProducer.sendFileJobFinished(job.getUserId(), job.getId(), typeName(job) + "已完成",
+                    typeName(job) + "已完成，共处理 " + job.getProcessedCount() + " 项");
+        } else if (status == FileJob.Status.FAILED) {
+            notifyProducer.sendFileJobFinished(job.getUserId(), job.getId(), typeName(job) + "失败",
+                    typeName(job) + "失败：" + errorMsg);
+        }
+    }
+
+    private static String newOwnerToken() {
+        return INSTANCE_ID + ":" + IdUtil.fastSimpleUUID();
+    }
+
+    /**
+     * 租约已被其他执行者接管
+     */
+    private static class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super("任务租约已被接管", null, false, false);
+        }
+    }
+
+    private static String typeName(FileJob job) {
+        return switch (job.getJobType()) {
+            case FileJob.Type.COPY -> "复制";
+            case FileJob.Type.SAVE_SHARED -> "保存分享";
+            case FileJob.Type.TRASH -> "移入回收站";
+            case FileJob.Type.RESTORE -> "恢复";
+            case FileJob.Type.DELETE -> "彻底删除";
+            case FileJob.Type.EMPTY_TRASH -> "清空回收站";
+            default -> "文件任务";
+        };
+    }
+
+    private FileJobVO toVO(FileJob job) {
+        FileJobVO vo = new FileJobVO();
+        vo.setJobId(job.getId());
+        vo.setJobType(job.getJobType());
+        vo.setFileId(job.getFileId());
+        vo.setResultFileId(job.getResultFileId());
+        vo.setStatus(job.getStatus());
+        vo.setTotalCount(job.getTotalCount());
+        vo.setProcessedCount(job.getProcessedCount());
+        int total = job.getTotalCount() != null ? job.getTotalCount() : 0;
+        int processed = job.getProcessedCount() != null ? job.getProcessedCount() : 0;
+        if (job.getStatus() == FileJob.Status.SUCCESS) {
+            vo.setProgress(100);
+        } else {
+            // 收尾阶段仍有少量工作，完成前最多显示 99%
+            vo.setProgress(total > 0 ? (int) Math.min(99, processed * 100L / total) : 0);
+        }
+        vo.setErrorMsg(job.getErrorMsg());
+        vo.setCreateTime(job.getCreateTime());
+        vo.setFinishTime(job.getFinishTime());
+        return vo;
+    }
+}
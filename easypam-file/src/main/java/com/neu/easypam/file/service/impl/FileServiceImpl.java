@@ -2,32 +2,60 @@ package com.neu.easypam.file.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.lang.UUID;
-import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.neu.easypam.common.dto.SaveShareDTO;
 import com.neu.easypam.common.exception.BusinessException;
 import com.neu.easypam.common.feign.StorageFeignClient;
+import com.neu.easypam.file.config.DownloadConfig;
 import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.dto.StagedObject;
 import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.entity.FileJob;
+import com.neu.easypam.file.entity.FileJobFolder;
 import com.neu.easypam.file.entity.FileStorage;
+import com.neu.easypam.file.mapper.FileJobFolderMapper;
 import com.neu.easypam.file.mapper.FileMapper;
 import com.neu.easypam.file.mq.FileIndexProducer;
+import com.neu.easypam.file.service.ArchiveService;
+import com.neu.easypam.file.service.AsyncDownloadService;
+import com.neu.easypam.file.service.BandwidthService;
+import com.neu.easypam.file.service.BlockStoreService;
 import com.neu.easypam.file.service.FileService;
 import com.neu.easypam.file.service.FileStorageService;
 import com.neu.easypam.file.service.FileCacheService;
+import com.neu.easypam.file.service.HotContentService;
 import com.neu.easypam.file.service.ThumbnailService;
+import com.neu.easypam.file.util.HttpRange;
+import com.neu.easypam.file.util.ListCursor;
+import com.neu.easypam.file.util.ServletUploadContext;
+import com.neu.easypam.file.util.TarLayout;
+import com.neu.easypam.file.util.TransactionUtils;
+import com.neu.easypam.file.util.ZipDirectory;
+import com.neu.easypam.file.vo.CursorPageVO;
+import com.neu.easypam.file.vo.ZipEntryVO;
 import io.minio.*;
 import io.minio.errors.*;
-import io.minio.http.Method;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.UploadContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
@@ -40,12 +68,19 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -53,8 +88,13 @@ import java.util.zip.ZipOutputStream;
 public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implements FileService {
     private final MinioClient minioClient;
     private final MinioConfig minioConfig;
+    private final DownloadConfig downloadConfig;
     private final ThumbnailService thumbnailService;
     private final FileStorageService fileStorageService;
+    private final ArchiveService archiveService;
+    private final BandwidthService bandwidthService;
+    private final HotContentService hotContentService;
+    private final AsyncDownloadService asyncDownloadService;
     private final FileCacheService fileCacheService;
 
     @Override
@@ -74,8 +114,8 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
             }
         }
 
-        // 3. 计算需要的存储空间
-        long requiredSpace = calculateFolderSize(source, userId);
+        // 3. 计算需要的存储空间（文件夹直接读取统计）
+        long requiredSpace = sizeOf(source);
         storageFeignClient.validateSpace(userId, requiredSpace);
 
         // 4. 执行复制
@@ -85,85 +125,115 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         storageFeignClient.addUsedSpace(userId, requiredSpace);
 
         // 6. 同步 ES 索引（递归发送创建消息）
-        sendCreateIndexRecursive(copiedFile, userId);
+        sendCreateIndexSubtree(copiedFile);
 
         log.info("用户{}复制文件：{} -> parentId={}，占用空间：{}", userId, source.getFileName(), targetParentId, requiredSpace);
         return copiedFile;
     }
 
     /**
-     * 计算文件/文件夹大小
+     * 复制文件或文件夹
      */
-    private long calculateFolderSize(FileInfo file, Long userId) {
-        if (file.getIsFolder() != 1) {
-            return file.getFileSize();
-        }
-
-        // 文件夹：递归计算子内容大小
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, file.getId())
-                .eq(FileInfo::getUserId, userId)
-                .eq(FileInfo::getDeleted, 0));
-
-        long totalSize = 0;
-        for (FileInfo child : children) {
-            totalSize += calculateFolderSize(child, userId);
-        }
-        return totalSize;
+    private FileInfo copyFileOrFolder(FileInfo source, Long targetParentId, Long userId) {
+        // 生成唯一文件名（只有顶层可能重名，子内容复制到新建的文件夹中）
+        String newFileName = generateUniqueFileName(source.getFileName(), targetParentId, userId);
+        return copySubtree(source, userId, targetParentId, newFileName);
     }
 
     /**
-     * 复制文件或文件夹（递归）
+     * 复制子树到目标位置：一次查出源子树，在内存中预分配 ID 和物化路径后批量插入，
+     * 文件复用存储路径，引用计数按存储记录聚合后批量增加
+     * @return 新的子树根节点
      */
-    private FileInfo copyFileOrFolder(FileInfo source, Long targetParentId, Long userId) {
-        // 生成唯一文件名
-        String newFileName = generateUniqueFileName(source.getFileName(), targetParentId, userId);
+    private FileInfo copySubtree(FileInfo source, Long targetUserId, Long targetParentId, String newFileName) {
+        List<FileInfo> copies = planSubtreeCopy(source, targetUserId, targetParentId, newFileName);
+        FileInfo root = copies.get(copies.size() - 1);
+
+        saveBatch(copies, COPY_BATCH_SIZE);
+        addToAncestors(parentPathOf(root.getTreePath()), sizeOf(root), countOf(root));
+        int refCount = addStorageRefs(copies);
+        log.debug("复制子树：{} 个节点，{} 个存储引用", copies.size(), refCount);
+        return root;
+    }
 
-        if (source.getIsFolder() == 1) {
-            // 复制文件夹
-            FileInfo newFolder = new FileInfo();
-            newFolder.setUserId(userId);
-            newFolder.setParentId(targetParentId);
-            newFolder.setFileName(newFileName);
-            newFolder.setIsFolder(1);
-            newFolder.setFileSize(0L);
-            newFolder.setFileType("folder");
-            save(newFolder);
-
-            // 递归复制子内容
-            List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                    .eq(FileInfo::getParentId, source.getId())
-                    .eq(FileInfo::getUserId, userId)
-                    .eq(FileInfo::getDeleted, 0));
+    /**
+     * 生成子树的全部副本（不插入），子树根节点放在最后：
+     * 分批插入时子孙节点先落库，根节点插入后整棵副本才在目标文件夹中可见
+     */
+    private List<FileInfo> planSubtreeCopy(FileInfo source, Long targetUserId, Long targetParentId,
+                                           String newFileName) {
+        // 先查出源子树再创建副本，复制到自身子目录时不会把副本也复制进去
+        Map<Long, List<FileInfo>> children = source.getIsFolder() == 1
+                ? listSubtree(source, 0).stream().collect(Collectors.groupingBy(FileInfo::getParentId))
+                : Collections.emptyMap();
+
+        List<FileInfo> copies = new ArrayList<>();
+        FileInfo root = copyNode(source, targetUserId, targetParentId, getTreePath(targetParentId), newFileName);
+        copyChildren(source.getId(), root, children, copies);
+        copies.add(root);
+        return copies;
+    }
 
-            for (FileInfo child : children) {
-                copyFileOrFolder(child, newFolder.getId(), userId);
-            }
+    /**
+     * 副本复用存储路径，引用计数按存储记录聚合后批量增加
+     * @return 涉及的存储记录数
+     */
+    private int addStorageRefs(List<FileInfo> copies) {
+        Map<Long, Integer> refs = copies.stream()
+                .filter(file -> file.getStorageId() != null)
+                .collect(Collectors.groupingBy(FileInfo::getStorageId, Collectors.summingInt(file -> 1)));
+        if (!refs.isEmpty()) {
+            fileStorageService.incrementRefs(refs);
+        }
+        return refs.size();
+    }
 
-            return newFolder;
-        } else {
-            // 复制文件：创建新记录，复用存储路径，增加引用计数
-            FileInfo newFile = new FileInfo();
-            newFile.setUserId(userId);
-            newFile.setParentId(targetParentId);
-            newFile.setFileName(newFileName);
-            newFile.setStorageId(source.getStorageId());
-            newFile.setFilePath(source.getFilePath());  // 复用存储路径
-            newFile.setFileSize(source.getFileSize());
-            newFile.setContentType(source.getContentType());
-            newFile.setMd5(source.getMd5());
-            newFile.setIsFolder(0);
-            newFile.setFileType(source.getFileType());
-            save(newFile);
-            
-            // 增加存储引用计数
-            if (source.getStorageId() != null) {
-                fileStorageService.incrementRef(source.getStorageId());
-                log.info("文件复制增加引用：storageId={}", source.getStorageId());
+    /**
+     * 复制子内容，同时按实际复制的内容累计副本文件夹的统计
+     */
+    private void copyChildren(Long sourceParentId, FileInfo targetParent, Map<Long, List<FileInfo>> children,
+                              List<FileInfo> copies) {
+        for (FileInfo child : children.getOrDefault(sourceParentId, Collections.emptyList())) {
+            FileInfo copied = copyNode(child, targetParent.getUserId(), targetParent.getId(),
+                    targetParent.getTreePath(), child.getFileName());
+            copies.add(copied);
+            if (child.getIsFolder() == 1) {
+                copyChildren(child.getId(), copied, children, copies);
             }
+            targetParent.setFolderSize(targetParent.getFolderSize() + sizeOf(copied));
+            targetParent.setFileCount(targetParent.getFileCount() + (int) countOf(copied));
+        }
+    }
 
+    /**
+     * 构造副本记录（不插入），预先分配 ID 以便子节点引用
+     */
+    private FileInfo copyNode(FileInfo source, Long targetUserId, Long targetParentId, String parentPath,
+                              String fileName) {
+        FileInfo newFile = new FileInfo();
+        newFile.setId(IdWorker.getId(newFile));
+        newFile.setUserId(targetUserId);
+        newFile.setParentId(targetParentId);
+        newFile.setTreePath(parentPath + newFile.getId() + "/");
+        newFile.setFileName(fileName);
+        newFile.setDeleted(0);
+        if (source.getIsFolder() == 1) {
+            newFile.setIsFolder(1);
+            newFile.setFileType("folder");
+            newFile.setFileSize(0L);
+            newFile.setFolderSize(0L);
+            newFile.setFileCount(0);
             return newFile;
         }
+        // 复制文件：复用存储路径
+        newFile.setStorageId(source.getStorageId());
+        newFile.setFilePath(source.getFilePath());
+        newFile.setFileSize(source.getFileSize());
+        newFile.setContentType(source.getContentType());
+        newFile.setMd5(source.getMd5());
+        newFile.setIsFolder(0);
+        newFile.setFileType(source.getFileType());
+        return newFile;
     }
 
     @Override
@@ -181,22 +251,34 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         }
         
         // 3. 校验目标文件夹（0为根目录，不需要校验）
+        String oldPath = treePathOf(fileInfo);
+        String targetPath = ROOT_TREE_PATH;
         if (targetParentId != 0) {
             FileInfo targetFolder = getById(targetParentId);
             if (targetFolder == null || !targetFolder.getUserId().equals(userId) || targetFolder.getIsFolder() != 1) {
                 throw new BusinessException("目标文件夹不存在或无权限");
             }
-            
-            // 4. 防止循环移动：不能把文件夹移动到自己的子目录下
-            if (fileInfo.getIsFolder() == 1 && isDescendant(fileId, targetParentId, userId)) {
+            targetPath = treePathOf(targetFolder);
+
+            // 4. 防止循环移动：目标文件夹在自身子树中
+            if (fileInfo.getIsFolder() == 1 && targetPath.startsWith(oldPath)) {
                 throw new BusinessException("不能将文件夹移动到其子目录中");
             }
         }
         // 5. 处理同名文件
         String newFileName = generateUniqueFileName(fileInfo.getFileName(), targetParentId, userId);
-        
+
+        // 6. 整棵子树一次改挂，统计从原上级文件夹转移到新上级文件夹
+        String newPath = targetPath + fileId + "/";
+        if (fileInfo.getIsFolder() == 1) {
+            baseMapper.moveSubtree(userId, oldPath, newPath);
+        }
+        if (fileInfo.getDeleted() == 0) {
+            moveAncestorStats(parentPathOf(oldPath), targetPath, sizeOf(fileInfo), countOf(fileInfo));
+        }
         fileInfo.setFileName(newFileName);
         fileInfo.setParentId(targetParentId);
+        fileInfo.setTreePath(newPath);
         updateById(fileInfo);
         
         // 清除缓存
@@ -208,23 +290,6 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         log.info("用户{}移动文件：{} -> parentId={}", userId, fileInfo.getFileName(), targetParentId);
     }
 
-    /**
-     * 检查 targetId 是否是 folderId 的子目录
-     */
-    private boolean isDescendant(Long folderId, Long targetId, Long userId) {
-        Long currentId = targetId;
-        while (currentId != null && currentId != 0) {
-            if (currentId.equals(folderId)) {
-                return true;
-            }
-            FileInfo parent = getById(currentId);
-            if (parent == null || !parent.getUserId().equals(userId)) {
-                break;
-            }
-            currentId = parent.getParentId();
-        }
-        return false;
-    }
     /**
      * 生成唯一文件名，如有重名则添加序号
      */
@@ -273,31 +338,154 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
 
     private final StorageFeignClient storageFeignClient;
     private final FileIndexProducer fileIndexProducer;
+    private final TransactionTemplate transactionTemplate;
+    private final FileJobFolderMapper fileJobFolderMapper;
+
+    // 下载复制缓冲区大小
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+
+    // 根目录的物化路径
+    private static final String ROOT_TREE_PATH = "/";
+
+    // 复制文件夹时每批插入的记录数（配合 rewriteBatchedStatements 合并为多行 INSERT）
+    private static final int COPY_BATCH_SIZE = 1000;
+
+    // 重新计算文件夹统计时每条语句更新的文件夹数
+    private static final int STATS_BATCH_SIZE = 500;
+
+    // 流式上传预检查空间时，从请求体长度中扣除的 multipart 分隔符、部分头和表单字段余量
+    private static final long MULTIPART_OVERHEAD_ALLOWANCE = 16 * 1024;
+
+    // 流式上传每个部分的头部上限（需容纳 UTF-8 编码的长文件名），超出时拒绝，防止超大部分头占用内存
+    private static final int STREAM_PART_HEADER_SIZE_MAX = 2048;
+
+    // 游标分页每页最大条数
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    @Value("${spring.servlet.multipart.max-file-size:500MB}")
+    private DataSize maxFileSize;
+
+    @Value("${spring.servlet.multipart.max-request-size:500MB}")
+    private DataSize maxRequestSize;
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public FileInfo upload(MultipartFile file, Long userId, Long parentId) {
         storageFeignClient.validateSpace(userId, file.getSize());
+
+        // 1. 暂存：写入 MinIO 并计算 MD5（事务外，不占用数据库连接）
+        StagedObject staged = fileStorageService.stage(file);
+
+        // 2. 短事务登记
+        return commitUpload(staged, file.getOriginalFilename(), userId, parentId);
+    }
+
+    @Override
+    public FileInfo uploadStream(HttpServletRequest request, Long userId) {
+        String requestContentType = request.getContentType();
+        if (requestContentType == null || !requestContentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            throw new BusinessException("请使用 multipart/form-data 上传");
+        }
+        // 请求体长度减去 multipart 分隔符和表单字段的余量是文件大小的下限估计，先按它提前拒绝明显超额的上传，
+        // 文件写入后再按实际大小校验（请求体长度包含这些开销，直接按它校验会误拒接近用满空间的上传）
+        UploadContext context = new ServletUploadContext(request);
+        long contentLength = context.contentLength();
+        long checkedSize = Math.max(contentLength - MULTIPART_OVERHEAD_ALLOWANCE, 0);
+        if (checkedSize > 0) {
+            storageFeignClient.validateSpace(userId, checkedSize);
+        }
+
+        FileUpload upload = new FileUpload();
+        upload.setFileSizeMax(maxFileSize.toBytes());
+        upload.setSizeMax(maxRequestSize.toBytes());
+        upload.setPartHeaderSizeMax(STREAM_PART_HEADER_SIZE_MAX);
+
+        Long parentId = 0L;
+        try {
+            FileItemIterator iterator = upload.getItemIterator(context);
+            while (iterator.hasNext()) {
+                FileItemStream item = iterator.next();
+                if (item.isFormField()) {
+                    if ("parentId".equals(item.getFieldName())) {
+                        try {
+                            parentId = Long.valueOf(readFormField(item));
+                        } catch (NumberFormatException e) {
+                            throw new BusinessException("parentId 格式错误");
+                        }
+                    }
+                    continue;
+                }
+                if (!"file".equals(item.getFieldName())) {
+                    continue;
+                }
+
+                // 1. 暂存：文件部分直接流入 MinIO，边读边计算 MD5
+                StagedObject staged;
+                try (InputStream inputStream = item.openStream()) {
+                    staged = fileStorageService.stage(inputStream, -1, item.getName(), item.getContentType());
+                }
+                if (staged.getFileSize() > checkedSize) {
+                    // 实际大小超出预检查范围（分块传输编码没有请求体长度，或表单开销小于余量），按实际大小补充校验
+                    try {
+                        storageFeignClient.validateSpace(userId, staged.getFileSize());
+                    } catch (RuntimeException e) {
+                        fileStorageService.discard(staged);
+                        throw e;
+                    }
+                }
+
+                // 2. parentId 位于文件之后时已按根目录暂存，拒绝上传而不是静默存到根目录
+                try {
+                    while (iterator.hasNext()) {
+                        FileItemStream rest = iterator.next();
+                        if (rest.isFormField() && "parentId".equals(rest.getFieldName())) {
+                            throw new BusinessException("表单字段 parentId 必须位于文件字段 file 之前");
+                        }
+                    }
+                } catch (IOException | FileUploadException | RuntimeException e) {
+                    fileStorageService.discard(staged);
+                    throw e;
+                }
+
+                // 3. 短事务登记
+                return commitUpload(staged, item.getName(), userId, parentId);
+            }
+        } catch (IOException | FileUploadException e) {
+            log.error("流式上传失败", e);
+            throw new BusinessException("文件上传失败: " + e.getMessage());
+        }
+        throw new BusinessException("缺少文件字段 file");
+    }
+
+    private String readFormField(FileItemStream item) throws IOException {
+        try (InputStream inputStream = item.openStream()) {
+            return new String(inputStream.readNBytes(1024), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * 短事务：登记存储、创建文件记录、更新已用空间，失败时丢弃暂存对象
+     */
+    private FileInfo commitUpload(StagedObject staged, String originalName, Long userId, Long parentId) {
+        FileInfo fileInfo;
         try {
-            String md5 = DigestUtil.md5Hex(file.getInputStream());
-            String fileName = generateUniqueFileName(file.getOriginalFilename(), parentId, userId);
-            
-            // 使用去重存储服务（内容寻址）
-            FileStorage storage = fileStorageService.store(file, md5);
-            
-            // 创建用户文件记录，关联存储
-            FileInfo fileInfo = createFileRecordWithStorage(userId, parentId, fileName, storage);
-            
-            storageFeignClient.addUsedSpace(userId, file.getSize());
-            fileIndexProducer.sendCreateMessage(fileInfo);
-            
-            log.info("用户{}上传文件成功：{}，storageId={}，refCount={}", 
-                    userId, fileName, storage.getId(), storage.getRefCount());
-            return fileInfo;
+            fileInfo = transactionTemplate.execute(status -> {
+                String fileName = generateUniqueFileName(originalName, parentId, userId);
+                FileStorage storage = fileStorageService.commit(staged);
+                FileInfo created = createFileRecordWithStorage(userId, parentId, fileName, storage);
+                storageFeignClient.addUsedSpace(userId, storage.getFileSize());
+                log.info("用户{}上传文件成功：{}，storageId={}，refCount={}",
+                        userId, fileName, storage.getId(), storage.getRefCount());
+                return created;
+            });
         } catch (Exception e) {
+            // 补偿：丢弃未登记的暂存对象
+            fileStorageService.discard(staged);
             log.error("文件上传失败", e);
             throw new BusinessException("文件上传失败: " + e.getMessage());
         }
+
+        fileIndexProducer.sendCreateMessage(fileInfo);
+        return fileInfo;
     }
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -379,17 +567,11 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         // 限制最大过期时间为7天
         int minutes = Math.min(expireMinutes != null ? expireMinutes : 60, 7 * 24 * 60);
 
-        try {
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(minioConfig.getBucket())
-                            .object(fileInfo.getFilePath())
-                            .expiry(minutes, TimeUnit.MINUTES)
-                            .build());
-        } catch (Exception e) {
-            throw new BusinessException("获取下载链接失败");
+        if (BlockStoreService.isManifest(fileInfo.getFilePath())) {
+            throw new BusinessException("该文件为分块存储，请使用直接下载");
         }
+
+        return fileStorageService.presignGet(fileInfo.getFilePath(), minutes * 60, null);
     }
     @Override
     public FileInfo quickUpload(String md5, String fileName, Long userId, Long parentId) {
@@ -398,12 +580,20 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         if (storage == null) {
             return null; // 文件不存在，需要正常上传
         }
-        
+        return linkStorage(storage, fileName, userId, parentId);
+    }
+
+    @Override
+    public FileInfo linkStorage(FileStorage storage, String fileName, Long userId, Long parentId) {
         // 校验存储空间
         storageFeignClient.validateSpace(userId, storage.getFileSize());
 
-        // 增加存储引用计数
-        fileStorageService.incrementRef(storage.getId());
+        // 增加存储引用计数（缓存的存储记录可能已被删除，此时按正常上传处理）
+        try {
+            fileStorageService.incrementRef(storage.getId());
+        } catch (BusinessException e) {
+            return null;
+        }
 
         // 创建新的文件记录，关联存储
         FileInfo fileInfo = new FileInfo();
@@ -430,7 +620,8 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
     }
 
     @Override
-    public void download(Long fileId, Long userId, HttpServletResponse response) throws IOException {
+    public void download(Long fileId, Long userId, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
         FileInfo fileInfo = getById(fileId);
         if (fileInfo == null || !fileInfo.getUserId().equals(userId)) {
             throw new BusinessException("文件不存在或无权限");
@@ -439,27 +630,15 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
             throw new BusinessException("文件夹不支持下载");
         }
 
-        try (InputStream inputStream = minioClient.getObject(
-                GetObjectArgs.builder()
-                        .bucket(minioConfig.getBucket())
-                        .object(fileInfo.getFilePath())
-                        .build())) {
-
-            // 设置响应头
-            response.setContentType(fileInfo.getContentType() != null ? fileInfo.getContentType() : "application/octet-stream");
-            response.setContentLengthLong(fileInfo.getFileSize());
-            response.setHeader("Content-Disposition", "attachment; filename=\"" +
-                            URLEncoder.encode(fileInfo.getFileName(), StandardCharsets.UTF_8) + "\"");
-
-            // 流式写入响应
-            OutputStream outputStream = response.getOutputStream();
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+        try {
+            if (checkNotModified(fileInfo, request, response)) {
+                return;
             }
-            outputStream.flush();
-
+            if (redirectIfEnabled(fileInfo, userId, response)) {
+                log.info("用户{}下载文件（重定向）：{}", userId, fileInfo.getFileName());
+                return;
+            }
+            writeFileContent(fileInfo, userId, request, response);
             log.info("用户{}下载文件：{}", userId, fileInfo.getFileName());
         } catch (Exception e) {
             log.error("文件下载失败", e);
@@ -467,30 +646,199 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         }
     }
 
+    /**
+     * 条件请求校验（If-None-Match / If-Modified-Since），内容未变化时直接返回 304，不读取对象存储
+     */
+    private boolean checkNotModified(FileInfo fileInfo, HttpServletRequest request, HttpServletResponse response) {
+        // 允许客户端缓存，但每次使用前需重新校验
+        response.setHeader("Cache-Control", "private, no-cache");
+        return new ServletWebRequest(request, response).checkNotModified(buildETag(fileInfo), getLastModified(fileInfo));
+    }
+
+    /**
+     * 重定向模式下 302 跳转到预签名地址，Range 等请求头由客户端随跳转重新发送给对象存储
+     * @param userId 下载用户，分享下载时为空
+     * @return 未启用重定向或文件不支持重定向时返回 false，由调用方继续转发
+     */
+    private boolean redirectIfEnabled(FileInfo fileInfo, Long userId, HttpServletResponse response) throws IOException {
+        String url = getRedirectUrl(fileInfo, userId);
+        if (url == null) {
+            return false;
+        }
+        // 预签名地址短时有效，不允许缓存跳转结果
+        response.setHeader("Cache-Control", "no-store");
+        response.sendRedirect(url);
+        return true;
+    }
+
+    private String getRedirectUrl(FileInfo fileInfo, Long userId) {
+        if (downloadConfig.getMode() != DownloadConfig.Mode.REDIRECT
+                || fileInfo.getFileSize() < downloadConfig.getRedirectMinSize()) {
+            return null;
+        }
+        // 受用户级 / 分享级限速的下载不能绕过文件服务，仍然转发
+        if (bandwidthService.isThrottled(userId, userId == null)) {
+            return null;
+        }
+        return fileStorageService.presignDownload(fileInfo.getFilePath(), fileInfo.getFileName(),
+                fileInfo.getContentType(), downloadConfig.getRedirectExpireSeconds());
+    }
+
+    /**
+     * 输出文件内容，支持 Range 断点续传（单区间 / 多区间）和 If-Range 校验
+     * 只读取请求的区间，热点小文件直接从本地内容缓存读取
+     */
+    private void writeFileContent(FileInfo fileInfo, Long userId, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        long size = fileInfo.getFileSize();
+        String contentType = fileInfo.getContentType() != null ? fileInfo.getContentType() : "application/octet-stream";
+        String etag = buildETag(fileInfo);
+        long lastModified = getLastModified(fileInfo);
+
+        response.setHeader("Accept-Ranges", "bytes");
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+        if (lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        response.setHeader("Content-Disposition", "attachment; filename=\"" +
+                URLEncoder.encode(fileInfo.getFileName(), StandardCharsets.UTF_8) + "\"");
+
+        String rangeHeader = request.getHeader("Range");
+        List<HttpRange> ranges = rangeHeader != null && isIfRangeMatched(request, etag, lastModified)
+                ? HttpRange.parse(rangeHeader, size) : Collections.emptyList();
+
+        // 区间不可满足
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + size);
+            return;
+        }
+
+        String shareCode = request.getHeader(BandwidthService.SHARE_CODE_HEADER);
+        // 完整内容
+        if (ranges.isEmpty()) {
+            response.setContentType(contentType);
+            response.setContentLengthLong(size);
+            writeRange(fileInfo, 0, -1, userId, shareCode, request, response);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        // 单区间
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            response.setContentType(contentType);
+            response.setContentLengthLong(range.getLength());
+            response.setHeader("Content-Range", range.toContentRange(size));
+            writeRange(fileInfo, range.getStart(), range.getLength(), userId, shareCode, request, response);
+            return;
+        }
+
+        // 多区间：multipart/byteranges，先计算总长度
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (HttpRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType +
+                    "\r\nContent-Range: " + range.toContentRange(size) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.getLength();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), userId, shareCode);
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange range = ranges.get(i);
+            outputStream.write(partHeaders.get(i));
+            try (InputStream inputStream = hotContentService.openStream(
+                    fileInfo, range.getStart(), range.getLength())) {
+                copyStream(inputStream, outputStream);
+            }
+        }
+        outputStream.write(closing);
+        outputStream.flush();
+    }
+
+    /**
+     * 输出文件的一段内容（length 为 -1 时到文件末尾），响应头需已设置
+     * 开启非阻塞下载时交给异步 I/O 输出，当前线程立即返回
+     */
+    private void writeRange(FileInfo fileInfo, long offset, long length, Long userId, String shareCode,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (downloadConfig.isNonBlocking() && request.isAsyncSupported()) {
+            asyncDownloadService.start(request, response,
+                    () -> hotContentService.openStream(fileInfo, offset, length), userId, shareCode);
+            return;
+        }
+        OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), userId, shareCode);
+        try (InputStream inputStream = hotContentService.openStream(fileInfo, offset, length)) {
+            copyStream(inputStream, outputStream);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * If-Range 校验：内容未变化时才按区间返回，否则返回完整内容
+     */
+    private boolean isIfRangeMatched(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // 只接受强校验
+            return ifRange.equals(etag);
+        }
+        try {
+            long ifRangeTime = request.getDateHeader("If-Range");
+            return lastModified > 0 && lastModified / 1000 == ifRangeTime / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private String buildETag(FileInfo fileInfo) {
+        return fileInfo.getMd5() != null ? "\"" + fileInfo.getMd5() + "\"" : null;
+    }
+
+    private long getLastModified(FileInfo fileInfo) {
+        LocalDateTime time = fileInfo.getUpdateTime() != null ? fileInfo.getUpdateTime() : fileInfo.getCreateTime();
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+    }
+
+    private void copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+    }
+
     @Override
     public void batchDownload(List<Long> fileIds, Long userId, HttpServletResponse response) {
         // 1. 设置响应头
         response.setContentType("application/zip");
         response.setHeader("Content-Disposition", "attachment; filename=\"files.zip\"");
         
-        // 2. 创建 ZIP 输出流
-        try (ZipOutputStream zos = new ZipOutputStream(response.getOutputStream())) {
-            for (Long fileId : fileIds) {
-                FileInfo file = getById(fileId);
-                // 校验权限
-                if (file == null || !file.getUserId().equals(userId)) {
-                    continue; // 跳过无权限的文件
-                }
-                
-                if (file.getIsFolder() == 1) {
-                    // 递归添加文件夹内容
-                    addFolderToZip(zos, file, userId, file.getFileName());
-                } else {
-                    // 添加单个文件
-                    addFileToZip(zos, file, file.getFileName());
-                }
-            }
-            zos.flush();
+        // 2. 校验权限，跳过无权限的文件，保持请求顺序
+        List<FileInfo> files = fileIds.isEmpty() ? Collections.emptyList() : listByIds(fileIds);
+        Map<Long, FileInfo> fileMap = files.stream()
+                .filter(file -> file.getUserId().equals(userId))
+                .collect(Collectors.toMap(FileInfo::getId, file -> file));
+        List<FileInfo> roots = fileIds.stream().distinct()
+                .map(fileMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // 3. 展开文件夹并写出 ZIP
+        try (OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), userId, null)) {
+            archiveService.writeZip(archiveService.collectEntries(roots, userId), outputStream);
             log.info("用户{}批量下载{}个文件", userId, fileIds.size());
         } catch (Exception e) {
             log.error("批量下载失败", e);
@@ -518,75 +866,130 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         return page(pageParam, queryWrapper);
     }
 
-    private SFunction<FileInfo, ?> getSortColumn(String sortBy) {
-        if (sortBy == null) {
-            return FileInfo::getCreateTime;
+    @Override
+    public CursorPageVO<FileInfo> listFilesByCursor(Long userId, Long parentId, int size, String sortBy,
+                                                    String sortOrder, String cursor, boolean withTotal) {
+        int limit = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        String sortKey = getSortKey(sortBy);
+        boolean asc = "asc".equalsIgnoreCase(sortOrder);
+        ListCursor after = cursor != null && !cursor.isEmpty() ? ListCursor.decode(cursor, sortKey, asc) : null;
+
+        // 文件夹在前：文件夹、文件两段分别按 (排序列, id) 走索引范围扫描，多取一条判断是否还有下一页
+        List<FileInfo> records = new ArrayList<>();
+        for (int isFolder = after != null ? after.getIsFolder() : 1; isFolder >= 0 && records.size() <= limit;
+             isFolder--) {
+            ListCursor segmentAfter = after != null && after.getIsFolder() == isFolder ? after : null;
+            records.addAll(listSegment(userId, parentId, isFolder, sortKey, asc, segmentAfter,
+                    limit + 1 - records.size()));
+        }
+
+        CursorPageVO<FileInfo> result = new CursorPageVO<>();
+        boolean hasMore = records.size() > limit;
+        if (hasMore) {
+            records = new ArrayList<>(records.subList(0, limit));
+            FileInfo last = records.get(limit - 1);
+            Object value = getSortValue(sortKey, last);
+            result.setNextCursor(new ListCursor(sortKey, asc, last.getIsFolder(), last.getId(),
+                    value != null ? value.toString() : null).encode());
+        }
+        result.setRecords(records);
+        result.setHasMore(hasMore);
+        if (withTotal) {
+            result.setTotal(count(new LambdaQueryWrapper<FileInfo>()
+                    .eq(FileInfo::getUserId, userId)
+                    .eq(FileInfo::getParentId, parentId)
+                    .eq(FileInfo::getDeleted, 0)));
         }
-        return switch (sortBy) {
-            case "fileName" -> FileInfo::getFileName;
-            case "fileSize" -> FileInfo::getFileSize;
-            case "fileType" -> FileInfo::getFileType;
-            case "updateTime" -> FileInfo::getUpdateTime;
-            default -> FileInfo::getCreateTime;
-        };
+        return result;
     }
 
     /**
-     * 递归添加文件夹到ZIP
+     * 查询文件夹或文件一段中位于游标之后的记录
+     * 条件展开为 col > v OR (col = v AND id > lastId)，两个区间都落在
+     * (user_id, parent_id, deleted, is_folder, 排序列, id) 索引上；MySQL 中 NULL 升序在前、降序在后
      */
-    private void addFolderToZip(ZipOutputStream zos, FileInfo folder, Long userId, String basePath) {
-        // 查询文件夹下的所有子文件/子文件夹
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, folder.getId())
+    private List<FileInfo> listSegment(Long userId, Long parentId, int isFolder, String sortKey, boolean asc,
+                                       ListCursor after, int limit) {
+        SFunction<FileInfo, ?> column = getSortColumn(sortKey);
+        LambdaQueryWrapper<FileInfo> queryWrapper = new LambdaQueryWrapper<FileInfo>()
                 .eq(FileInfo::getUserId, userId)
-                .eq(FileInfo::getDeleted, 0));
-
-        // 如果文件夹为空，创建空目录
-        if (children.isEmpty()) {
-            try {
-                zos.putNextEntry(new ZipEntry(basePath + "/"));
-                zos.closeEntry();
-            } catch (IOException e) {
-                log.warn("创建空目录失败: {}", basePath);
-            }
-            return;
-        }
-        for (FileInfo child : children) {
-            String childPath = basePath + "/" + child.getFileName();
-            if (child.getIsFolder() == 1) {
-                // 子文件夹 → 递归处理
-                addFolderToZip(zos, child, userId, childPath);
+                .eq(FileInfo::getParentId, parentId)
+                .eq(FileInfo::getDeleted, 0)
+                .eq(FileInfo::getIsFolder, isFolder);
+        if (after != null) {
+            long id = after.getId();
+            Object value = parseSortValue(sortKey, after.getValue());
+            if (value == null && asc) {
+                queryWrapper.and(w -> w.isNull(column).gt(FileInfo::getId, id).or().isNotNull(column));
+            } else if (value == null) {
+                queryWrapper.and(w -> w.isNull(column).lt(FileInfo::getId, id));
+            } else if (asc) {
+                queryWrapper.and(w -> w.gt(column, value)
+                        .or(o -> o.eq(column, value).gt(FileInfo::getId, id)));
             } else {
-                // 文件 → 添加到ZIP
-                addFileToZip(zos, child, childPath);
+                queryWrapper.and(w -> w.lt(column, value)
+                        .or(o -> o.eq(column, value).lt(FileInfo::getId, id))
+                        .or().isNull(column));
             }
         }
+        if (asc) {
+            queryWrapper.orderByAsc(column).orderByAsc(FileInfo::getId);
+        } else {
+            queryWrapper.orderByDesc(column).orderByDesc(FileInfo::getId);
+        }
+        return list(queryWrapper.last("LIMIT " + limit));
     }
 
     /**
-     * 添加单个文件到ZIP
+     * 排序字段规范化，未知字段按创建时间排序
      */
-    private void addFileToZip(ZipOutputStream zos, FileInfo file, String zipPath) {
+    private String getSortKey(String sortBy) {
+        if (sortBy == null) {
+            return "createTime";
+        }
+        return switch (sortBy) {
+            case "fileName", "fileSize", "fileType", "updateTime" -> sortBy;
+            default -> "createTime";
+        };
+    }
+
+    private Object getSortValue(String sortKey, FileInfo file) {
+        return switch (sortKey) {
+            case "fileName" -> file.getFileName();
+            case "fileSize" -> file.getFileSize();
+            case "fileType" -> file.getFileType();
+            case "updateTime" -> file.getUpdateTime();
+            default -> file.getCreateTime();
+        };
+    }
+
+    private Object parseSortValue(String sortKey, String value) {
+        if (value == null) {
+            return null;
+        }
         try {
-            zos.putNextEntry(new ZipEntry(zipPath));
-            try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
-                    .bucket(minioConfig.getBucket())
-                    .object(file.getFilePath())
-                    .build())) {
-                // 手动复制流
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    zos.write(buffer, 0, bytesRead);
-                }
-            }
-            zos.closeEntry();
-        } catch (Exception e) {
-            log.error("添加文件到ZIP失败: {}", file.getFileName(), e);
-            throw new BusinessException("文件压缩失败: " + e.getMessage());
+            return switch (sortKey) {
+                case "fileSize" -> Long.valueOf(value);
+                case "createTime", "updateTime" -> LocalDateTime.parse(value);
+                default -> value;
+            };
+        } catch (RuntimeException e) {
+            throw new BusinessException("无效的分页游标");
         }
     }
 
+    private SFunction<FileInfo, ?> getSortColumn(String sortBy) {
+        if (sortBy == null) {
+            return FileInfo::getCreateTime;
+        }
+        return switch (sortBy) {
+            case "fileName" -> FileInfo::getFileName;
+            case "fileSize" -> FileInfo::getFileSize;
+            case "fileType" -> FileInfo::getFileType;
+            case "updateTime" -> FileInfo::getUpdateTime;
+            default -> FileInfo::getCreateTime;
+        };
+    }
 
     private FileInfo createFileRecord(Long userId,Long parentId,
                                       String filename,String filePath,Long filesize,String contentType,String md5){
@@ -660,62 +1063,245 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         }
     }
 
-    // ========== 回收站功能 ==========
+    // ========== 目录树（物化路径） ==========
 
+    /**
+     * 新建文件 / 文件夹都经过这里：插入前分配 ID 并计算物化路径
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void moveToTrash(Long fileId, Long userId) {
-        FileInfo file = getById(fileId);
-        if (file == null || !file.getUserId().equals(userId)) {
-            throw new BusinessException("文件不存在或无权限");
+    public boolean save(FileInfo entity) {
+        if (entity.getId() == null) {
+            entity.setId(IdWorker.getId(entity));
         }
-        if (file.getDeleted() == 1) {
-            throw new BusinessException("文件已在回收站中");
+        if (entity.getTreePath() == null) {
+            entity.setTreePath(getTreePath(entity.getParentId()) + entity.getId() + "/");
         }
-
-        if (file.getIsFolder() == 1) {
-            // 文件夹：递归移入回收站
-            moveToTrashRecursive(fileId, userId);
+        if (entity.getIsFolder() != null && entity.getIsFolder() == 1) {
+            entity.setFolderSize(0L);
+            entity.setFileCount(0);
         }
+        boolean saved = super.save(entity);
+        if (saved && entity.getIsFolder() != null && entity.getIsFolder() == 0
+                && (entity.getDeleted() == null || entity.getDeleted() == 0)) {
+            addToAncestors(parentPathOf(entity.getTreePath()), sizeOf(entity), 1);
+        }
+        return saved;
+    }
 
-        file.setDeleted(1);
-        file.setDeleteTime(LocalDateTime.now());
-        updateById(file);
-
-        // 清除缓存
-        fileCacheService.evictFileInfo(fileId);
+    /**
+     * 获取节点的物化路径，根目录为 "/"
+     * 升级前创建、尚未回填路径的节点沿父链补齐并写回
+     */
+    private String getTreePath(Long fileId) {
+        if (fileId == null || fileId == 0) {
+            return ROOT_TREE_PATH;
+        }
+        FileInfo node = getOne(new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId, FileInfo::getParentId, FileInfo::getTreePath)
+                .eq(FileInfo::getId, fileId));
+        if (node == null) {
+            throw new BusinessException("父文件夹不存在");
+        }
+        if (node.getTreePath() != null) {
+            return node.getTreePath();
+        }
+        String treePath = getTreePath(node.getParentId()) + fileId + "/";
+        update(new LambdaUpdateWrapper<FileInfo>()
+                .set(FileInfo::getTreePath, treePath)
+                .eq(FileInfo::getId, fileId));
+        return treePath;
+    }
 
-        // 从 ES 索引中删除（回收站文件不应被搜索到）
-        sendDeleteIndexRecursive(file, userId);
+    private String treePathOf(FileInfo file) {
+        if (file.getTreePath() == null) {
+            file.setTreePath(getTreePath(file.getId()));
+        }
+        return file.getTreePath();
+    }
 
-        log.info("用户{}将文件移入回收站：{}", userId, file.getFileName());
+    /**
+     * 查询整棵子树（包含根节点自身），一次前缀范围查询
+     * @param deleted 为空时不限删除状态
+     */
+    private List<FileInfo> listSubtree(FileInfo root, Integer deleted) {
+        return list(new LambdaQueryWrapper<FileInfo>()
+                .eq(FileInfo::getUserId, root.getUserId())
+                .likeRight(FileInfo::getTreePath, treePathOf(root))
+                .eq(deleted != null, FileInfo::getDeleted, deleted));
     }
 
     /**
-     * 递归将文件夹内容移入回收站
+     * 按实际内容重新计算子树中所有文件夹的统计（从回收站恢复后子树内删除状态有变化）
+     * 一次前缀范围扫描，按深度自底向上在内存中汇总，只批量更新统计有变化的文件夹
+     * @return 子树根节点，统计为重新计算后的值
      */
-    private void moveToTrashRecursive(Long folderId, Long userId) {
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, folderId)
+    private FileInfo recalculateFolderStats(Long userId, String treePath) {
+        List<FileInfo> nodes = list(new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId, FileInfo::getParentId, FileInfo::getIsFolder, FileInfo::getFileSize,
+                        FileInfo::getDeleted, FileInfo::getTreePath, FileInfo::getFolderSize, FileInfo::getFileCount)
                 .eq(FileInfo::getUserId, userId)
-                .eq(FileInfo::getDeleted, 0));
+                .likeRight(FileInfo::getTreePath, treePath));
+
+        // 文件夹 ID -> [大小, 文件数]，未删除的文件先计入直接上级
+        Map<Long, long[]> stats = new HashMap<>();
+        List<FileInfo> folders = new ArrayList<>();
+        FileInfo root = null;
+        for (FileInfo node : nodes) {
+            if (node.getIsFolder() == 1) {
+                stats.put(node.getId(), new long[2]);
+                folders.add(node);
+            }
+            if (treePath.equals(node.getTreePath())) {
+                root = node;
+            }
+        }
+        if (root == null) {
+            throw new BusinessException("文件不存在");
+        }
+        for (FileInfo node : nodes) {
+            long[] parent = stats.get(node.getParentId());
+            if (node.getIsFolder() != 1 && node.getDeleted() == 0 && parent != null) {
+                parent[0] += node.getFileSize() != null ? node.getFileSize() : 0;
+                parent[1]++;
+            }
+        }
 
-        for (FileInfo child : children) {
-            if (child.getIsFolder() == 1) {
-                moveToTrashRecursive(child.getId(), userId);
+        // 文件夹从深到浅把自身汇总累加到上级（子树根节点的上级不在子树中）
+        folders.sort(Comparator.comparingLong((FileInfo folder) -> depthOf(folder.getTreePath())).reversed());
+        List<FileInfo> changed = new ArrayList<>();
+        for (FileInfo folder : folders) {
+            long[] own = stats.get(folder.getId());
+            long[] parent = stats.get(folder.getParentId());
+            if (parent != null) {
+                parent[0] += own[0];
+                parent[1] += own[1];
             }
-            child.setDeleted(1);
-            child.setDeleteTime(LocalDateTime.now());
-            updateById(child);
+            if (own[0] != sizeOf(folder) || own[1] != countOf(folder)) {
+                folder.setFolderSize(own[0]);
+                folder.setFileCount((int) own[1]);
+                changed.add(folder);
+            }
+        }
+        for (int i = 0; i < changed.size(); i += STATS_BATCH_SIZE) {
+            baseMapper.updateFolderStats(changed.subList(i, Math.min(i + STATS_BATCH_SIZE, changed.size())));
         }
+        return root;
     }
 
-    @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void batchMoveToTrash(Long[] fileIds, Long userId) {
-        if (fileIds == null || fileIds.length == 0) {
-            return;
-        }
+    private static long depthOf(String treePath) {
+        return treePath.chars().filter(c -> c == '/').count();
+    }
+
+    private static String parentPathOf(String treePath) {
+        return treePath.substring(0, treePath.lastIndexOf('/', treePath.length() - 2) + 1);
+    }
+
+    private static List<Long> idsOf(String treePath) {
+        return Arrays.stream(treePath.split("/"))
+                .filter(id -> !id.isEmpty())
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 文件的大小，文件夹为其中未删除文件的总大小
+     */
+    private static long sizeOf(FileInfo file) {
+        Long size = file.getIsFolder() == 1 ? file.getFolderSize() : file.getFileSize();
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 文件计为 1，文件夹为其中未删除文件的数量
+     */
+    private static long countOf(FileInfo file) {
+        if (file.getIsFolder() != 1) {
+            return 1;
+        }
+        return file.getFileCount() != null ? file.getFileCount() : 0;
+    }
+
+    /**
+     * 把大小 / 文件数变化累加到 parentPath 上的所有文件夹
+     */
+    private void addToAncestors(String parentPath, long sizeDelta, long countDelta) {
+        if (ROOT_TREE_PATH.equals(parentPath) || (sizeDelta == 0 && countDelta == 0)) {
+            return;
+        }
+        baseMapper.addFolderStats(idsOf(parentPath), sizeDelta, countDelta);
+    }
+
+    /**
+     * 子树从 oldParentPath 移到 newParentPath：只调整两条祖先链不重合的部分
+     */
+    private void moveAncestorStats(String oldParentPath, String newParentPath, long size, long count) {
+        List<Long> oldAncestors = idsOf(oldParentPath);
+        List<Long> newAncestors = idsOf(newParentPath);
+        List<Long> leaving = oldAncestors.stream().filter(id -> !newAncestors.contains(id)).collect(Collectors.toList());
+        List<Long> entering = newAncestors.stream().filter(id -> !oldAncestors.contains(id)).collect(Collectors.toList());
+        if (!leaving.isEmpty()) {
+            baseMapper.addFolderStats(leaving, -size, -count);
+        }
+        if (!entering.isEmpty()) {
+            baseMapper.addFolderStats(entering, size, count);
+        }
+    }
+
+    @Override
+    public void applySizeChange(FileInfo file, long sizeDelta) {
+        if (file.getDeleted() != null && file.getDeleted() == 1) {
+            return;
+        }
+        addToAncestors(parentPathOf(treePathOf(file)), sizeDelta, 0);
+    }
+
+    // ========== 回收站功能 ==========
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void moveToTrash(Long fileId, Long userId) {
+        FileInfo file = getById(fileId);
+        if (file == null || !file.getUserId().equals(userId)) {
+            throw new BusinessException("文件不存在或无权限");
+        }
+        if (file.getDeleted() == 1) {
+            throw new BusinessException("文件已在回收站中");
+        }
+
+        // 上级文件夹不再计入该文件 / 文件夹
+        addToAncestors(parentPathOf(treePathOf(file)), -sizeOf(file), -countOf(file));
+
+        LocalDateTime now = LocalDateTime.now();
+        if (file.getIsFolder() == 1) {
+            // 文件夹：整棵子树一次移入回收站（已单独删除的子项保留原删除时间）
+            update(new LambdaUpdateWrapper<FileInfo>()
+                    .set(FileInfo::getDeleted, 1)
+                    .set(FileInfo::getDeleteTime, now)
+                    .eq(FileInfo::getUserId, userId)
+                    .likeRight(FileInfo::getTreePath, treePathOf(file))
+                    .eq(FileInfo::getDeleted, 0)
+                    .ne(FileInfo::getId, fileId));
+        }
+
+        file.setDeleted(1);
+        file.setDeleteTime(now);
+        updateById(file);
+
+        // 清除缓存
+        fileCacheService.evictFileInfo(fileId);
+
+        // 从 ES 索引中删除（回收站文件不应被搜索到）
+        sendDeleteIndexSubtree(file);
+
+        log.info("用户{}将文件移入回收站：{}", userId, file.getFileName());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void batchMoveToTrash(Long[] fileIds, Long userId) {
+        if (fileIds == null || fileIds.length == 0) {
+            return;
+        }
         for (Long fileId : fileIds) {
             try {
                 moveToTrash(fileId, userId);
@@ -746,12 +1332,39 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
             throw new BusinessException("文件不在回收站中");
         }
 
-        // 检查原父目录是否存在
+        restoreRoot(file);
+        String newPath = file.getTreePath();
+
+        // 如果是文件夹，整棵子树一次恢复，并按恢复后的内容重新计算子树统计
+        if (file.getIsFolder() == 1) {
+            update(new LambdaUpdateWrapper<FileInfo>()
+                    .set(FileInfo::getDeleted, 0)
+                    .set(FileInfo::getDeleteTime, null)
+                    .eq(FileInfo::getUserId, userId)
+                    .likeRight(FileInfo::getTreePath, newPath)
+                    .eq(FileInfo::getDeleted, 1));
+            FileInfo stats = recalculateFolderStats(userId, newPath);
+            file.setFolderSize(stats.getFolderSize());
+            file.setFileCount(stats.getFileCount());
+        }
+        addToAncestors(parentPathOf(newPath), sizeOf(file), countOf(file));
+
+        // 重新添加到 ES 索引
+        sendCreateIndexSubtree(file);
+
+        log.info("用户{}从回收站恢复文件：{}", userId, file.getFileName());
+    }
+
+    /**
+     * 恢复子树根节点：原父目录不存在或也在回收站时恢复到根目录（整棵子树改挂），处理同名
+     * 只恢复根节点自身，子孙节点和统计由调用方处理
+     */
+    private void restoreRoot(FileInfo file) {
+        Long userId = file.getUserId();
         Long targetParentId = file.getParentId();
         if (targetParentId != 0) {
             FileInfo parent = getById(targetParentId);
             if (parent == null || parent.getDeleted() == 1) {
-                // 父目录不存在或也在回收站，恢复到根目录
                 targetParentId = 0L;
             }
         }
@@ -759,44 +1372,21 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         // 处理同名文件
         String newFileName = generateUniqueFileName(file.getFileName(), targetParentId, userId);
 
+        String oldPath = treePathOf(file);
+        String newPath = getTreePath(targetParentId) + file.getId() + "/";
+        if (file.getIsFolder() == 1 && !newPath.equals(oldPath)) {
+            baseMapper.moveSubtree(userId, oldPath, newPath);
+        }
+
         file.setDeleted(0);
         file.setDeleteTime(null);
         file.setParentId(targetParentId);
         file.setFileName(newFileName);
+        file.setTreePath(newPath);
         updateById(file);
 
         // 清除缓存（恢复后数据变更）
-        fileCacheService.evictFileInfo(fileId);
-
-        // 如果是文件夹，递归恢复子内容
-        if (file.getIsFolder() == 1) {
-            restoreRecursive(fileId, userId);
-        }
-
-        // 重新添加到 ES 索引
-        sendCreateIndexRecursive(file, userId);
-
-        log.info("用户{}从回收站恢复文件：{}", userId, file.getFileName());
-    }
-
-    /**
-     * 递归恢复文件夹内容
-     */
-    private void restoreRecursive(Long folderId, Long userId) {
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, folderId)
-                .eq(FileInfo::getUserId, userId)
-                .eq(FileInfo::getDeleted, 1));
-
-        for (FileInfo child : children) {
-            child.setDeleted(0);
-            child.setDeleteTime(null);
-            updateById(child);
-
-            if (child.getIsFolder() == 1) {
-                restoreRecursive(child.getId(), userId);
-            }
-        }
+        fileCacheService.evictFileInfo(file.getId());
     }
 
     @Override
@@ -807,10 +1397,15 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
             throw new BusinessException("文件不存在或无权限");
         }
 
+        // 未进回收站直接删除时，上级文件夹不再计入
+        if (file.getDeleted() == 0) {
+            addToAncestors(parentPathOf(treePathOf(file)), -sizeOf(file), -countOf(file));
+        }
+
         long freedSpace = 0;
         if (file.getIsFolder() == 1) {
-            // 文件夹：递归彻底删除
-            freedSpace = deletePermanentlyRecursive(fileId, userId);
+            // 文件夹：整棵子树彻底删除
+            freedSpace = deleteSubtree(file);
         } else {
             freedSpace = file.getFileSize();
             // 减少存储引用计数（可能触发物理删除）
@@ -835,31 +1430,24 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
     }
 
     /**
-     * 递归彻底删除文件夹内容
+     * 彻底删除文件夹的子孙节点：一次查出子树、一次删除，根节点由调用方删除
+     * @return 释放的空间
      */
-    private long deletePermanentlyRecursive(Long folderId, Long userId) {
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, folderId)
-                .eq(FileInfo::getUserId, userId));
-
-        long freedSpace = 0;
-        for (FileInfo child : children) {
-            if (child.getIsFolder() == 1) {
-                freedSpace += deletePermanentlyRecursive(child.getId(), userId);
-            } else {
-                freedSpace += child.getFileSize();
-                // 减少存储引用计数（可能触发物理删除）
-                if (child.getStorageId() != null) {
-                    boolean physicalDeleted = fileStorageService.decrementRef(child.getStorageId());
-                    if (physicalDeleted) {
-                        log.info("文件物理删除：storageId={}", child.getStorageId());
-                    }
-                }
-            }
-            removeById(child.getId());
-            // 发送删除索引消息
-            fileIndexProducer.sendDeleteMessage(child.getId());
-        }
+    private long deleteSubtree(FileInfo folder) {
+        String treePath = treePathOf(folder);
+        List<FileInfo> descendants = list(new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId, FileInfo::getIsFolder, FileInfo::getFileSize, FileInfo::getStorageId)
+                .eq(FileInfo::getUserId, folder.getUserId())
+                .likeRight(FileInfo::getTreePath, treePath)
+                .ne(FileInfo::getId, folder.getId()));
+
+        long freedSpace = releaseStorage(descendants);
+        remove(new LambdaQueryWrapper<FileInfo>()
+                .eq(FileInfo::getUserId, folder.getUserId())
+                .likeRight(FileInfo::getTreePath, treePath)
+                .ne(FileInfo::getId, folder.getId()));
+        // 发送删除索引消息
+        descendants.forEach(child -> fileIndexProducer.sendDeleteMessage(child.getId()));
         return freedSpace;
     }
 
@@ -871,18 +1459,8 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
                 .eq(FileInfo::getUserId, userId)
                 .eq(FileInfo::getDeleted, 1));
 
-        long totalFreedSpace = 0;
+        long totalFreedSpace = releaseStorage(trashFiles);
         for (FileInfo file : trashFiles) {
-            if (file.getIsFolder() != 1) {
-                totalFreedSpace += file.getFileSize();
-                // 减少存储引用计数（可能触发物理删除）
-                if (file.getStorageId() != null) {
-                    boolean physicalDeleted = fileStorageService.decrementRef(file.getStorageId());
-                    if (physicalDeleted) {
-                        log.info("文件物理删除：storageId={}", file.getStorageId());
-                    }
-                }
-            }
             removeById(file.getId());
             // 发送删除索引消息
             fileIndexProducer.sendDeleteMessage(file.getId());
@@ -896,28 +1474,451 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         log.info("用户{}清空回收站，释放空间：{}", userId, totalFreedSpace);
     }
 
+    /**
+     * 减少一批文件的存储引用计数（可能触发物理删除），文件夹跳过
+     * @return 释放的空间
+     */
+    private long releaseStorage(List<FileInfo> files) {
+        long freedSpace = 0;
+        for (FileInfo file : files) {
+            if (file.getIsFolder() == 1) {
+                continue;
+            }
+            freedSpace += file.getFileSize();
+            if (file.getStorageId() != null) {
+                boolean physicalDeleted = fileStorageService.decrementRef(file.getStorageId());
+                if (physicalDeleted) {
+                    log.info("文件物理删除：storageId={}", file.getStorageId());
+                }
+            }
+        }
+        return freedSpace;
+    }
+
+    // ========== 后台任务（分批执行） ==========
+
     @Override
-    public void downloadByShared(Long fileId, HttpServletResponse response) {
+    public boolean runJobBatch(FileJob job, int batchSize) {
+        return switch (job.getJobType()) {
+            case FileJob.Type.COPY, FileJob.Type.SAVE_SHARED -> copyJobBatch(job, batchSize);
+            case FileJob.Type.TRASH -> trashJobBatch(job, batchSize);
+            case FileJob.Type.RESTORE -> restoreJobBatch(job, batchSize);
+            case FileJob.Type.DELETE -> deleteJobBatch(job, batchSize);
+            case FileJob.Type.EMPTY_TRASH -> emptyTrashJobBatch(job, batchSize);
+            default -> throw new BusinessException("未知的任务类型：" + job.getJobType());
+        };
+    }
+
+    @Override
+    public boolean undoJobBatch(FileJob job, int batchSize) {
+        if (job.getResultPath() != null) {
+            // 副本尚未计入上级统计，直接删除并归还存储引用
+            List<FileInfo> batch = nextPurgeBatch(new LambdaQueryWrapper<FileInfo>()
+                    .eq(FileInfo::getUserId, job.getUserId())
+                    .likeRight(FileInfo::getTreePath, job.getResultPath()), batchSize);
+            if (!batch.isEmpty()) {
+                purge(batch);
+                job.setProcessedCount(Math.max(job.getProcessedCount() - batch.size(), 0));
+                return false;
+            }
+        }
+        fileJobFolderMapper.delete(new LambdaQueryWrapper<FileJobFolder>().eq(FileJobFolder::getJobId, job.getId()));
+        // 归还准备阶段预占的空间，与撤销完成的检查点一起生效
+        releaseUsedSpace(job.getUserId(), reservedSpaceOf(job));
+        job.setReservedSpace(0L);
+        return true;
+    }
+
+    /**
+     * 复制 / 保存分享：准备阶段预占空间并确定新子树根节点，子孙节点按源物化路径升序分批复制，
+     * 检查点和文件夹映射随每批提交，实例中断后由接管实例从检查点继续；
+     * 子树根节点最后插入，上级文件夹统计在收尾时一次更新，中途撤销时不需要回退
+     */
+    private boolean copyJobBatch(FileJob job, int batchSize) {
+        if (job.getPhase() == FileJob.Phase.PREPARE) {
+            prepareCopyJob(job);
+            job.setPhase(FileJob.Phase.BATCH);
+            return false;
+        }
+
+        FileInfo source = getById(job.getFileId());
+        if (source == null || source.getDeleted() == 1) {
+            throw new BusinessException("源文件已被删除");
+        }
+        if (job.getPhase() == FileJob.Phase.BATCH) {
+            if (source.getIsFolder() != 1 || copyNextBatch(job, source, batchSize)) {
+                job.setPhase(FileJob.Phase.FINISH);
+            }
+            return false;
+        }
+
+        // 收尾：插入子树根节点，按实际复制的内容重新计算副本统计
+        Long targetParentId = job.getTargetParentId() != null ? job.getTargetParentId() : 0L;
+        FileInfo root = copyNode(source, job.getUserId(), targetParentId, parentPathOf(job.getResultPath()),
+                job.getResultName());
+        root.setId(job.getResultFileId());
+        root.setTreePath(job.getResultPath());
+        saveBatch(List.of(root));
+        addStorageRefs(List.of(root));
+        root = recalculateFolderStats(job.getUserId(), job.getResultPath());
+        addToAncestors(parentPathOf(root.getTreePath()), sizeOf(root), countOf(root));
+        fileIndexProducer.sendCreateMessage(getById(root.getId()));
+        fileJobFolderMapper.delete(new LambdaQueryWrapper<FileJobFolder>().eq(FileJobFolder::getJobId, job.getId()));
+
+        // 按实际复制量修正预占空间（复制期间源子树可能有变化），提交后再调用
+        long delta = sizeOf(root) - reservedSpaceOf(job);
+        if (delta > 0) {
+            TransactionUtils.afterCommit(() -> storageFeignClient.addUsedSpace(job.getUserId(), delta));
+        } else {
+            releaseUsedSpace(job.getUserId(), -delta);
+        }
+        job.setReservedSpace(0L);
+        job.setProcessedCount(job.getProcessedCount() + 1);
+        log.info("用户{}后台复制完成：{}，{} 个节点，占用空间：{}", job.getUserId(), job.getResultName(),
+                job.getProcessedCount(), sizeOf(root));
+        return true;
+    }
+
+    /**
+     * 校验复制任务，确定新子树根节点并预占空间
+     * 预占在本批事务中立即生效，并发任务校验空间时能看到；本批回滚时补偿归还
+     */
+    private void prepareCopyJob(FileJob job) {
+        boolean shared = FileJob.Type.SAVE_SHARED.equals(job.getJobType());
+        FileInfo source = getById(job.getFileId());
+        if (source == null || source.getDeleted() == 1) {
+            throw new BusinessException(shared ? "源文件已被删除" : "文件不存在或无权限");
+        }
+        if (!shared && !source.getUserId().equals(job.getUserId())) {
+            throw new BusinessException("文件不存在或无权限");
+        }
+
+        Long userId = job.getUserId();
+        Long targetParentId = job.getTargetParentId() != null ? job.getTargetParentId() : 0L;
+        if (targetParentId != 0) {
+            FileInfo targetFolder = getById(targetParentId);
+            if (targetFolder == null || !targetFolder.getUserId().equals(userId)
+                    || targetFolder.getIsFolder() != 1 || targetFolder.getDeleted() == 1) {
+                throw new BusinessException("目标文件夹不存在或无权限");
+            }
+        }
+
+        long requiredSpace = sizeOf(source);
+        storageFeignClient.validateSpace(userId, requiredSpace);
+        storageFeignClient.addUsedSpace(userId, requiredSpace);
+        TransactionUtils.afterRollback(() -> storageFeignClient.reduceUsedSpace(userId, requiredSpace));
+
+        Long rootId = IdWorker.getId();
+        job.setResultFileId(rootId);
+        job.setResultPath(getTreePath(targetParentId) + rootId + "/");
+        job.setResultName(generateUniqueFileName(source.getFileName(), targetParentId, userId));
+        job.setReservedSpace(requiredSpace);
+        job.setCheckpointPath("");
+        job.setTotalCount(source.getIsFolder() == 1 ? countSubtree(source, 0) : 1);
+        job.setProcessedCount(0);
+    }
+
+    /**
+     * 复制检查点之后的下一批子孙节点：源子树按物化路径升序即先序，上级文件夹先于下级复制，
+     * 上级副本从本批新建的或之前批次记录的文件夹映射中查找（子树根节点映射到新子树根节点）
+     * 雪花 ID 无法按区间预留，所以文件夹副本的 ID 通过映射表持久化
+     * @return 源子树已全部复制时返回 true
+     */
+    private boolean copyNextBatch(FileJob job, FileInfo source, int batchSize) {
+        String sourcePath = treePathOf(source);
+        List<FileInfo> nodes = list(new LambdaQueryWrapper<FileInfo>()
+                .eq(FileInfo::getUserId, source.getUserId())
+                .likeRight(FileInfo::getTreePath, sourcePath)
+                .gt(FileInfo::getTreePath, sourcePath + job.getCheckpointPath())
+                .eq(FileInfo::getDeleted, 0)
+                .orderByAsc(FileInfo::getTreePath)
+                .last("LIMIT " + batchSize));
+        if (nodes.isEmpty()) {
+            return true;
+        }
+
+        Map<Long, FileJobFolder> parents = new HashMap<>();
+        FileJobFolder rootMapping = new FileJobFolder();
+        rootMapping.setCopyId(job.getResultFileId());
+        rootMapping.setCopyPath(job.getResultPath());
+        parents.put(source.getId(), rootMapping);
+        Set<Long> parentIds = nodes.stream().map(FileInfo::getParentId)
+                .filter(id -> !id.equals(source.getId())).collect(Collectors.toSet());
+        if (!parentIds.isEmpty()) {
+            fileJobFolderMapper.selectList(new LambdaQueryWrapper<FileJobFolder>()
+                            .eq(FileJobFolder::getJobId, job.getId())
+                            .in(FileJobFolder::getSourceId, parentIds))
+                    .forEach(folder -> parents.put(folder.getSourceId(), folder));
+        }
+
+        List<FileInfo> copies = new ArrayList<>();
+        List<FileJobFolder> folders = new ArrayList<>();
+        for (FileInfo node : nodes) {
+            FileJobFolder parent = parents.get(node.getParentId());
+            // 复制到自身子目录时跳过已插入的副本；上级未被复制（复制期间才移入）的节点也跳过
+            if (parent == null || node.getTreePath().startsWith(job.getResultPath())) {
+                continue;
+            }
+            FileInfo copied = copyNode(node, job.getUserId(), parent.getCopyId(), parent.getCopyPath(),
+                    node.getFileName());
+            copies.add(copied);
+            if (node.getIsFolder() == 1) {
+                FileJobFolder folder = new FileJobFolder();
+                folder.setId(IdWorker.getId(folder));
+                folder.setJobId(job.getId());
+                folder.setSourceId(node.getId());
+                folder.setCopyId(copied.getId());
+                folder.setCopyPath(copied.getTreePath());
+                folders.add(folder);
+                parents.put(node.getId(), folder);
+            }
+        }
+        if (!copies.isEmpty()) {
+            saveBatch(copies, COPY_BATCH_SIZE);
+            addStorageRefs(copies);
+            copies.forEach(fileIndexProducer::sendCreateMessage);
+        }
+        if (!folders.isEmpty()) {
+            fileJobFolderMapper.insertBatch(folders);
+        }
+
+        String lastPath = nodes.get(nodes.size() - 1).getTreePath();
+        job.setCheckpointPath(lastPath.substring(sourcePath.length()));
+        job.setProcessedCount(job.getProcessedCount() + nodes.size());
+        return nodes.size() < batchSize;
+    }
+
+    private static long reservedSpaceOf(FileJob job) {
+        return job.getReservedSpace() != null ? job.getReservedSpace() : 0L;
+    }
+
+    /**
+     * 移入回收站：根节点先移入（上级统计随即扣除，目录中立即消失），子孙节点再分批标记删除
+     */
+    private boolean trashJobBatch(FileJob job, int batchSize) {
+        FileInfo root = getById(job.getFileId());
+        if (job.getPhase() == FileJob.Phase.PREPARE) {
+            if (root == null || !root.getUserId().equals(job.getUserId())) {
+                throw new BusinessException("文件不存在或无权限");
+            }
+            if (root.getDeleted() == 1) {
+                throw new BusinessException("文件已在回收站中");
+            }
+            addToAncestors(parentPathOf(treePathOf(root)), -sizeOf(root), -countOf(root));
+            root.setDeleted(1);
+            root.setDeleteTime(LocalDateTime.now());
+            updateById(root);
+            fileCacheService.evictFileInfo(root.getId());
+            fileIndexProducer.sendDeleteMessage(root.getId());
+            if (root.getIsFolder() != 1) {
+                return true;
+            }
+            job.setTotalCount(countSubtree(root, 0));
+            job.setPhase(FileJob.Phase.BATCH);
+            return false;
+        }
+
+        // 根节点已被恢复或删除时不再继续
+        if (root == null || root.getDeleted() != 1) {
+            return true;
+        }
+        List<Long> ids = list(new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId)
+                .eq(FileInfo::getUserId, root.getUserId())
+                .likeRight(FileInfo::getTreePath, treePathOf(root))
+                .eq(FileInfo::getDeleted, 0)
+                .last("LIMIT " + batchSize))
+                .stream().map(FileInfo::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return true;
+        }
+        // 子孙节点使用根节点的删除时间，与同步移入回收站一致
+        update(new LambdaUpdateWrapper<FileInfo>()
+                .set(FileInfo::getDeleted, 1)
+                .set(FileInfo::getDeleteTime, root.getDeleteTime())
+                .in(FileInfo::getId, ids)
+                .eq(FileInfo::getDeleted, 0));
+        ids.forEach(fileIndexProducer::sendDeleteMessage);
+        job.setProcessedCount(job.getProcessedCount() + ids.size());
+        return false;
+    }
+
+    /**
+     * 从回收站恢复：根节点先恢复并按原统计计入上级文件夹，子孙节点再分批恢复，
+     * 最后重新计算子树统计，把与原统计的差值补到上级文件夹
+     */
+    private boolean restoreJobBatch(FileJob job, int batchSize) {
+        FileInfo root = getById(job.getFileId());
+        if (job.getPhase() == FileJob.Phase.PREPARE) {
+            if (root == null || !root.getUserId().equals(job.getUserId())) {
+                throw new BusinessException("文件不存在或无权限");
+            }
+            if (root.getDeleted() != 1) {
+                throw new BusinessException("文件不在回收站中");
+            }
+            restoreRoot(root);
+            addToAncestors(parentPathOf(root.getTreePath()), sizeOf(root), countOf(root));
+            fileIndexProducer.sendCreateMessage(root);
+            if (root.getIsFolder() != 1) {
+                return true;
+            }
+            job.setTotalCount(countSubtree(root, 1));
+            job.setPhase(FileJob.Phase.BATCH);
+            return false;
+        }
+
+        // 根节点又被移入回收站或已删除时不再继续
+        if (root == null || root.getDeleted() == 1) {
+            return true;
+        }
+        String treePath = treePathOf(root);
+        if (job.getPhase() == FileJob.Phase.BATCH) {
+            List<FileInfo> batch = list(new LambdaQueryWrapper<FileInfo>()
+                    .eq(FileInfo::getUserId, root.getUserId())
+                    .likeRight(FileInfo::getTreePath, treePath)
+                    .eq(FileInfo::getDeleted, 1)
+                    .last("LIMIT " + batchSize));
+            if (batch.isEmpty()) {
+                job.setPhase(FileJob.Phase.FINISH);
+                return false;
+            }
+            update(new LambdaUpdateWrapper<FileInfo>()
+                    .set(FileInfo::getDeleted, 0)
+                    .set(FileInfo::getDeleteTime, null)
+                    .in(FileInfo::getId, batch.stream().map(FileInfo::getId).collect(Collectors.toList()))
+                    .eq(FileInfo::getDeleted, 1));
+            for (FileInfo file : batch) {
+                file.setDeleted(0);
+                file.setDeleteTime(null);
+                fileIndexProducer.sendCreateMessage(file);
+            }
+            job.setProcessedCount(job.getProcessedCount() + batch.size());
+            return false;
+        }
+
+        // 收尾：按恢复后的内容重新计算子树统计
+        FileInfo stats = recalculateFolderStats(root.getUserId(), treePath);
+        addToAncestors(parentPathOf(treePath), sizeOf(stats) - sizeOf(root), countOf(stats) - countOf(root));
+        log.info("用户{}后台恢复完成：{}，{} 个节点", job.getUserId(), root.getFileName(), job.getProcessedCount());
+        return true;
+    }
+
+    /**
+     * 彻底删除：根节点先标记删除（未进回收站时扣除上级统计），子孙节点分批删除并释放空间，最后删除根节点
+     */
+    private boolean deleteJobBatch(FileJob job, int batchSize) {
+        FileInfo root = getById(job.getFileId());
+        if (job.getPhase() == FileJob.Phase.PREPARE) {
+            if (root == null || !root.getUserId().equals(job.getUserId())) {
+                throw new BusinessException("文件不存在或无权限");
+            }
+            if (root.getDeleted() == 0) {
+                addToAncestors(parentPathOf(treePathOf(root)), -sizeOf(root), -countOf(root));
+                root.setDeleted(1);
+                root.setDeleteTime(LocalDateTime.now());
+                updateById(root);
+                fileCacheService.evictFileInfo(root.getId());
+            }
+            job.setTotalCount(root.getIsFolder() == 1 ? countSubtree(root, null) : 1);
+            job.setPhase(FileJob.Phase.BATCH);
+            if (root.getIsFolder() == 1) {
+                return false;
+            }
+        } else if (root == null) {
+            // 根节点已被删除（如回收站已清空）
+            return true;
+        } else if (root.getIsFolder() == 1) {
+            List<FileInfo> batch = nextPurgeBatch(new LambdaQueryWrapper<FileInfo>()
+                    .eq(FileInfo::getUserId, root.getUserId())
+                    .likeRight(FileInfo::getTreePath, treePathOf(root))
+                    .ne(FileInfo::getId, root.getId()), batchSize);
+            if (!batch.isEmpty()) {
+                releaseUsedSpace(job.getUserId(), purge(batch));
+                job.setProcessedCount(job.getProcessedCount() + batch.size());
+                return false;
+            }
+        }
+
+        // 子孙节点已全部删除，最后删除根节点
+        releaseUsedSpace(job.getUserId(), purge(List.of(root)));
+        job.setProcessedCount(job.getProcessedCount() + 1);
+        log.info("用户{}后台彻底删除完成：{}，{} 个节点", job.getUserId(), root.getFileName(), job.getProcessedCount());
+        return true;
+    }
+
+    /**
+     * 清空回收站：每批删除一部分回收站中的节点并释放空间
+     */
+    private boolean emptyTrashJobBatch(FileJob job, int batchSize) {
+        LambdaQueryWrapper<FileInfo> trash = new LambdaQueryWrapper<FileInfo>()
+                .eq(FileInfo::getUserId, job.getUserId())
+                .eq(FileInfo::getDeleted, 1);
+        if (job.getPhase() == FileJob.Phase.PREPARE) {
+            job.setTotalCount(Math.toIntExact(count(trash)));
+            job.setPhase(FileJob.Phase.BATCH);
+            return false;
+        }
+        List<FileInfo> batch = nextPurgeBatch(trash, batchSize);
+        if (batch.isEmpty()) {
+            log.info("用户{}后台清空回收站完成，{} 个节点", job.getUserId(), job.getProcessedCount());
+            return true;
+        }
+        releaseUsedSpace(job.getUserId(), purge(batch));
+        job.setProcessedCount(job.getProcessedCount() + batch.size());
+        return false;
+    }
+
+    /**
+     * 子树节点数（包含根节点自身）
+     * @param deleted 为空时不限删除状态
+     */
+    private int countSubtree(FileInfo root, Integer deleted) {
+        return Math.toIntExact(count(new LambdaQueryWrapper<FileInfo>()
+                .eq(FileInfo::getUserId, root.getUserId())
+                .likeRight(FileInfo::getTreePath, treePathOf(root))
+                .eq(deleted != null, FileInfo::getDeleted, deleted)));
+    }
+
+    /**
+     * 取下一批待彻底删除的节点，只查询删除需要的字段
+     */
+    private List<FileInfo> nextPurgeBatch(LambdaQueryWrapper<FileInfo> wrapper, int batchSize) {
+        return list(wrapper
+                .select(FileInfo::getId, FileInfo::getIsFolder, FileInfo::getFileSize, FileInfo::getStorageId)
+                .last("LIMIT " + batchSize));
+    }
+
+    /**
+     * 彻底删除一批节点：归还存储引用、删除记录、删除索引
+     * @return 释放的空间
+     */
+    private long purge(List<FileInfo> files) {
+        long freedSpace = releaseStorage(files);
+        removeByIds(files.stream().map(FileInfo::getId).collect(Collectors.toList()));
+        files.forEach(file -> fileIndexProducer.sendDeleteMessage(file.getId()));
+        return freedSpace;
+    }
+
+    /**
+     * 本批事务提交后再归还已用空间，回滚时不会少算
+     */
+    private void releaseUsedSpace(Long userId, long freedSpace) {
+        if (freedSpace > 0) {
+            TransactionUtils.afterCommit(() -> storageFeignClient.reduceUsedSpace(userId, freedSpace));
+        }
+    }
+
+    @Override
+    public void downloadByShared(Long fileId, HttpServletRequest request, HttpServletResponse response) {
         FileInfo fileInfo = getById(fileId);
         if(fileInfo == null || fileInfo.getDeleted() == 1){
             throw new BusinessException("文件已被分享人删除");
         }
-        try (InputStream inputStream = minioClient.getObject(
-                GetObjectArgs.builder()
-                        .bucket(minioConfig.getBucket())
-                        .object(fileInfo.getFilePath())
-                        .build())){
-            response.setContentType(fileInfo.getContentType() != null ? fileInfo.getContentType() : "application/octet-stream");
-            response.setContentLengthLong(fileInfo.getFileSize());
-            response.setHeader("Content-Disposition", "attachment; filename=\"" +
-                    URLEncoder.encode(fileInfo.getFileName(), StandardCharsets.UTF_8)+"\"");
-            OutputStream outputStream = response.getOutputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+        try {
+            if (checkNotModified(fileInfo, request, response) || redirectIfEnabled(fileInfo, null, response)) {
+                return;
             }
-            outputStream.flush();
+            writeFileContent(fileInfo, null, request, response);
             log.info("分享文件{}已经下载完成",fileInfo.getFileName());
         }catch(Exception e){
             log.error("文件下载失败", e);
@@ -925,6 +1926,18 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         }
     }
 
+    @Override
+    public String getSharedRedirectUrl(Long fileId) {
+        FileInfo fileInfo = getById(fileId);
+        if (fileInfo == null || fileInfo.getDeleted() == 1) {
+            throw new BusinessException("文件已被分享人删除");
+        }
+        if (fileInfo.getIsFolder() == 1) {
+            return null;
+        }
+        return getRedirectUrl(fileInfo, null);
+    }
+
     @Override
     public String getInternalDownloadUrl(Long fileId, Integer expireMinutes) {
         FileInfo fileInfo = getById(fileId);
@@ -937,18 +1950,11 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
 
         int minutes = expireMinutes != null ? expireMinutes : 60;
 
-        try {
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(minioConfig.getBucket())
-                            .object(fileInfo.getFilePath())
-                            .expiry(minutes, TimeUnit.MINUTES)
-                            .build());
-        } catch (Exception e) {
-            log.error("获取下载链接失败", e);
-            throw new BusinessException("获取下载链接失败");
+        if (BlockStoreService.isManifest(fileInfo.getFilePath())) {
+            throw new BusinessException("该文件为分块存储，请使用直接下载");
         }
+
+        return fileStorageService.presignGet(fileInfo.getFilePath(), minutes * 60, null);
     }
 
     @Override
@@ -963,119 +1969,24 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         Long targetParentId = saveShareDTO.getParentId() != null ? saveShareDTO.getParentId() : 0L;
 
         // 校验存储空间
-        long totalSize = calculateTotalSize(sourceFile);
+        long totalSize = sizeOf(sourceFile);
         storageFeignClient.validateSpace(targetUserId, totalSize);
 
         // 处理同名
         String newFileName = generateUniqueFileName(sourceFile.getFileName(), targetParentId, targetUserId);
 
-        FileInfo newFile;
-        if (sourceFile.getIsFolder() == 0) {
-            // 文件：复制记录并增加引用计数
-            newFile = new FileInfo();
-            newFile.setUserId(targetUserId);
-            newFile.setParentId(targetParentId);
-            newFile.setFileName(newFileName);
-            newFile.setStorageId(sourceFile.getStorageId());
-            newFile.setFilePath(sourceFile.getFilePath());
-            newFile.setFileSize(sourceFile.getFileSize());
-            newFile.setContentType(sourceFile.getContentType());
-            newFile.setMd5(sourceFile.getMd5());
-            newFile.setIsFolder(0);
-            newFile.setFileType(sourceFile.getFileType());
-            save(newFile);
-            
-            // 增加存储引用计数
-            if (sourceFile.getStorageId() != null) {
-                fileStorageService.incrementRef(sourceFile.getStorageId());
-                log.info("保存分享增加引用：storageId={}", sourceFile.getStorageId());
-            }
-        } else {
-            // 文件夹：创建文件夹并递归复制内容
-            newFile = new FileInfo();
-            newFile.setUserId(targetUserId);
-            newFile.setParentId(targetParentId);
-            newFile.setFileName(newFileName);
-            newFile.setIsFolder(1);
-            newFile.setFileType("folder");
-            newFile.setFileSize(0L);
-            newFile.setDeleted(0);
-            save(newFile);
-            // 递归复制子文件
-            saveSharedDir(sourceFile.getId(), newFile.getId(), targetUserId);
-        }
+        FileInfo newFile = copySubtree(sourceFile, targetUserId, targetParentId, newFileName);
 
         // 更新已用空间
         storageFeignClient.addUsedSpace(targetUserId, totalSize);
 
         // 同步 ES 索引
-        sendCreateIndexRecursive(newFile, targetUserId);
+        sendCreateIndexSubtree(newFile);
 
         log.info("用户{}保存分享文件到网盘：{}", targetUserId, newFileName);
         return newFile;
     }
 
-    /**
-     * 递归复制分享文件夹内容
-     */
-    private void saveSharedDir(Long sourceParentId, Long targetParentId, Long targetUserId) {
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, sourceParentId)
-                .eq(FileInfo::getDeleted, 0));
-
-        for (FileInfo child : children) {
-            if (child.getIsFolder() == 1) {
-                // 子文件夹：创建并递归
-                FileInfo newFolder = new FileInfo();
-                newFolder.setUserId(targetUserId);
-                newFolder.setParentId(targetParentId);
-                newFolder.setFileName(child.getFileName());
-                newFolder.setIsFolder(1);
-                newFolder.setFileType("folder");
-                newFolder.setFileSize(0L);
-                newFolder.setDeleted(0);
-                save(newFolder);
-                saveSharedDir(child.getId(), newFolder.getId(), targetUserId);
-            } else {
-                // 文件：复制记录并增加引用计数
-                FileInfo newFile = new FileInfo();
-                newFile.setUserId(targetUserId);
-                newFile.setParentId(targetParentId);
-                newFile.setFileName(child.getFileName());
-                newFile.setStorageId(child.getStorageId());
-                newFile.setFilePath(child.getFilePath());
-                newFile.setFileSize(child.getFileSize());
-                newFile.setContentType(child.getContentType());
-                newFile.setMd5(child.getMd5());
-                newFile.setIsFolder(0);
-                newFile.setFileType(child.getFileType());
-                save(newFile);
-                
-                // 增加存储引用计数
-                if (child.getStorageId() != null) {
-                    fileStorageService.incrementRef(child.getStorageId());
-                }
-            }
-        }
-    }
-    /**
-     * 计算文件/文件夹总大小
-     */
-    private long calculateTotalSize(FileInfo file) {
-        if (file.getIsFolder() == 0) {
-            return file.getFileSize();
-        }
-        // 文件夹：递归计算
-        long total = 0;
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, file.getId())
-                .eq(FileInfo::getDeleted, 0));
-        for (FileInfo child : children) {
-            total += calculateTotalSize(child);
-        }
-        return total;
-    }
-
     @Override
     public List<FileInfo> listFolderChildren(Long folderId) {
         return list(new LambdaQueryWrapper<FileInfo>()
@@ -1086,7 +1997,7 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
     }
 
     @Override
-    public void downloadFolderAsZip(Long folderId, HttpServletResponse response) {
+    public void downloadFolderAsZip(Long folderId, HttpServletRequest request, HttpServletResponse response) {
         FileInfo folder = getById(folderId);
         if (folder == null || folder.getDeleted() == 1) {
             throw new BusinessException("文件夹不存在或已删除");
@@ -1099,9 +2010,9 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         response.setHeader("Content-Disposition", "attachment; filename=\"" + 
                 URLEncoder.encode(folder.getFileName(), StandardCharsets.UTF_8) + ".zip\"");
 
-        try (ZipOutputStream zos = new ZipOutputStream(response.getOutputStream())) {
-            addFolderToZipInternal(zos, folder, folder.getFileName());
-            zos.flush();
+        try (OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), null,
+                request.getHeader(BandwidthService.SHARE_CODE_HEADER))) {
+            archiveService.writeZip(archiveService.collectEntries(List.of(folder), null), outputStream);
             log.info("分享文件夹{}下载完成", folder.getFileName());
         } catch (Exception e) {
             log.error("文件夹下载失败", e);
@@ -1109,67 +2020,82 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
         }
     }
 
-    /**
-     * 递归添加文件夹到ZIP（内部接口用，不校验用户权限）
-     */
-    private void addFolderToZipInternal(ZipOutputStream zos, FileInfo folder, String basePath) {
-        List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                .eq(FileInfo::getParentId, folder.getId())
-                .eq(FileInfo::getDeleted, 0));
+    @Override
+    public void downloadFolderAsTar(Long folderId, Long userId, HttpServletRequest request,
+                                    HttpServletResponse response) {
+        FileInfo folder = getById(folderId);
+        if (folder == null || folder.getDeleted() == 1 || (userId != null && !folder.getUserId().equals(userId))) {
+            throw new BusinessException("文件夹不存在或已删除");
+        }
+        if (folder.getIsFolder() != 1) {
+            throw new BusinessException("不是文件夹");
+        }
 
-        if (children.isEmpty()) {
-            try {
-                zos.putNextEntry(new ZipEntry(basePath + "/"));
-                zos.closeEntry();
-            } catch (IOException e) {
-                log.warn("创建空目录失败: {}", basePath);
-            }
+        TarLayout layout = TarLayout.of(archiveService.collectEntries(List.of(folder), userId));
+        response.setHeader("Cache-Control", "private, no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified(layout.getETag())) {
+            return;
+        }
+        long size = layout.getSize();
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", layout.getETag());
+        response.setHeader("Content-Disposition", "attachment; filename=\"" +
+                URLEncoder.encode(folder.getFileName(), StandardCharsets.UTF_8) + ".tar\"");
+
+        String rangeHeader = request.getHeader("Range");
+        List<HttpRange> ranges = rangeHeader != null && isIfRangeMatched(request, layout.getETag(), 0)
+                ? HttpRange.parse(rangeHeader, size) : Collections.emptyList();
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + size);
             return;
         }
 
-        for (FileInfo child : children) {
-            String childPath = basePath + "/" + child.getFileName();
-            if (child.getIsFolder() == 1) {
-                addFolderToZipInternal(zos, child, childPath);
-            } else {
-                addFileToZip(zos, child, childPath);
-            }
+        response.setContentType("application/x-tar");
+        // 归档只支持单区间，多区间时返回完整内容
+        HttpRange range = ranges.size() == 1 ? ranges.get(0) : new HttpRange(0, size - 1);
+        if (ranges.size() == 1) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.toContentRange(size));
+        }
+        response.setContentLengthLong(range.getLength());
+
+        try (OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), userId,
+                request.getHeader(BandwidthService.SHARE_CODE_HEADER))) {
+            archiveService.writeTar(layout, range.getStart(), range.getLength(), outputStream);
+            log.info("文件夹{}打包下载完成，区间 {}-{}/{}", folder.getFileName(), range.getStart(), range.getEnd(), size);
+        } catch (Exception e) {
+            log.error("文件夹下载失败", e);
+            throw new BusinessException("文件夹下载失败: " + e.getMessage());
         }
     }
 
     // ========== ES 索引同步辅助方法 ==========
 
     /**
-     * 递归发送创建索引消息（用于复制、恢复、保存分享）
+     * 为整棵子树发送创建索引消息
      */
-    private void sendCreateIndexRecursive(FileInfo file, Long userId) {
-        fileIndexProducer.sendCreateMessage(file);
-        
-        if (file.getIsFolder() == 1) {
-            List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                    .eq(FileInfo::getParentId, file.getId())
-                    .eq(FileInfo::getUserId, userId)
-                    .eq(FileInfo::getDeleted, 0));
-            for (FileInfo child : children) {
-                sendCreateIndexRecursive(child, userId);
-            }
+    private void sendCreateIndexSubtree(FileInfo root) {
+        if (root.getIsFolder() != 1) {
+            fileIndexProducer.sendCreateMessage(root);
+            return;
         }
+        listSubtree(root, 0).forEach(fileIndexProducer::sendCreateMessage);
     }
 
     /**
-     * 递归发送删除索引消息（用于移入回收站）
+     * 为整棵子树发送删除索引消息（用于移入回收站）
      */
-    private void sendDeleteIndexRecursive(FileInfo file, Long userId) {
-        fileIndexProducer.sendDeleteMessage(file.getId());
-        
-        if (file.getIsFolder() == 1) {
-            List<FileInfo> children = list(new LambdaQueryWrapper<FileInfo>()
-                    .eq(FileInfo::getParentId, file.getId())
-                    .eq(FileInfo::getUserId, userId));
-            for (FileInfo child : children) {
-                sendDeleteIndexRecursive(child, userId);
-            }
+    private void sendDeleteIndexSubtree(FileInfo root) {
+        if (root.getIsFolder() != 1) {
+            fileIndexProducer.sendDeleteMessage(root.getId());
+            return;
         }
+        list(new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId)
+                .eq(FileInfo::getUserId, root.getUserId())
+                .likeRight(FileInfo::getTreePath, treePathOf(root)))
+                .forEach(file -> fileIndexProducer.sendDeleteMessage(file.getId()));
     }
 
     // ========== 缩略图功能 ==========
@@ -1177,7 +2103,8 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
     @Override
     public String getThumbnailUrl(Long fileId, Long userId) {
         FileInfo file = getById(fileId);
-        if (file == null || !file.getUserId().equals(userId)) {
+        // 回收站中的文件不再提供缩略图
+        if (file == null || !file.getUserId().equals(userId) || file.getDeleted() == 1) {
             throw new BusinessException("文件不存在或无权限");
         }
         return getThumbnailUrlInternal(file);
@@ -1193,23 +2120,106 @@ public class FileServiceImpl extends ServiceImpl<FileMapper, FileInfo> implement
     }
 
     private String getThumbnailUrlInternal(FileInfo file) {
+        String thumbnailPath = ensureThumbnail(file);
+        return thumbnailPath != null ? thumbnailService.getThumbnailUrl(thumbnailPath, 60) : null;
+    }
+
+    @Override
+    public void downloadThumbnail(Long fileId, Long userId, HttpServletRequest request, HttpServletResponse response) {
+        FileInfo file = getById(fileId);
+        // 回收站中的文件不再提供缩略图
+        if (file == null || !file.getUserId().equals(userId) || file.getDeleted() == 1) {
+            throw new BusinessException("文件不存在或无权限");
+        }
+        // 缩略图由文件内容生成，内容不变时缩略图不变
+        String etag = file.getMd5() != null ? "\"thumb-" + file.getMd5() + "\"" : null;
+        response.setHeader("Cache-Control", "private, no-cache");
+        if (etag != null && new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        String thumbnailPath = ensureThumbnail(file);
+        if (thumbnailPath == null) {
+            throw new BusinessException("该文件不支持缩略图");
+        }
+        response.setContentType("image/jpeg");
+        try (InputStream inputStream = fileStorageService.openStream(thumbnailPath);
+             OutputStream outputStream = response.getOutputStream()) {
+            copyStream(inputStream, outputStream);
+        } catch (IOException e) {
+            log.error("读取缩略图失败：{}", thumbnailPath, e);
+            throw new BusinessException("读取缩略图失败");
+        }
+    }
+
+    @Override
+    public List<ZipEntryVO> listZipEntries(Long fileId, Long userId) {
+        FileInfo file = getZipFile(fileId, userId);
+        return archiveService.readZipDirectory(file).getEntries().stream().map(entry -> {
+            ZipEntryVO vo = new ZipEntryVO();
+            vo.setPath(entry.getPath());
+            vo.setDirectory(entry.isDirectory());
+            vo.setSize(entry.getSize());
+            vo.setCompressedSize(entry.getCompressedSize());
+            vo.setLastModified(entry.getLastModified());
+            return vo;
+        }).collect(Collectors.toList());
+    }
+
+    @Override
+    public void downloadZipEntry(Long fileId, String path, Long userId, HttpServletResponse response) {
+        FileInfo file = getZipFile(fileId, userId);
+        ZipDirectory.Entry entry = archiveService.readZipDirectory(file).getEntry(path);
+        if (entry == null || entry.isDirectory()) {
+            throw new BusinessException("压缩包中不存在该文件");
+        }
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        try (InputStream inputStream = archiveService.openZipEntry(file, entry)) {
+            response.setContentType("application/octet-stream");
+            response.setContentLengthLong(entry.getSize());
+            response.setHeader("Content-Disposition", "attachment; filename=\"" +
+                    URLEncoder.encode(fileName, StandardCharsets.UTF_8) + "\"");
+            OutputStream outputStream = bandwidthService.throttle(response.getOutputStream(), userId, null);
+            copyStream(inputStream, outputStream);
+            outputStream.flush();
+            log.info("用户{}下载压缩包条目：{} -> {}", userId, file.getFileName(), path);
+        } catch (IOException e) {
+            log.error("压缩包条目下载失败：{} -> {}", file.getFileName(), path, e);
+            throw new BusinessException("压缩包条目下载失败: " + e.getMessage());
+        }
+    }
+
+    private FileInfo getZipFile(Long fileId, Long userId) {
+        FileInfo file = getById(fileId);
+        if (file == null || !file.getUserId().equals(userId) || file.getDeleted() != 0) {
+            throw new BusinessException("文件不存在或无权限");
+        }
+        if (file.getIsFolder() == 1 || !file.getFileName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            throw new BusinessException("仅支持浏览 ZIP 压缩包");
+        }
+        return file;
+    }
+
+    /**
+     * 获取缩略图路径，支持生成但尚未生成时同步生成
+     * @return 不支持缩略图时返回 null
+     */
+    private String ensureThumbnail(FileInfo file) {
         if (file.getIsFolder() == 1) {
             return null;
         }
         
-        // 如果已有缩略图，直接返回URL
+        // 如果已有缩略图，直接返回
         if (file.getThumbnailPath() != null && !file.getThumbnailPath().isEmpty()) {
-            return thumbnailService.getThumbnailUrl(file.getThumbnailPath(), 60);
+            return file.getThumbnailPath();
         }
         
-        // 如果支持生成缩略图但还没生成，异步生成
+        // 如果支持生成缩略图但还没生成，同步生成（首次请求时）
         if (thumbnailService.supportsThumbnail(file.getContentType())) {
-            // 同步生成（首次请求时）
             String thumbnailPath = thumbnailService.generateThumbnail(file.getFilePath(), file.getContentType());
             if (thumbnailPath != null) {
                 file.setThumbnailPath(thumbnailPath);
                 updateById(file);
-                return thumbnailService.getThumbnailUrl(thumbnailPath, 60);
+                return thumbnailPath;
             }
         }
         
@@ -1,25 +1,52 @@
 package com.neu.easypam.file.service.impl;
 
 import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
 import com.neu.easypam.common.exception.BusinessException;
 import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.dto.StagedObject;
 import com.neu.easypam.file.entity.FileStorage;
 import com.neu.easypam.file.mapper.FileStorageMapper;
+import com.neu.easypam.file.service.BlockStoreService;
 import com.neu.easypam.file.service.FileStorageService;
+import com.neu.easypam.file.util.TransactionUtils;
 import com.neu.easypam.file.vo.StorageStatsVO;
 import io.minio.*;
+import io.minio.http.Method;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -28,40 +55,167 @@ public class FileStorageServiceImpl extends ServiceImpl<FileStorageMapper, FileS
         implements FileStorageService {
 
     private final MinioClient minioClient;
+    @Qualifier("presignMinioClient")
+    private final MinioClient presignMinioClient;
+    private final Cache<String, String> presignedUrlCache;
     private final MinioConfig minioConfig;
+    private final BlockStoreService blockStoreService;
+    private final Cache<String, FileStorage> fileStorageCache;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // 流长度未知时的分段大小：10MB
+    private static final long UNKNOWN_SIZE_PART_SIZE = 10 * 1024 * 1024;
+
+    // 暂存对象记录（ZSET，score 为写入时间）
+    private static final String STAGED_OBJECTS_KEY = "file:staging:objects";
+
+    // MD5 布隆过滤器：最小容量、误判率、重建时每批加载数量
+    private static final long MD5_FILTER_MIN_CAPACITY = 1_000_000;
+    private static final double MD5_FILTER_FPP = 0.01;
+    private static final int MD5_FILTER_LOAD_BATCH = 5000;
+
+    // 预签名地址缓存（值为"复用截止时间戳|地址"）
+    private static final String PRESIGN_KEY_PREFIX = "file:presign:";
+
+    // 批量增加引用计数时每条语句包含的存储记录数
+    private static final int REF_BATCH_SIZE = 500;
+
+    /**
+     * 本节点的 MD5 布隆过滤器，为 null 时不做过滤
+     */
+    private volatile BloomFilter<CharSequence> md5Filter;
+    private volatile LocalDateTime md5FilterRefreshTime;
+
+    @Override
+    public FileStorage store(MultipartFile file) {
+        StagedObject staged = stage(file);
+        return commitOrDiscard(staged);
+    }
+
+    @Override
+    public FileStorage store(InputStream inputStream, long size, String fileName, String contentType) {
+        StagedObject staged = stage(inputStream, size, fileName, contentType);
+        return commitOrDiscard(staged);
+    }
+
+    private FileStorage commitOrDiscard(StagedObject staged) {
+        try {
+            return transactionTemplate.execute(status -> commit(staged));
+        } catch (RuntimeException e) {
+            discard(staged);
+            throw e;
+        }
+    }
+
+    @Override
+    public StagedObject stage(MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return stage(inputStream, file.getSize(), file.getOriginalFilename(), file.getContentType());
+        } catch (IOException e) {
+            throw new BusinessException("文件上传失败：" + e.getMessage());
+        }
+    }
+
+    @Override
+    public StagedObject stage(InputStream inputStream, long size, String fileName, String contentType) {
+        // 边上传到 MinIO 边计算 MD5（上传流只读一遍）
+        MessageDigest digest = DigestUtil.digester(DigestAlgorithm.MD5).getDigest();
+        StagedObject staged = new StagedObject();
+        staged.setContentType(contentType);
+
+        if (blockStoreService.supports(size)) {
+            // 大文件分块存储：未被块清单引用的块由定时任务回收，无需登记暂存
+            staged.setBlocks(blockStoreService.writeBlocks(new DigestInputStream(inputStream, digest)));
+            staged.setFileSize(size);
+        } else {
+            String storagePath = buildStoragePath(fileName);
+            trackStaged(storagePath);
+            uploadToMinio(new DigestInputStream(inputStream, digest), size, storagePath, contentType);
+            staged.setStoragePath(storagePath);
+            staged.setFileSize(size >= 0 ? size : statObjectSize(storagePath));
+        }
+        staged.setMd5(HexUtil.encodeHexStr(digest.digest()));
+        return staged;
+    }
+
+    @Override
+    public StagedObject stageExisting(String md5, String storagePath, long fileSize, String contentType) {
+        trackStaged(storagePath);
+        StagedObject staged = new StagedObject();
+        staged.setMd5(md5);
+        staged.setFileSize(fileSize);
+        staged.setContentType(contentType);
+        if (blockStoreService.supports(fileSize)) {
+            // 分片上传合并的大文件同样分块存储：读取合并结果切分为块，登记后删除合并对象
+            try (InputStream inputStream = openStream(storagePath)) {
+                staged.setBlocks(blockStoreService.writeBlocks(inputStream));
+            } catch (IOException e) {
+                throw new BusinessException("分块存储失败：" + e.getMessage());
+            }
+            staged.setSourcePath(storagePath);
+        } else {
+            staged.setStoragePath(storagePath);
+        }
+        return staged;
+    }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public FileStorage store(MultipartFile file, String md5) {
-        // 1. 先检查是否已存在（快速路径）
-        FileStorage existing = findByMd5(md5);
+    public FileStorage commit(StagedObject staged) {
+        if (staged.getBlocks() != null) {
+            FileStorage storage = commitBlocks(staged);
+            if (staged.getSourcePath() != null) {
+                TransactionUtils.afterCommit(() -> {
+                    deleteFromMinio(staged.getSourcePath());
+                    untrackStaged(staged.getSourcePath());
+                });
+            }
+            return storage;
+        }
+        FileStorage storage = register(staged.getMd5(), staged.getStoragePath(),
+                staged.getFileSize(), staged.getContentType());
+        TransactionUtils.afterCommit(() -> untrackStaged(staged.getStoragePath()));
+        return storage;
+    }
+
+    @Override
+    public void discard(StagedObject staged) {
+        if (staged.getStoragePath() != null) {
+            deleteFromMinio(staged.getStoragePath());
+            untrackStaged(staged.getStoragePath());
+        }
+    }
+
+    private FileStorage register(String md5, String storagePath, long fileSize, String contentType) {
+        // 去重命中：丢弃暂存对象，复用已有存储
+        FileStorage existing = selectByMd5(md5);
         if (existing != null) {
+            TransactionUtils.afterCommit(() -> deleteFromMinio(storagePath));
             baseMapper.incrementRefCount(existing.getId());
             log.info("文件去重命中：md5={}，refCount={}", md5, existing.getRefCount() + 1);
             return existing;
         }
 
-        // 2. 不存在则上传到 MinIO
-        String storagePath = uploadToMinio(file);
-
-        // 3. 尝试插入数据库（依赖 md5 唯一约束处理并发）
+        // 尝试插入数据库（依赖 md5 唯一约束处理并发）
         FileStorage storage = new FileStorage();
         storage.setMd5(md5);
         storage.setStoragePath(storagePath);
-        storage.setFileSize(file.getSize());
-        storage.setContentType(file.getContentType());
+        storage.setFileSize(fileSize);
+        storage.setContentType(contentType);
         storage.setRefCount(1);
 
         try {
             save(storage);
+            addToMd5Filter(md5);
             log.info("新文件存储：md5={}，path={}", md5, storagePath);
             return storage;
         } catch (org.springframework.dao.DuplicateKeyException e) {
             // 并发插入冲突：另一个线程已经插入了相同 md5 的记录
             // 删除刚上传的重复文件
-            deleteFromMinio(storagePath);
+            TransactionUtils.afterCommit(() -> deleteFromMinio(storagePath));
             // 增加已存在记录的引用计数
-            existing = findByMd5(md5);
+            existing = selectByMd5(md5);
             if (existing != null) {
                 baseMapper.incrementRefCount(existing.getId());
                 log.info("并发去重：md5={}，删除重复文件，refCount+1", md5);
@@ -71,8 +225,195 @@ public class FileStorageServiceImpl extends ServiceImpl<FileStorageMapper, FileS
         }
     }
 
+    /**
+     * 登记分块存储：整文件 MD5 去重仍然优先
+     * 整文件去重命中时，本次新写入的块引用计数为 0，由定时任务回收
+     */
+    private FileStorage commitBlocks(StagedObject staged) {
+        String md5 = staged.getMd5();
+        FileStorage existing = selectByMd5(md5);
+        if (existing != null) {
+            baseMapper.incrementRefCount(existing.getId());
+            log.info("文件去重命中：md5={}，refCount={}", md5, existing.getRefCount() + 1);
+            return existing;
+        }
+
+        FileStorage storage = new FileStorage();
+        storage.setId(IdWorker.getId());
+        storage.setMd5(md5);
+        storage.setStoragePath(BlockStoreService.MANIFEST_PREFIX + storage.getId());
+        storage.setFileSize(staged.getFileSize());
+        storage.setContentType(staged.getContentType());
+        storage.setRefCount(1);
+
+        try {
+            save(storage);
+        } catch (org.springframework.dao.DuplicateKeyException e) {
+            existing = selectByMd5(md5);
+            if (existing != null) {
+                baseMapper.incrementRefCount(existing.getId());
+                log.info("并发去重：md5={}，refCount+1", md5);
+                return existing;
+            }
+            throw new BusinessException("文件存储失败");
+        }
+        blockStoreService.saveManifest(storage.getId(), staged.getBlocks());
+        addToMd5Filter(md5);
+        log.info("新文件分块存储：md5={}，块数={}", md5, staged.getBlocks().size());
+        return storage;
+    }
+
+    /**
+     * 记录暂存对象，进程在登记元数据前退出时由定时任务回收
+     */
+    private void trackStaged(String storagePath) {
+        stringRedisTemplate.opsForZSet().add(STAGED_OBJECTS_KEY, storagePath, System.currentTimeMillis());
+    }
+
+    private void untrackStaged(String storagePath) {
+        stringRedisTemplate.opsForZSet().remove(STAGED_OBJECTS_KEY, storagePath);
+    }
+
+    @Override
+    public int cleanupStagedObjects(LocalDateTime before, int limit) {
+        long maxScore = before.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Set<String> paths = stringRedisTemplate.opsForZSet()
+                .rangeByScore(STAGED_OBJECTS_KEY, 0, maxScore, 0, limit);
+        if (paths == null || paths.isEmpty()) {
+            return 0;
+        }
+        for (String path : paths) {
+            boolean registered = exists(new LambdaQueryWrapper<FileStorage>()
+                    .eq(FileStorage::getStoragePath, path));
+            if (!registered) {
+                deleteFromMinio(path);
+                log.info("回收未登记的暂存对象：{}", path);
+            }
+            untrackStaged(path);
+        }
+        return paths.size();
+    }
+
+    @Override
+    public InputStream openStream(String storagePath) {
+        return openStream(storagePath, 0, -1);
+    }
+
+    @Override
+    public InputStream openStream(String storagePath, long offset, long length) {
+        if (BlockStoreService.isManifest(storagePath)) {
+            Long storageId = Long.valueOf(storagePath.substring(BlockStoreService.MANIFEST_PREFIX.length()));
+            return blockStoreService.open(storageId, offset, length);
+        }
+        try {
+            GetObjectArgs.Builder builder = GetObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(storagePath);
+            if (offset > 0 || length >= 0) {
+                builder.offset(offset);
+            }
+            if (length >= 0) {
+                builder.length(length);
+            }
+            return minioClient.getObject(builder.build());
+        } catch (Exception e) {
+            throw new BusinessException("文件读取失败：" + e.getMessage());
+        }
+    }
+
+    @Override
+    public String presignDownload(String storagePath, String fileName, String contentType, int expireSeconds) {
+        String encodedName = URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20");
+        Map<String, String> params = new HashMap<>();
+        params.put("response-content-disposition",
+                "attachment; filename=\"" + encodedName + "\"; filename*=UTF-8''" + encodedName);
+        if (contentType != null) {
+            params.put("response-content-type", contentType);
+        }
+        return presignGet(storagePath, expireSeconds, params);
+    }
+
+    @Override
+    public String presignGet(String storagePath, int expireSeconds, Map<String, String> responseParams) {
+        if (BlockStoreService.isManifest(storagePath)) {
+            return null;
+        }
+        Map<String, String> params = responseParams != null ? new TreeMap<>(responseParams) : new TreeMap<>();
+        // 缓存键包含签发地址，修改 publicEndpoint 后不再返回按旧地址签发的链接
+        String cacheKey = PRESIGN_KEY_PREFIX + DigestUtil.md5Hex(presignEndpoint() + "|" + storagePath + "|"
+                + expireSeconds + "|" + params);
+        long now = System.currentTimeMillis();
+
+        // 1. 本地缓存，2. Redis（多节点返回同一地址，浏览器缓存才能命中）
+        String cached = presignedUrlCache.getIfPresent(cacheKey);
+        if (cached == null) {
+            try {
+                cached = stringRedisTemplate.opsForValue().get(cacheKey);
+            } catch (Exception e) {
+                log.warn("读取预签名地址缓存失败：{}", e.getMessage());
+            }
+        }
+        if (cached != null) {
+            int separator = cached.indexOf('|');
+            if (Long.parseLong(cached.substring(0, separator)) > now) {
+                presignedUrlCache.put(cacheKey, cached);
+                return cached.substring(separator + 1);
+            }
+        }
+
+        // 3. 重新签发，只在前一半有效期内复用，返回的地址至少还剩 expireSeconds / 2
+        String url;
+        try {
+            url = presignMinioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                    .method(Method.GET)
+                    .bucket(minioConfig.getBucket())
+                    .object(storagePath)
+                    .expiry(expireSeconds, TimeUnit.SECONDS)
+                    .extraQueryParams(params)
+                    .build());
+        } catch (Exception e) {
+            log.error("签发下载地址失败：{}", storagePath, e);
+            throw new BusinessException("获取下载链接失败");
+        }
+        long reuseMillis = expireSeconds * 1000L / 2;
+        String value = (now + reuseMillis) + "|" + url;
+        presignedUrlCache.put(cacheKey, value);
+        try {
+            stringRedisTemplate.opsForValue().set(cacheKey, value, reuseMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("写入预签名地址缓存失败：{}", e.getMessage());
+        }
+        return url;
+    }
+
+    private String presignEndpoint() {
+        String publicEndpoint = minioConfig.getPublicEndpoint();
+        return publicEndpoint != null && !publicEndpoint.isEmpty() ? publicEndpoint : minioConfig.getEndpoint();
+    }
+
     @Override
     public FileStorage findByMd5(String md5) {
+        // 1. 布隆过滤器判定不存在：直接返回，不查数据库
+        BloomFilter<CharSequence> filter = md5Filter;
+        if (filter != null && !filter.mightContain(md5)) {
+            return null;
+        }
+
+        // 2. 命中缓存
+        FileStorage cached = fileStorageCache.getIfPresent(md5);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 3. 查询数据库并缓存
+        FileStorage storage = selectByMd5(md5);
+        if (storage != null) {
+            fileStorageCache.put(md5, storage);
+        }
+        return storage;
+    }
+
+    private FileStorage selectByMd5(String md5) {
         return getOne(new LambdaQueryWrapper<FileStorage>()
                 .eq(FileStorage::getMd5, md5)
                 .last("LIMIT 1"));
@@ -82,10 +423,88 @@ public class FileStorageServiceImpl extends ServiceImpl<FileStorageMapper, FileS
     public void incrementRef(Long storageId) {
         int rows = baseMapper.incrementRefCount(storageId);
         if (rows == 0) {
+            // 缓存中的存储记录可能已被其他节点删除
+            fileStorageCache.asMap().values().removeIf(storage -> storage.getId().equals(storageId));
             throw new BusinessException("存储记录不存在：" + storageId);
         }
     }
 
+    @Override
+    public void incrementRefs(Map<Long, Integer> refs) {
+        List<Long> storageIds = new ArrayList<>(refs.keySet());
+        for (int i = 0; i < storageIds.size(); i += REF_BATCH_SIZE) {
+            Map<Long, Integer> batch = new HashMap<>();
+            for (Long storageId : storageIds.subList(i, Math.min(i + REF_BATCH_SIZE, storageIds.size()))) {
+                batch.put(storageId, refs.get(storageId));
+            }
+            int rows = baseMapper.incrementRefCounts(batch);
+            if (rows != batch.size()) {
+                // 部分存储记录已被其他节点删除，整体回滚
+                fileStorageCache.asMap().values().removeIf(storage -> batch.containsKey(storage.getId()));
+                throw new BusinessException("存储记录不存在，请重试");
+            }
+        }
+    }
+
+    /**
+     * 全量重建 MD5 布隆过滤器（同时清除已删除存储留下的误判）
+     */
+    @PostConstruct
+    @Override
+    public void rebuildMd5Filter() {
+        try {
+            long count = count();
+            BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                    Math.max(count * 2, MD5_FILTER_MIN_CAPACITY), MD5_FILTER_FPP);
+            LocalDateTime rebuildTime = LocalDateTime.now();
+            long lastId = 0;
+            List<FileStorage> page;
+            do {
+                page = list(new LambdaQueryWrapper<FileStorage>()
+                        .select(FileStorage::getId, FileStorage::getMd5)
+                        .gt(FileStorage::getId, lastId)
+                        .orderByAsc(FileStorage::getId)
+                        .last("LIMIT " + MD5_FILTER_LOAD_BATCH));
+                for (FileStorage storage : page) {
+                    filter.put(storage.getMd5());
+                    lastId = storage.getId();
+                }
+            } while (page.size() == MD5_FILTER_LOAD_BATCH);
+            md5Filter = filter;
+            md5FilterRefreshTime = rebuildTime;
+            log.info("MD5布隆过滤器重建完成：存储数={}", count);
+        } catch (Exception e) {
+            // 过滤器不可用时退化为直接查询数据库
+            log.error("MD5布隆过滤器重建失败", e);
+        }
+    }
+
+    /**
+     * 增量同步其他节点新写入的 MD5
+     */
+    @Override
+    public void refreshMd5Filter() {
+        BloomFilter<CharSequence> filter = md5Filter;
+        if (filter == null) {
+            rebuildMd5Filter();
+            return;
+        }
+        LocalDateTime refreshTime = LocalDateTime.now();
+        // 往前多取一段时间，覆盖事务提交延迟
+        List<Object> md5List = listObjs(new LambdaQueryWrapper<FileStorage>()
+                .select(FileStorage::getMd5)
+                .ge(FileStorage::getCreateTime, md5FilterRefreshTime.minusMinutes(1)));
+        md5List.forEach(md5 -> filter.put((String) md5));
+        md5FilterRefreshTime = refreshTime;
+    }
+
+    private void addToMd5Filter(String md5) {
+        BloomFilter<CharSequence> filter = md5Filter;
+        if (filter != null) {
+            filter.put(md5);
+        }
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean decrementRef(Long storageId) {
@@ -101,7 +520,14 @@ public class FileStorageServiceImpl extends ServiceImpl<FileStorageMapper, FileS
 
         storage = getById(storageId);
         if (storage != null && storage.getRefCount() == 0) {
-            deleteFromMinio(storage.getStoragePath());
+            fileStorageCache.invalidate(storage.getMd5());
+            if (BlockStoreService.isManifest(storage.getStoragePath())) {
+                blockStoreService.release(storageId);
+            } else {
+                // 事务提交后再删除实际文件，回滚时文件仍可用
+                String storagePath = storage.getStoragePath();
+                TransactionUtils.afterCommit(() -> deleteFromMinio(storagePath));
+            }
             removeById(storageId);
             log.info("文件物理删除：md5={}，path={}", storage.getMd5(), storage.getStoragePath());
             return true;
@@ -151,25 +577,35 @@ public class FileStorageServiceImpl extends ServiceImpl<FileStorageMapper, FileS
         return stats;
     }
 
-    private String uploadToMinio(MultipartFile file) {
+    private String buildStoragePath(String fileName) {
+        String extension = fileName != null && fileName.contains(".")
+                ? fileName.substring(fileName.lastIndexOf(".")) : "";
+        String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
+        return datePath + "/" + UUID.randomUUID().toString().replace("-", "") + extension;
+    }
+
+    private void uploadToMinio(InputStream inputStream, long size, String objectName, String contentType) {
         try {
             ensureBucketExists();
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".")
-                    ? originalFilename.substring(originalFilename.lastIndexOf(".")) : "";
-            String datePath = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
-            String objectName = datePath + "/" + UUID.randomUUID().toString().replace("-", "") + extension;
-
-            try (InputStream inputStream = file.getInputStream()) {
-                minioClient.putObject(PutObjectArgs.builder()
-                        .bucket(minioConfig.getBucket())
-                        .object(objectName)
-                        .stream(inputStream, file.getSize(), -1)
-                        .contentType(file.getContentType())
-                        .build());
-            }
-            return objectName;
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(objectName)
+                    .stream(inputStream, size, size >= 0 ? -1 : UNKNOWN_SIZE_PART_SIZE)
+                    .contentType(contentType != null ? contentType : "application/octet-stream")
+                    .build());
+        } catch (Exception e) {
+            throw new BusinessException("文件上传失败：" + e.getMessage());
+        }
+    }
+
+    private long statObjectSize(String objectName) {
+        try {
+            return minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(minioConfig.getBucket())
+                    .object(objectName)
+                    .build()).size();
         } catch (Exception e) {
+            deleteFromMinio(objectName);
             throw new BusinessException("文件上传失败：" + e.getMessage());
         }
     }
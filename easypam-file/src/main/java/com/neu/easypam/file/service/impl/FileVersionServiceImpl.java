@@ -1,31 +1,28 @@
 package com.neu.easypam.file.service.impl;
 
-import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.neu.easypam.common.exception.BusinessException;
 import com.neu.easypam.common.feign.StorageFeignClient;
-import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.dto.StagedObject;
 import com.neu.easypam.file.entity.FileInfo;
 import com.neu.easypam.file.entity.FileStorage;
 import com.neu.easypam.file.entity.FileVersion;
 import com.neu.easypam.file.mapper.FileVersionMapper;
+import com.neu.easypam.file.service.BlockStoreService;
 import com.neu.easypam.file.service.FileService;
 import com.neu.easypam.file.service.FileStorageService;
 import com.neu.easypam.file.service.FileVersionService;
 import com.neu.easypam.file.vo.FileVersionVO;
-import io.minio.GetPresignedObjectUrlArgs;
-import io.minio.MinioClient;
-import io.minio.http.Method;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -36,61 +33,74 @@ public class FileVersionServiceImpl extends ServiceImpl<FileVersionMapper, FileV
     private final FileService fileService;
     private final FileStorageService fileStorageService;
     private final StorageFeignClient storageFeignClient;
-    private final MinioClient minioClient;
-    private final MinioConfig minioConfig;
+    private final TransactionTemplate transactionTemplate;
 
     private static final int MAX_VERSIONS = 10;  // 最多保留10个版本
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public FileInfo uploadNewVersion(Long fileId, MultipartFile file, Long userId, String remark) {
         // 1. 校验文件存在且有权限
-        FileInfo fileInfo = fileService.getById(fileId);
-        if (fileInfo == null || !fileInfo.getUserId().equals(userId) || fileInfo.getDeleted() == 1) {
+        FileInfo current = fileService.getById(fileId);
+        if (current == null || !current.getUserId().equals(userId) || current.getDeleted() == 1) {
             throw new BusinessException("文件不存在或无权限");
         }
-        if (fileInfo.getIsFolder() == 1) {
+        if (current.getIsFolder() == 1) {
             throw new BusinessException("文件夹不支持版本控制");
         }
 
         // 2. 校验存储空间
         storageFeignClient.validateSpace(userId, file.getSize());
 
+        // 3. 暂存新文件（事务外写入 MinIO，上传时同步计算 MD5）
+        StagedObject staged = fileStorageService.stage(file);
+
         try {
-            // 3. 保存当前版本到历史
-            saveCurrentAsVersion(fileInfo, remark);
+            // 4. 短事务：保存历史版本、登记存储、更新文件信息和存储空间
+            FileInfo updated = transactionTemplate.execute(status -> {
+                FileInfo fileInfo = fileService.getById(fileId);
+                if (fileInfo == null || fileInfo.getDeleted() == 1) {
+                    throw new BusinessException("文件不存在或无权限");
+                }
+                long oldSize = fileInfo.getFileSize() != null ? fileInfo.getFileSize() : 0;
 
-            // 4. 上传新文件到存储
-            String md5 = DigestUtil.md5Hex(file.getInputStream());
-            FileStorage newStorage = fileStorageService.store(file, md5);
+                // 保存当前版本到历史
+                saveCurrentAsVersion(fileInfo, remark);
 
-            // 5. 减少旧存储的引用计数
-            if (fileInfo.getStorageId() != null) {
-                fileStorageService.decrementRef(fileInfo.getStorageId());
-            }
+                // 登记新存储
+                FileStorage newStorage = fileStorageService.commit(staged);
 
-            // 6. 更新文件信息
-            fileInfo.setStorageId(newStorage.getId());
-            fileInfo.setFilePath(newStorage.getStoragePath());
-            fileInfo.setFileSize(newStorage.getFileSize());
-            fileInfo.setMd5(newStorage.getMd5());
-            fileInfo.setContentType(file.getContentType());
-            fileService.updateById(fileInfo);
-
-            // 7. 更新存储空间（新版本大小 - 旧版本大小）
-            long sizeDiff = file.getSize() - fileInfo.getFileSize();
-            if (sizeDiff > 0) {
-                storageFeignClient.addUsedSpace(userId, sizeDiff);
-            } else if (sizeDiff < 0) {
-                storageFeignClient.reduceUsedSpace(userId, -sizeDiff);
-            }
+                // 减少旧存储的引用计数
+                if (fileInfo.getStorageId() != null) {
+                    fileStorageService.decrementRef(fileInfo.getStorageId());
+                }
+
+                // 更新文件信息
+                fileInfo.setStorageId(newStorage.getId());
+                fileInfo.setFilePath(newStorage.getStoragePath());
+                fileInfo.setFileSize(newStorage.getFileSize());
+                fileInfo.setMd5(newStorage.getMd5());
+                fileInfo.setContentType(file.getContentType());
+                fileService.updateById(fileInfo);
+
+                // 更新存储空间（新版本大小 - 旧版本大小）
+                long sizeDiff = newStorage.getFileSize() - oldSize;
+                fileService.applySizeChange(fileInfo, sizeDiff);
+                if (sizeDiff > 0) {
+                    storageFeignClient.addUsedSpace(userId, sizeDiff);
+                } else if (sizeDiff < 0) {
+                    storageFeignClient.reduceUsedSpace(userId, -sizeDiff);
+                }
 
-            // 8. 清理超出限制的旧版本
-            cleanupOldVersions(fileId);
+                // 清理超出限制的旧版本
+                cleanupOldVersions(fileId);
+                return fileInfo;
+            });
 
             log.info("用户{}上传文件新版本：fileId={}", userId, fileId);
-            return fileInfo;
+            return updated;
         } catch (Exception e) {
+            // 补偿：丢弃未登记的暂存对象
+            fileStorageService.discard(staged);
             throw new BusinessException("上传新版本失败：" + e.getMessage());
         }
     }
@@ -222,12 +232,14 @@ public class FileVersionServiceImpl extends ServiceImpl<FileVersionMapper, FileV
         }
 
         // 更新为目标版本
+        long oldSize = fileInfo.getFileSize() != null ? fileInfo.getFileSize() : 0;
         fileInfo.setStorageId(targetStorage.getId());
         fileInfo.setFilePath(targetStorage.getStoragePath());
         fileInfo.setFileSize(targetVersion.getFileSize());
         fileInfo.setMd5(targetVersion.getMd5());
         fileStorageService.incrementRef(targetStorage.getId());
         fileService.updateById(fileInfo);
+        fileService.applySizeChange(fileInfo, fileInfo.getFileSize() - oldSize);
 
         log.info("用户{}回滚文件版本：fileId={}, versionNum={}", userId, fileId, versionNum);
         return fileInfo;
@@ -251,17 +263,10 @@ public class FileVersionServiceImpl extends ServiceImpl<FileVersionMapper, FileV
         if (storage == null) {
             throw new BusinessException("存储文件不存在");
         }
-
-        try {
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(minioConfig.getBucket())
-                            .object(storage.getStoragePath())
-                            .expiry(60, TimeUnit.MINUTES)
-                            .build());
-        } catch (Exception e) {
-            throw new BusinessException("获取下载链接失败");
+        if (BlockStoreService.isManifest(storage.getStoragePath())) {
+            throw new BusinessException("该版本为分块存储，请使用直接下载");
         }
+
+        return fileStorageService.presignGet(storage.getStoragePath(), 60 * 60, null);
     }
 }
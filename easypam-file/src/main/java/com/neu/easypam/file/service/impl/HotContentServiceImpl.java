@@ -0,0 +1,273 @@
+package com.neu.easypam.file.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.neu.easypam.common.exception.BusinessException;
+import com.neu.easypam.file.config.HotContentConfig;
+import com.neu.easypam.file.entity.FileInfo;
+import com.neu.easypam.file.mapper.FileMapper;
+import com.neu.easypam.file.service.FileCacheService;
+import com.neu.easypam.file.service.FileStorageService;
+import com.neu.easypam.file.service.HotContentService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HotContentServiceImpl implements HotContentService {
+
+    private final HotContentConfig hotContentConfig;
+    private final FileCacheService fileCacheService;
+    private final FileStorageService fileStorageService;
+    private final FileMapper fileMapper;
+
+    // 存储 MD5 -> 文件内容（堆外内存，引用计数），相同内容的文件共用一份
+    private Cache<String, ByteBuf> contentCache;
+    // 准入名单：当前热点小文件的存储 MD5
+    private volatile Set<String> admitted = Collections.emptySet();
+    // 已分配的堆外内存，包含已移出缓存但仍在被读取的内容，不超过 maxMemory
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        contentCache = Caffeine.newBuilder()
+                .maximumWeight(hotContentConfig.getMaxMemory())
+                .weigher((String md5, ByteBuf content) -> content.capacity())
+                .expireAfterAccess(30, TimeUnit.MINUTES)
+                // 移出缓存时同步释放缓存持有的引用，没有读取中的流时立即归还堆外内存，不等待 GC
+                .executor(Runnable::run)
+                .removalListener((String md5, ByteBuf content, RemovalCause cause) -> {
+                    if (content != null) {
+                        release(content);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public InputStream openStream(FileInfo fileInfo, long offset, long length) {
+        String md5 = fileInfo.getMd5();
+        if (!hotContentConfig.isEnabled() || md5 == null
+                || fileInfo.getFileSize() > hotContentConfig.getMaxFileSize()) {
+            return fileStorageService.openStream(fileInfo.getFilePath(), offset, length);
+        }
+
+        ByteBuf content = contentCache.getIfPresent(md5);
+        if (content != null) {
+            hitCount.increment();
+        } else if (admitted.contains(md5)) {
+            missCount.increment();
+            content = loadIntoCache(fileInfo);
+        }
+        // 读取期间持有一个引用，内容被移出缓存后也要等流关闭才释放
+        if (content == null || !retain(content)) {
+            return fileStorageService.openStream(fileInfo.getFilePath(), offset, length);
+        }
+
+        int start = (int) Math.min(offset, content.capacity());
+        int end = length >= 0 ? (int) Math.min(content.capacity(), offset + length) : content.capacity();
+        return new ContentInputStream(content, content.duplicate().setIndex(start, end));
+    }
+
+    /**
+     * 预留堆外内存后加载到缓存，同一内容并发未命中时只读取一次对象存储
+     * @return 预留不到内存或内容异常时返回 null，由调用方直接读取对象存储
+     */
+    private ByteBuf loadIntoCache(FileInfo fileInfo) {
+        long size = fileInfo.getFileSize();
+        if (!reserve(size)) {
+            return null;
+        }
+        boolean[] loaded = {false};
+        try {
+            return contentCache.get(fileInfo.getMd5(), key -> {
+                loaded[0] = true;
+                return load(fileInfo);
+            });
+        } finally {
+            // 其他线程已加载，预留的内存未使用
+            if (!loaded[0]) {
+                allocatedBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    /**
+     * 预留堆外内存：超出上限时按访问时间从旧到新移出缓存条目，仍不够（其余内存都在被读取）则放弃
+     * 不能在缓存的加载函数中执行（加载函数内不允许修改其他条目）
+     */
+    private boolean reserve(long size) {
+        long maxMemory = hotContentConfig.getMaxMemory();
+        while (allocatedBytes.addAndGet(size) > maxMemory) {
+            allocatedBytes.addAndGet(-size);
+            String coldest = contentCache.policy().eviction()
+                    .flatMap(eviction -> eviction.coldest(1).keySet().stream().findFirst())
+                    .orElse(null);
+            if (coldest == null) {
+                return false;
+            }
+            contentCache.invalidate(coldest);
+        }
+        return true;
+    }
+
+    /**
+     * 读取完整内容，直接写入堆外缓冲区（内存已预留）
+     * @return 内容长度与记录不一致时返回 null，不缓存
+     */
+    private ByteBuf load(FileInfo fileInfo) {
+        int size = fileInfo.getFileSize().intValue();
+        ByteBuf content;
+        try {
+            content = Unpooled.directBuffer(size, size);
+        } catch (RuntimeException | OutOfMemoryError e) {
+            allocatedBytes.addAndGet(-size);
+            throw e;
+        }
+        boolean complete = false;
+        try (InputStream inputStream = fileStorageService.openStream(fileInfo.getFilePath())) {
+            while (content.isWritable()) {
+                if (content.writeBytes(inputStream, content.writableBytes()) < 0) {
+                    break;
+                }
+            }
+            if (content.isWritable() || inputStream.read() != -1) {
+                log.warn("文件内容长度与记录不一致，不缓存：{}", fileInfo.getFilePath());
+                return null;
+            }
+            complete = true;
+            return content;
+        } catch (IOException e) {
+            throw new BusinessException("文件读取失败：" + e.getMessage());
+        } finally {
+            if (!complete) {
+                release(content);
+            }
+        }
+    }
+
+    private static boolean retain(ByteBuf content) {
+        try {
+            content.retain();
+            return true;
+        } catch (IllegalReferenceCountException e) {
+            // 已被移出缓存并释放
+            return false;
+        }
+    }
+
+    /**
+     * 释放一个引用，引用全部释放后内存立即归还
+     */
+    private void release(ByteBuf content) {
+        int capacity = content.capacity();
+        if (content.release()) {
+            allocatedBytes.addAndGet(-capacity);
+        }
+    }
+
+    @Override
+    public void refreshAdmission() {
+        if (!hotContentConfig.isEnabled()) {
+            return;
+        }
+        List<Long> hotFileIds = fileCacheService.getHotFileIds(hotContentConfig.getMinScore(),
+                hotContentConfig.getHotTopN());
+        Set<String> hotMd5s = hotFileIds.isEmpty() ? Collections.emptySet()
+                : fileMapper.selectBatchIds(hotFileIds).stream()
+                .filter(file -> file.getIsFolder() == 0 && file.getDeleted() == 0 && file.getMd5() != null)
+                .filter(file -> file.getFileSize() <= hotContentConfig.getMaxFileSize())
+                .map(FileInfo::getMd5)
+                .collect(Collectors.toSet());
+        admitted = hotMd5s;
+        // 不再热门的内容立即释放，把空间留给新的热点
+        contentCache.asMap().keySet().removeIf(md5 -> !hotMd5s.contains(md5));
+        log.debug("热点内容准入名单刷新：{} 个，已缓存 {} 个", hotMd5s.size(), contentCache.estimatedSize());
+    }
+
+    @Override
+    public long getCachedCount() {
+        return contentCache.estimatedSize();
+    }
+
+    @Override
+    public long getCachedBytes() {
+        return contentCache.asMap().values().stream().mapToLong(ByteBuf::capacity).sum();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 缓存内容指定区间的输入流，关闭时释放读取期间持有的引用
+     */
+    private class ContentInputStream extends InputStream {
+
+        private final ByteBuf content;
+        private final ByteBuf view;
+        private boolean closed;
+
+        ContentInputStream(ByteBuf content, ByteBuf view) {
+            this.content = content;
+            this.view = view;
+        }
+
+        @Override
+        public int read() {
+            return view.isReadable() ? view.readByte() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!view.isReadable()) {
+                return -1;
+            }
+            int n = Math.min(len, view.readableBytes());
+            view.readBytes(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return view.readableBytes();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(content);
+            }
+        }
+    }
+}
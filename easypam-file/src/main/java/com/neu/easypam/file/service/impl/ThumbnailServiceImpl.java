@@ -1,9 +1,9 @@
 package com.neu.easypam.file.service.impl;
 
 import com.neu.easypam.file.config.MinioConfig;
+import com.neu.easypam.file.service.FileStorageService;
 import com.neu.easypam.file.service.ThumbnailService;
 import io.minio.*;
-import io.minio.http.Method;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.coobird.thumbnailator.Thumbnails;
@@ -13,8 +13,8 @@ import org.springframework.stereotype.Service;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 缩略图服务实现
@@ -26,6 +26,7 @@ public class ThumbnailServiceImpl implements ThumbnailService {
 
     private final MinioClient minioClient;
     private final MinioConfig minioConfig;
+    private final FileStorageService fileStorageService;
 
     // 支持生成缩略图的图片类型
     private static final Set<String> SUPPORTED_IMAGE_TYPES = Set.of(
@@ -37,6 +38,7 @@ public class ThumbnailServiceImpl implements ThumbnailService {
     private static final int THUMBNAIL_HEIGHT = 200;
     private static final double THUMBNAIL_QUALITY = 0.8;
     private static final String THUMBNAIL_PREFIX = "thumbnails/";
+    private static final String THUMBNAIL_CACHE_CONTROL = "private, max-age=86400, immutable";
 
     @Override
     public String generateThumbnail(String originalPath, String contentType) {
@@ -46,11 +48,7 @@ public class ThumbnailServiceImpl implements ThumbnailService {
 
         try {
             // 1. 从MinIO获取原图
-            InputStream originalStream = minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(minioConfig.getBucket())
-                            .object(originalPath)
-                            .build());
+            InputStream originalStream = fileStorageService.openStream(originalPath);
 
             // 2. 生成缩略图
             ByteArrayOutputStream thumbnailOutput = new ByteArrayOutputStream();
@@ -91,13 +89,9 @@ public class ThumbnailServiceImpl implements ThumbnailService {
         }
 
         try {
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(minioConfig.getBucket())
-                            .object(thumbnailPath)
-                            .expiry(expireMinutes, TimeUnit.MINUTES)
-                            .build());
+            // 缩略图路径由原文件存储路径决定，内容不会变化，允许浏览器长期缓存
+            return fileStorageService.presignGet(thumbnailPath, expireMinutes * 60,
+                    Map.of("response-cache-control", THUMBNAIL_CACHE_CONTROL));
         } catch (Exception e) {
             log.error("获取缩略图URL失败：{}", thumbnailPath, e);
             return null;
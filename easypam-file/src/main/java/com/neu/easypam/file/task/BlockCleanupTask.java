@@ -0,0 +1,42 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.config.BlockStoreConfig;
+import com.neu.easypam.file.service.BlockStoreService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 无引用数据块回收任务
+ * 整文件去重命中或上传失败时，已写入的块不会被块清单引用，由该任务统一回收
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BlockCleanupTask {
+
+    private final BlockStoreService blockStoreService;
+    private final BlockStoreConfig blockStoreConfig;
+
+    /**
+     * 每天凌晨4点回收1天前的无引用块
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void cleanupUnreferencedBlocks() {
+        if (!blockStoreConfig.isEnabled()) {
+            return;
+        }
+        log.info("开始回收无引用数据块...");
+        LocalDateTime before = LocalDateTime.now().minusDays(1);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = blockStoreService.cleanupUnreferencedBlocks(before, 500);
+            total += deleted;
+        } while (deleted > 0);
+        log.info("无引用数据块回收完成，共回收：{}", total);
+    }
+}
@@ -0,0 +1,31 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.service.FileJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 后台文件任务接管定时任务
+ * 执行实例宕机或重启后，心跳超时的任务由其他实例从最后提交的检查点继续
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileJobRecoveryTask {
+
+    private final FileJobService fileJobService;
+
+    /**
+     * 每分钟扫描一次
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void recoverStaleJobs() {
+        try {
+            fileJobService.recoverStaleJobs();
+        } catch (Exception e) {
+            log.error("接管后台任务失败", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.service.HotContentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 热点内容缓存准入名单刷新任务
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HotContentRefreshTask {
+
+    private final HotContentService hotContentService;
+
+    /**
+     * 每分钟按热点访问排行刷新一次
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 10000)
+    public void refresh() {
+        try {
+            hotContentService.refreshAdmission();
+        } catch (Exception e) {
+            log.error("刷新热点内容缓存失败", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.service.FileStorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * MD5 布隆过滤器同步任务
+ * 布隆过滤器为节点本地结构，需要定期拉取其他节点写入的 MD5
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class Md5FilterRefreshTask {
+
+    private final FileStorageService fileStorageService;
+
+    /**
+     * 每30秒增量同步一次
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void refresh() {
+        try {
+            fileStorageService.refreshMd5Filter();
+        } catch (Exception e) {
+            log.error("MD5布隆过滤器增量同步失败", e);
+        }
+    }
+
+    /**
+     * 每天凌晨5点全量重建，清除已删除存储留下的误判
+     */
+    @Scheduled(cron = "0 0 5 * * ?")
+    public void rebuild() {
+        fileStorageService.rebuildMd5Filter();
+    }
+}
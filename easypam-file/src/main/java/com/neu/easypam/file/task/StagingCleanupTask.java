@@ -0,0 +1,39 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.service.FileStorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 暂存对象回收任务
+ * 上传先写入 MinIO 再登记元数据，进程在两阶段之间退出或合并登记失败后不再重试时，
+ * 已写入的对象不会被任何存储记录引用，由该任务回收
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StagingCleanupTask {
+
+    private final FileStorageService fileStorageService;
+
+    /**
+     * 每小时回收6小时前仍未登记的暂存对象
+     */
+    @Scheduled(cron = "0 30 * * * ?")
+    public void cleanupStagedObjects() {
+        LocalDateTime before = LocalDateTime.now().minusHours(6);
+        int total = 0;
+        int processed;
+        do {
+            processed = fileStorageService.cleanupStagedObjects(before, 500);
+            total += processed;
+        } while (processed > 0);
+        if (total > 0) {
+            log.info("暂存对象检查完成，共处理：{}", total);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.neu.easypam.file.task;
+
+import com.neu.easypam.file.service.ChunkUploadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 过期分片上传回收任务
+ * 客户端放弃的上传任务在 Redis 中的进度会过期，但对象存储中已上传的分片会一直占用空间，
+ * 由该任务中止分片上传会话释放分片
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadCleanupTask {
+
+    private final ChunkUploadService chunkUploadService;
+
+    /**
+     * 上传任务没有分片进展的保留天数，与 Redis 分片进度的过期时间一致
+     */
+    private static final int UPLOAD_RETENTION_DAYS = 7;
+
+    /**
+     * 每天凌晨3点回收过期的上传任务
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void cleanupExpiredUploads() {
+        LocalDateTime before = LocalDateTime.now().minusDays(UPLOAD_RETENTION_DAYS);
+        int total = 0;
+        int processed;
+        do {
+            processed = chunkUploadService.cleanupExpiredUploads(before, 500);
+            total += processed;
+        } while (processed > 0);
+        if (total > 0) {
+            log.info("过期上传任务检查完成，共处理：{}", total);
+        }
+    }
+}
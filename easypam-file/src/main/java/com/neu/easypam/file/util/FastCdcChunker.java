@@ -0,0 +1,103 @@
+package com.neu.easypam.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * FastCDC 内容定义分块
+ * 基于 Gear 滚动哈希寻找切点，并使用归一化分块（平均块大小前后使用不同掩码）
+ * 让块大小集中在平均值附近。插入或修改少量字节只影响附近的块，其余块边界保持不变
+ */
+public class FastCdcChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // 固定种子，保证不同节点、不同时间切分结果一致
+        Random random = new Random(0x6561737970616DL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream inputStream;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskS;
+    private final long maskL;
+
+    private final byte[] buffer;
+    private int bufferLength;
+    private boolean eof;
+
+    public FastCdcChunker(InputStream inputStream, int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize || Integer.bitCount(avgSize) != 1) {
+            throw new IllegalArgumentException("块大小需满足 0 < min <= avg <= max，且 avg 为2的幂");
+        }
+        this.inputStream = inputStream;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        // 平均值之前切点更难命中，之后更容易命中
+        this.maskS = highBitsMask(bits + 1);
+        this.maskL = highBitsMask(bits - 1);
+        this.buffer = new byte[maxSize];
+    }
+
+    /**
+     * 读取下一个块
+     * @return 块内容，流结束时返回 null
+     */
+    public byte[] nextChunk() throws IOException {
+        fill();
+        if (bufferLength == 0) {
+            return null;
+        }
+        int cut = findCutPoint(bufferLength);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, bufferLength - cut);
+        bufferLength -= cut;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        while (!eof && bufferLength < maxSize) {
+            int read = inputStream.read(buffer, bufferLength, maxSize - bufferLength);
+            if (read < 0) {
+                eof = true;
+            } else {
+                bufferLength += read;
+            }
+        }
+    }
+
+    private int findCutPoint(int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int normalSize = Math.min(avgSize, length);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normalSize; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fingerprint & maskS) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fingerprint & maskL) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long highBitsMask(int bits) {
+        return bits <= 0 ? 0 : -1L << (64 - bits);
+    }
+}
@@ -0,0 +1,92 @@
+package com.neu.easypam.file.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTTP Range 请求区间（闭区间 [start, end]）
+ */
+public class HttpRange {
+
+    // 单次请求允许的最大区间数，超过时按完整内容返回
+    private static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    public HttpRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    public String toContentRange(long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    /**
+     * 解析 Range 请求头
+     *
+     * @param header Range 请求头，如 bytes=0-499,1000-
+     * @param size   内容总长度
+     * @return 空列表表示忽略 Range 返回完整内容；null 表示区间不可满足（416）
+     */
+    public static List<HttpRange> parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return Collections.emptyList();
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return Collections.emptyList();
+        }
+        List<HttpRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return Collections.emptyList();
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // 后缀区间：最后 N 个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(size - suffix, 0);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    long lastPos = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (lastPos < start) {
+                        // 语法错误的区间，忽略整个 Range
+                        return Collections.emptyList();
+                    }
+                    end = Math.min(lastPos, size - 1);
+                }
+                if (start < size) {
+                    ranges.add(new HttpRange(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return Collections.emptyList();
+            }
+        }
+        return ranges.isEmpty() ? null : ranges;
+    }
+}
@@ -0,0 +1,70 @@
+package com.neu.easypam.file.util;
+
+import cn.hutool.core.codec.Base64;
+import com.neu.easypam.common.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 列表游标（keyset 分页的续传位置）：上一页最后一条记录的 (isFolder, 排序列值, id)
+ * 对客户端不透明，编码中带上排序方式，排序变化后旧游标失效
+ */
+public class ListCursor {
+
+    private final String sortBy;
+    private final boolean asc;
+    private final int isFolder;
+    private final long id;
+    // 排序列值的字符串形式，为空表示该列为 NULL
+    private final String value;
+
+    public ListCursor(String sortBy, boolean asc, int isFolder, long id, String value) {
+        this.sortBy = sortBy;
+        this.asc = asc;
+        this.isFolder = isFolder;
+        this.id = id;
+        this.value = value;
+    }
+
+    public int getIsFolder() {
+        return isFolder;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * 编码为 URL 安全的字符串；排序列值放在最后，其中的逗号不影响解析
+     */
+    public String encode() {
+        String raw = sortBy + "," + (asc ? "asc" : "desc") + "," + isFolder + "," + id + ","
+                + (value == null ? "" : "v" + value);
+        return Base64.encodeUrlSafe(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，并校验与本次请求的排序方式一致
+     */
+    public static ListCursor decode(String token, String sortBy, boolean asc) {
+        String[] parts;
+        try {
+            parts = new String(Base64.decode(token), StandardCharsets.UTF_8).split(",", 5);
+        } catch (Exception e) {
+            throw new BusinessException("无效的分页游标");
+        }
+        if (parts.length != 5 || !parts[0].equals(sortBy) || !parts[1].equals(asc ? "asc" : "desc")) {
+            throw new BusinessException("分页游标无效或排序方式已变化，请从第一页重新加载");
+        }
+        try {
+            String value = parts[4].isEmpty() ? null : parts[4].substring(1);
+            return new ListCursor(sortBy, asc, Integer.parseInt(parts[2]), Long.parseLong(parts[3]), value);
+        } catch (NumberFormatException e) {
+            throw new BusinessException("无效的分页游标");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.neu.easypam.file.util;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioAsyncClient;
+import io.minio.messages.Part;
+
+import java.io.InputStream;
+
+/**
+ * MinIO 原生分片上传客户端
+ * SDK 中 createMultipartUpload / uploadPart / completeMultipartUpload / abortMultipartUpload
+ * 均为 protected 方法，这里通过继承暴露给分片上传服务使用
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    /**
+     * 初始化分片上传会话
+     * @return S3 uploadId
+     */
+    public String initiate(String bucket, String object, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        return createMultipartUpload(bucket, null, object, headers, null).result().uploadId();
+    }
+
+    /**
+     * 上传单个分片
+     * @param partNumber 分片序号（从1开始）
+     * @return 分片 ETag
+     */
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber,
+                             InputStream inputStream, long size) throws Exception {
+        return uploadPart(bucket, null, object, inputStream, size, uploadId, partNumber, null, null).etag();
+    }
+
+    /**
+     * 完成分片上传（服务端按分片顺序拼接，仅元数据操作）
+     */
+    public void complete(String bucket, String object, String uploadId, Part[] parts) throws Exception {
+        completeMultipartUpload(bucket, null, object, uploadId, parts, null, null);
+    }
+
+    /**
+     * 取消分片上传，释放已上传的分片
+     */
+    public void abort(String bucket, String object, String uploadId) throws Exception {
+        abortMultipartUpload(bucket, null, object, uploadId, null, null);
+    }
+}
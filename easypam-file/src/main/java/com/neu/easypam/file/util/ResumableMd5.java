@@ -0,0 +1,186 @@
+package com.neu.easypam.file.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+/**
+ * 可导出中间状态的 MD5
+ * JDK 的 MessageDigest 无法序列化，分片按顺序到达不同节点时无法接续计算。
+ * 这里实现标准 MD5，中间状态可导出为字符串保存到 Redis，由下一个分片所在节点恢复后继续计算
+ */
+public class ResumableMd5 {
+
+    private static final int[] S = {
+            7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+            5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+            4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+            6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21
+    };
+
+    private static final int[] K = {
+            0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee, 0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+            0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be, 0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+            0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa, 0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+            0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed, 0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+            0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c, 0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+            0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05, 0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+            0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039, 0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+            0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1, 0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391
+    };
+
+    // 状态：4个寄存器 + 已处理字节数 + 未满64字节的缓冲
+    private static final int STATE_HEADER_SIZE = 16 + 8 + 1;
+
+    private int a = 0x67452301;
+    private int b = 0xefcdab89;
+    private int c = 0x98badcfe;
+    private int d = 0x10325476;
+    private long count;
+    private final byte[] buffer = new byte[64];
+    private int bufferLength;
+    private final int[] words = new int[16];
+
+    public void update(byte[] input, int offset, int length) {
+        count += length;
+        if (bufferLength > 0) {
+            int n = Math.min(64 - bufferLength, length);
+            System.arraycopy(input, offset, buffer, bufferLength, n);
+            bufferLength += n;
+            offset += n;
+            length -= n;
+            if (bufferLength < 64) {
+                return;
+            }
+            transform(buffer, 0);
+            bufferLength = 0;
+        }
+        while (length >= 64) {
+            transform(input, offset);
+            offset += 64;
+            length -= 64;
+        }
+        if (length > 0) {
+            System.arraycopy(input, offset, buffer, 0, length);
+            bufferLength = length;
+        }
+    }
+
+    /**
+     * 计算最终摘要（不影响当前状态，可继续 update）
+     */
+    public String hex() {
+        ResumableMd5 copy = restore(exportState());
+        long bitLength = copy.count << 3;
+        byte[] padding = new byte[((copy.bufferLength < 56) ? 56 : 120) - copy.bufferLength];
+        padding[0] = (byte) 0x80;
+        copy.update(padding, 0, padding.length);
+        byte[] lengthBytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(bitLength).array();
+        copy.update(lengthBytes, 0, 8);
+
+        ByteBuffer digest = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(copy.a).putInt(copy.b).putInt(copy.c).putInt(copy.d);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte value : digest.array()) {
+            sb.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 导出中间状态
+     */
+    public String exportState() {
+        ByteBuffer state = ByteBuffer.allocate(STATE_HEADER_SIZE + bufferLength).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(a).putInt(b).putInt(c).putInt(d)
+                .putLong(count)
+                .put((byte) bufferLength)
+                .put(buffer, 0, bufferLength);
+        return Base64.getEncoder().encodeToString(state.array());
+    }
+
+    /**
+     * 从中间状态恢复
+     */
+    public static ResumableMd5 restore(String exported) {
+        ResumableMd5 md5 = new ResumableMd5();
+        if (exported == null || exported.isEmpty()) {
+            return md5;
+        }
+        ByteBuffer state = ByteBuffer.wrap(Base64.getDecoder().decode(exported)).order(ByteOrder.LITTLE_ENDIAN);
+        md5.a = state.getInt();
+        md5.b = state.getInt();
+        md5.c = state.getInt();
+        md5.d = state.getInt();
+        md5.count = state.getLong();
+        md5.bufferLength = state.get();
+        state.get(md5.buffer, 0, md5.bufferLength);
+        return md5;
+    }
+
+    /**
+     * 包装输入流，读取时同步更新摘要
+     */
+    public InputStream wrap(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value >= 0) {
+                    update(new byte[]{(byte) value}, 0, 1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    update(b, off, n);
+                }
+                return n;
+            }
+        };
+    }
+
+    private void transform(byte[] block, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int p = offset + i * 4;
+            words[i] = (block[p] & 0xFF) | (block[p + 1] & 0xFF) << 8
+                    | (block[p + 2] & 0xFF) << 16 | (block[p + 3] & 0xFF) << 24;
+        }
+        int aa = a;
+        int bb = b;
+        int cc = c;
+        int dd = d;
+        for (int i = 0; i < 64; i++) {
+            int f;
+            int g;
+            if (i < 16) {
+                f = (bb & cc) | (~bb & dd);
+                g = i;
+            } else if (i < 32) {
+                f = (dd & bb) | (~dd & cc);
+                g = (5 * i + 1) & 15;
+            } else if (i < 48) {
+                f = bb ^ cc ^ dd;
+                g = (3 * i + 5) & 15;
+            } else {
+                f = cc ^ (bb | ~dd);
+                g = (7 * i) & 15;
+            }
+            int tmp = dd;
+            dd = cc;
+            cc = bb;
+            bb = bb + Integer.rotateLeft(aa + f + K[i] + words[g], S[i]);
+            aa = tmp;
+        }
+        a += aa;
+        b += bb;
+        c += cc;
+        d += dd;
+    }
+}
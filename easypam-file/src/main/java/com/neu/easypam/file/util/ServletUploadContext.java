@@ -0,0 +1,45 @@
+package com.neu.easypam.file.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload.UploadContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 把 jakarta 请求适配为 commons-fileupload 的上传上下文（其自带的 ServletRequestContext 基于 javax.servlet）
+ */
+public class ServletUploadContext implements UploadContext {
+
+    private final HttpServletRequest request;
+
+    public ServletUploadContext(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return request.getCharacterEncoding();
+    }
+
+    @Override
+    public String getContentType() {
+        return request.getContentType();
+    }
+
+    @Override
+    @Deprecated
+    public int getContentLength() {
+        return request.getContentLength();
+    }
+
+    @Override
+    public long contentLength() {
+        return request.getContentLengthLong();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return request.getInputStream();
+    }
+}
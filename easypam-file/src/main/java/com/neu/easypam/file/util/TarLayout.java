@@ -0,0 +1,241 @@
+package com.neu.easypam.file.util;
+
+import cn.hutool.core.util.HexUtil;
+import com.neu.easypam.file.dto.ArchiveEntry;
+import com.neu.easypam.file.entity.FileInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TAR 归档布局（ustar + PAX 扩展头）
+ * 归档中不包含内容校验和，总长度和每个字节的位置只由文件元数据决定，
+ * 因此可以在读取任何内容之前给出 Content-Length，并按 Range 只输出指定区间
+ */
+public class TarLayout {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final byte[] ZERO_BLOCK = new byte[BLOCK_SIZE];
+    // ustar 头中 size 字段可表示的最大值（11位八进制）
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    /**
+     * 归档片段：头部字节 / 填充（bytes 非空）或文件内容（file 非空）
+     */
+    public static class Segment {
+        private final long offset;
+        private final long length;
+        private final byte[] bytes;
+        private final FileInfo file;
+
+        Segment(long offset, long length, byte[] bytes, FileInfo file) {
+            this.offset = offset;
+            this.length = length;
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public FileInfo getFile() {
+            return file;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final MessageDigest digest;
+    private long size;
+    private String etag;
+
+    private TarLayout() {
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 根据条目计算归档布局
+     */
+    public static TarLayout of(List<ArchiveEntry> entries) {
+        TarLayout layout = new TarLayout();
+        for (ArchiveEntry entry : entries) {
+            layout.addEntry(entry);
+        }
+        // 归档结束标记：两个全零块
+        layout.addBytes(new byte[BLOCK_SIZE * 2]);
+        layout.etag = "\"" + HexUtil.encodeHexStr(layout.digest.digest()) + "\"";
+        return layout;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public List<Segment> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * 归档内容的强校验 ETag：由全部头部和文件内容 MD5 决定，目录内容变化后断点续传会重新开始
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * 二分查找包含 position 的片段下标
+     */
+    public int indexOf(long position) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).getOffset() <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void addEntry(ArchiveEntry entry) {
+        FileInfo file = entry.getFile();
+        boolean directory = entry.isDirectory();
+        long contentSize = directory ? 0 : file.getFileSize();
+        long mtime = file != null && file.getUpdateTime() != null
+                ? file.getUpdateTime().atZone(ZoneId.systemDefault()).toEpochSecond() : 0;
+
+        byte[] pathBytes = entry.getPath().getBytes(StandardCharsets.UTF_8);
+        boolean paxPath = pathBytes.length > 100 || !isAscii(pathBytes);
+        boolean paxSize = contentSize > MAX_USTAR_SIZE;
+        if (paxPath || paxSize) {
+            StringBuilder records = new StringBuilder();
+            if (paxPath) {
+                records.append(paxRecord("path", entry.getPath()));
+            }
+            if (paxSize) {
+                records.append(paxRecord("size", String.valueOf(contentSize)));
+            }
+            byte[] paxData = records.toString().getBytes(StandardCharsets.UTF_8);
+            addBytes(header("PaxHeaders/" + fallbackName(pathBytes, 89), 'x', 0644, paxData.length, mtime));
+            addBytes(paxData);
+            addPadding(paxData.length);
+        }
+
+        String name = paxPath ? fallbackName(pathBytes, 100) : entry.getPath();
+        addBytes(header(name, directory ? '5' : '0', directory ? 0755 : 0644,
+                paxSize ? 0 : contentSize, mtime));
+        if (contentSize > 0) {
+            segments.add(new Segment(size, contentSize, null, file));
+            size += contentSize;
+            String md5 = file.getMd5() != null ? file.getMd5() : file.getFilePath();
+            digest.update(md5.getBytes(StandardCharsets.UTF_8));
+            addPadding(contentSize);
+        }
+    }
+
+    private void addBytes(byte[] bytes) {
+        segments.add(new Segment(size, bytes.length, bytes, null));
+        size += bytes.length;
+        digest.update(bytes);
+    }
+
+    private void addPadding(long length) {
+        int padding = (int) ((BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            segments.add(new Segment(size, padding, ZERO_BLOCK, null));
+            size += padding;
+        }
+    }
+
+    private static byte[] header(String name, char type, int mode, long size, long mtime) {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        writeOctal(header, 100, 8, mode);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        writeOctal(header, 124, 12, size);
+        writeOctal(header, 136, 12, mtime);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // 校验和按校验和字段为空格计算
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        writeOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return header;
+    }
+
+    /**
+     * 写入定长八进制字段：前导 0 补齐，末尾 NUL
+     */
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        int pad = digits - octal.length();
+        for (int i = 0; i < digits; i++) {
+            header[offset + i] = (byte) (i < pad ? '0' : octal.charAt(i - pad));
+        }
+        header[offset + digits] = 0;
+    }
+
+    /**
+     * PAX 记录："长度 key=value\n"，长度包含自身位数
+     */
+    private static String paxRecord(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = body + String.valueOf(body).length();
+        if (String.valueOf(length).length() != String.valueOf(body).length()) {
+            length = body + String.valueOf(length).length();
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+
+    /**
+     * 不支持 PAX 的解压工具使用的备用文件名：非 ASCII 字符替换为下划线
+     */
+    private static String fallbackName(byte[] pathBytes, int maxLength) {
+        StringBuilder name = new StringBuilder();
+        for (int i = pathBytes.length - 1; i >= 0 && name.length() < maxLength; i--) {
+            byte b = pathBytes[i];
+            name.append(b >= 0x20 && b < 0x7F ? (char) b : '_');
+        }
+        return name.reverse().toString();
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0x20 || b >= 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
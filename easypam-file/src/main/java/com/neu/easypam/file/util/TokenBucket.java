@@ -0,0 +1,31 @@
+package com.neu.easypam.file.util;
+
+/**
+ * 令牌桶（预扣模式）
+ * 申请时先扣减令牌，令牌不足时允许透支并返回需要等待的时间，由调用方在锁外等待，
+ * 这样多个桶可以同时预扣后只等待其中最长的时间。速率和容量每次申请时传入，配置变更后立即生效
+ */
+public class TokenBucket {
+
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public TokenBucket(long capacity) {
+        this.tokens = capacity;
+    }
+
+    /**
+     * 预扣令牌
+     * @param permits  申请的令牌数（字节）
+     * @param rate     每秒补充的令牌数
+     * @param capacity 桶容量（允许的突发量）
+     * @return 需要等待的纳秒数，0 表示无需等待
+     */
+    public synchronized long reserve(long permits, long rate, long capacity) {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1_000_000_000.0);
+        lastRefillNanos = now;
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1_000_000_000.0 / rate);
+    }
+}
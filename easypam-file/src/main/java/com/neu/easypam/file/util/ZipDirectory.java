@@ -0,0 +1,325 @@
+package com.neu.easypam.file.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ZIP 中央目录
+ * 只通过区间读取解析文件末尾的目录结构（EOCD / ZIP64 EOCD / 中央目录），不读取任何条目内容，
+ * 多 GB 的压缩包也只需几次小的区间读取即可列出全部条目及其在压缩包中的位置
+ */
+public class ZipDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    public static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int UNICODE_PATH_EXTRA_ID = 0x7075;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    // 未设置 UTF-8 标志的条目名多由中文 Windows 压缩工具生成
+    private static final Charset LEGACY_CHARSET = Charset.forName("GBK");
+
+    /**
+     * 按区间读取压缩包内容
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    /**
+     * 中央目录中的一个条目
+     */
+    public static class Entry {
+        private final String path;
+        private final int method;
+        private final boolean encrypted;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final LocalDateTime lastModified;
+
+        Entry(String path, int method, boolean encrypted, long crc, long compressedSize, long size,
+              long localHeaderOffset, LocalDateTime lastModified) {
+            this.path = path;
+            this.method = method;
+            this.encrypted = encrypted;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return path.endsWith("/");
+        }
+
+        /**
+         * 压缩方式：0 STORED，8 DEFLATED
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public boolean isEncrypted() {
+            return encrypted;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        public LocalDateTime getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> entryMap;
+    private final long directorySize;
+
+    private ZipDirectory(List<Entry> entries, long directorySize) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.directorySize = directorySize;
+        Map<String, Entry> map = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            map.putIfAbsent(entry.getPath(), entry);
+        }
+        this.entryMap = map;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(String path) {
+        return entryMap.get(path);
+    }
+
+    /**
+     * 中央目录的字节数
+     */
+    public long getDirectorySize() {
+        return directorySize;
+    }
+
+    /**
+     * 读取并解析中央目录
+     * @param fileSize         压缩包大小
+     * @param maxDirectorySize 允许的中央目录最大字节数，防止异常文件占用过多内存
+     * @throws IllegalArgumentException 不是有效的 ZIP 文件或不受支持（分卷）
+     */
+    public static ZipDirectory read(long fileSize, long maxDirectorySize, RangeReader reader) throws IOException {
+        // EOCD 位于文件末尾，后面最多跟 65535 字节的注释
+        int tailLength = (int) Math.min(fileSize, EOCD_SIZE + 0xFFFF);
+        long tailOffset = fileSize - tailLength;
+        ByteBuffer tail = wrap(reader.read(tailOffset, tailLength));
+        int eocd = findEocd(tail);
+        if (eocd < 0) {
+            throw new IllegalArgumentException("未找到 ZIP 目录结束标记");
+        }
+
+        int diskNumber = u16(tail, eocd + 4);
+        long totalEntries = u16(tail, eocd + 10);
+        long cdSize = u32(tail, eocd + 12);
+        long cdOffset = u32(tail, eocd + 16);
+        if (totalEntries == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            int locator = eocd - ZIP64_LOCATOR_SIZE;
+            if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+                throw new IllegalArgumentException("未找到 ZIP64 目录定位记录");
+            }
+            long zip64Offset = tail.getLong(locator + 8);
+            ByteBuffer zip64 = wrap(reader.read(zip64Offset, ZIP64_EOCD_SIZE));
+            if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                throw new IllegalArgumentException("ZIP64 目录结束记录无效");
+            }
+            diskNumber = zip64.getInt(16);
+            totalEntries = zip64.getLong(32);
+            cdSize = zip64.getLong(40);
+            cdOffset = zip64.getLong(48);
+        }
+        if (diskNumber != 0) {
+            throw new IllegalArgumentException("不支持分卷压缩包");
+        }
+        if (cdSize > maxDirectorySize || cdOffset + cdSize > fileSize) {
+            throw new IllegalArgumentException("ZIP 中央目录过大或位置无效");
+        }
+
+        // 中央目录通常紧挨 EOCD，已在末尾读取范围内时不再重复读取
+        ByteBuffer cd = cdOffset >= tailOffset
+                ? slice(tail, (int) (cdOffset - tailOffset), (int) cdSize)
+                : wrap(reader.read(cdOffset, (int) cdSize));
+        return new ZipDirectory(parseEntries(cd, totalEntries), cdSize);
+    }
+
+    /**
+     * 解析本地文件头，返回条目内容相对本地文件头的偏移
+     */
+    public static int dataOffset(byte[] localHeader) {
+        ByteBuffer header = wrap(localHeader);
+        if (localHeader.length < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IllegalArgumentException("ZIP 本地文件头无效");
+        }
+        return LOCAL_HEADER_SIZE + u16(header, 26) + u16(header, 28);
+    }
+
+    private static int findEocd(ByteBuffer tail) {
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            // 注释长度必须正好延伸到文件末尾，避免把注释中的签名误认为 EOCD
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + u16(tail, i + 20) == tail.limit()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Entry> parseEntries(ByteBuffer cd, long totalEntries) {
+        List<Entry> entries = new ArrayList<>((int) Math.min(totalEntries, 65536));
+        int pos = 0;
+        while (pos + CENTRAL_HEADER_SIZE <= cd.limit() && cd.getInt(pos) == CENTRAL_SIGNATURE) {
+            int flags = u16(cd, pos + 8);
+            int method = u16(cd, pos + 10);
+            int dosTime = u16(cd, pos + 12);
+            int dosDate = u16(cd, pos + 14);
+            long crc = u32(cd, pos + 16);
+            long compressedSize = u32(cd, pos + 20);
+            long size = u32(cd, pos + 24);
+            int nameLength = u16(cd, pos + 28);
+            int extraLength = u16(cd, pos + 30);
+            int commentLength = u16(cd, pos + 32);
+            long localHeaderOffset = u32(cd, pos + 42);
+
+            int namePos = pos + CENTRAL_HEADER_SIZE;
+            int extraPos = namePos + nameLength;
+            int next = extraPos + extraLength + commentLength;
+            if (next > cd.limit()) {
+                throw new IllegalArgumentException("ZIP 中央目录已损坏");
+            }
+            byte[] nameBytes = new byte[nameLength];
+            cd.get(namePos, nameBytes);
+            String name = decodeName(nameBytes, (flags & FLAG_UTF8) != 0);
+
+            // 扩展字段：ZIP64 大小 / 偏移，Info-ZIP Unicode 路径
+            int extraEnd = extraPos + extraLength;
+            for (int p = extraPos; p + 4 <= extraEnd; ) {
+                int id = u16(cd, p);
+                int length = u16(cd, p + 2);
+                int data = p + 4;
+                if (data + length > extraEnd) {
+                    break;
+                }
+                if (id == ZIP64_EXTRA_ID) {
+                    int q = data;
+                    if (size == 0xFFFFFFFFL && q + 8 <= data + length) {
+                        size = cd.getLong(q);
+                        q += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && q + 8 <= data + length) {
+                        compressedSize = cd.getLong(q);
+                        q += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL && q + 8 <= data + length) {
+                        localHeaderOffset = cd.getLong(q);
+                    }
+                } else if (id == UNICODE_PATH_EXTRA_ID && length > 5 && (flags & FLAG_UTF8) == 0) {
+                    byte[] unicode = new byte[length - 5];
+                    cd.get(data + 5, unicode);
+                    name = new String(unicode, StandardCharsets.UTF_8);
+                }
+                p = data + length;
+            }
+
+            entries.add(new Entry(name, method, (flags & FLAG_ENCRYPTED) != 0, crc, compressedSize, size,
+                    localHeaderOffset, dosToLocalDateTime(dosDate, dosTime)));
+            pos = next;
+        }
+        return entries;
+    }
+
+    /**
+     * 未标记 UTF-8 的条目名先按 UTF-8 严格解码，失败再按 GBK 解码
+     */
+    private static String decodeName(byte[] bytes, boolean utf8) {
+        if (utf8) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, LEGACY_CHARSET);
+        }
+    }
+
+    private static LocalDateTime dosToLocalDateTime(int date, int time) {
+        if (date == 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(((date >> 9) & 0x7F) + 1980, (date >> 5) & 0x0F, date & 0x1F,
+                    (time >> 11) & 0x1F, (time >> 5) & 0x3F, (time & 0x1F) * 2);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer wrap(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,20 @@
+package com.neu.easypam.file.vo;
+
+import lombok.Data;
+
+@Data
+public class BandwidthStatsVO {
+    // 经过限速的下载字节数
+    private Long totalBytes;
+    // 因限速而等待后才写出的字节数
+    private Long throttledBytes;
+    // 限速累计等待时间（毫秒）
+    private Long throttleWaitMillis;
+    // 当前限速配置（字节/秒，0 表示不限制）
+    private Long globalRate;
+    private Long userRate;
+    private Long shareRate;
+    // 活跃的用户 / 分享令牌桶数量
+    private Long activeUserBuckets;
+    private Long activeShareBuckets;
+}
@@ -17,4 +17,10 @@ public class CacheStatsVO {
 
     // 热点文件统计
     private Integer hotFileCount;
+
+    // 热点内容缓存统计（本节点）
+    private Long contentCacheSize;
+    private Long contentCacheBytes;
+    private Long contentHitCount;
+    private Long contentMissCount;
 }
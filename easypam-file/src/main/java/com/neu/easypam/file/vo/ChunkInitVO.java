@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Schema(description = "分片上传初始化响应")
@@ -23,4 +24,13 @@ public class ChunkInitVO {
     
     @Schema(description = "总分片数")
     private Integer chunkCount;
+
+    @Schema(description = "分片大小（字节），可能被调整为对象存储允许的最小分片")
+    private Integer chunkSize;
+
+    @Schema(description = "是否正在等待相同内容的上传完成（无需上传分片，轮询上传状态即可）")
+    private Boolean waiting;
+
+    @Schema(description = "未上传分片的预签名直传URL（分片索引 -> PUT URL），仅直传模式返回")
+    private Map<Integer, String> partUploadUrls;
 }
@@ -0,0 +1,18 @@
+package com.neu.easypam.file.vo;
+
+import lombok.Data;
+
+/**
+ * 分片上传整文件 MD5 校验统计（全部节点累计）
+ */
+@Data
+public class ChunkVerifyStatsVO {
+    // 合并次数
+    private Long mergedCount;
+    // 合并时需要回读对象存储补算 MD5 的次数（分片乱序到达、直传分片）
+    private Long fallbackCount;
+    // 补读的字节数
+    private Long fallbackBytes;
+    // 补读比例
+    private Double fallbackRate;
+}
@@ -0,0 +1,13 @@
+package com.neu.easypam.file.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CursorPageVO<T> {
+    private List<T> records;
+    private String nextCursor;  // 下一页游标，没有更多时为空
+    private Boolean hasMore;
+    private Long total;         // 总数，请求时指定 withTotal 才统计
+}
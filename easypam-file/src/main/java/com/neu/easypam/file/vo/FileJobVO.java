@@ -0,0 +1,20 @@
+package com.neu.easypam.file.vo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class FileJobVO {
+    private Long jobId;
+    private String jobType;
+    private Long fileId;
+    private Long resultFileId;      // 复制产生的新文件ID
+    private Integer status;         // 0-排队中 1-执行中 2-已完成 3-失败 4-已取消
+    private Integer totalCount;
+    private Integer processedCount;
+    private Integer progress;       // 进度百分比
+    private String errorMsg;
+    private LocalDateTime createTime;
+    private LocalDateTime finishTime;
+}
@@ -0,0 +1,16 @@
+package com.neu.easypam.file.vo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ZipEntryVO {
+    // 压缩包内路径，目录以 / 结尾
+    private String path;
+    private Boolean directory;
+    // 解压后大小
+    private Long size;
+    private Long compressedSize;
+    private LocalDateTime lastModified;
+}
@@ -9,6 +9,7 @@ import com.neu.easypam.share.vo.ShareVO;
 import com.neu.easypam.share.service.ShareService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
@@ -78,6 +79,13 @@ public class ShareController {
         return Result.success(shareService.saveShare(userId,shareCode,dto));
     }
 
+    @Operation(summary = "以后台任务保存分享到网盘", description = "适用于大文件夹，返回任务ID")
+    @PostMapping("/{shareCode}/save/job")
+    public Result<Long> submitSaveShareJob(@RequestHeader("X-User-Id") Long userId,
+                                           @PathVariable String shareCode, @RequestBody SaveShareDTO dto) {
+        return Result.success(shareService.submitSaveShareJob(userId, shareCode, dto));
+    }
+
     @Operation(summary = "浏览分享文件夹内容")
     @GetMapping("/{shareCode}/list")
     public Result<List<FileInfoDTO>> listShareFolder(
@@ -91,8 +99,10 @@ public class ShareController {
     public void downloadShare(
             @PathVariable String shareCode,
             @RequestParam(value = "fileId", required = false) Long fileId,
+            @RequestParam(value = "format", required = false) String format,
+            HttpServletRequest request,
             HttpServletResponse response) {
-        shareService.downloadShare(shareCode, fileId, response);
+        shareService.downloadShare(shareCode, fileId, format, request, response);
     }
 
 }
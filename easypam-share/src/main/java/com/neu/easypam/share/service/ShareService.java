@@ -52,6 +52,11 @@ public interface ShareService extends IService<ShareInfo> {
 
     FileInfoDTO saveShare(Long userId, String shareCode, SaveShareDTO dto);
 
+    /**
+     * 以后台任务保存分享到网盘（大文件夹），立即返回任务ID，进度通过文件服务的任务接口查询
+     */
+    Long submitSaveShareJob(Long userId, String shareCode, SaveShareDTO dto);
+
     /**
      * 浏览分享文件夹内容
      * @param shareCode 分享码
@@ -60,7 +65,8 @@ public interface ShareService extends IService<ShareInfo> {
     List<FileInfoDTO> listShareFolder(String shareCode, Long folderId);
 
     /**
-     * 下载分享（文件直接下载，文件夹打包ZIP）
+     * 下载分享（文件直接下载并支持断点续传，文件夹打包ZIP；format=tar 时文件夹打包为可断点续传的TAR）
      */
-    void downloadShare(String shareCode, Long fileId, jakarta.servlet.http.HttpServletResponse response);
+    void downloadShare(String shareCode, Long fileId, String format, jakarta.servlet.http.HttpServletRequest request,
+                       jakarta.servlet.http.HttpServletResponse response);
 }
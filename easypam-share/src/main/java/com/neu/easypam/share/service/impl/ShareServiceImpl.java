@@ -17,14 +17,18 @@ import com.neu.easypam.share.vo.ShareVO;
 import com.neu.easypam.share.entity.ShareInfo;
 import com.neu.easypam.share.mapper.ShareMapper;
 import com.neu.easypam.share.service.ShareService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
@@ -41,6 +45,16 @@ public class ShareServiceImpl extends ServiceImpl<ShareMapper, ShareInfo> implem
     private final NotifyProducer notifyProducer;
     private final OperationLogProducer operationLogProducer;
 
+    // 携带分享码，文件服务据此按分享限速
+    private static final String SHARE_CODE_HEADER = "X-Share-Code";
+    // 转发到文件服务的断点续传 / 条件请求头
+    private static final List<String> FORWARD_REQUEST_HEADERS = List.of(
+            "Range", "If-Range", "If-None-Match", "If-Modified-Since");
+    // 从文件服务回传的响应头
+    private static final List<String> FORWARD_RESPONSE_HEADERS = List.of(
+            "Content-Type", "Content-Length", "Content-Range", "Accept-Ranges", "ETag", "Last-Modified",
+            "Cache-Control");
+
     @Value("${share.base-url:http://localhost:8080/share/}")
     private String shareBaseUrl;
 
@@ -284,6 +298,33 @@ public class ShareServiceImpl extends ServiceImpl<ShareMapper, ShareInfo> implem
         return result.getData();
     }
 
+    @Override
+    public Long submitSaveShareJob(Long userId, String shareCode, SaveShareDTO dto) {
+        ShareInfo share = getValidShare(shareCode);
+        if (share.getUserId().equals(userId)) {
+            throw new BusinessException("不能保存自己分享的文件");
+        }
+
+        com.neu.easypam.common.dto.SaveShareDTO saveDto = new com.neu.easypam.common.dto.SaveShareDTO();
+        saveDto.setSourceFileId(share.getFileId());
+        saveDto.setTargetUserId(userId);
+        saveDto.setParentId(dto.getParentId() != null ? dto.getParentId() : 0L);
+
+        Result<Long> result = fileFeignClient.submitSaveShareJob(saveDto);
+        if (result.getCode() != 200 || result.getData() == null) {
+            throw new BusinessException("保存失败：" + result.getMessage());
+        }
+
+        share.setDownloadCount(share.getDownloadCount() + 1);
+        updateById(share);
+
+        operationLogProducer.log(userId, OperationLogMessage.Operation.SAVE_SHARE,
+                "SHARE", share.getId(), shareCode);
+
+        log.info("用户{}提交保存分享{}的后台任务：jobId={}", userId, shareCode, result.getData());
+        return result.getData();
+    }
+
     /**
      * 获取有效的分享记录
      */
@@ -395,7 +436,8 @@ public class ShareServiceImpl extends ServiceImpl<ShareMapper, ShareInfo> implem
     }
 
     @Override
-    public void downloadShare(String shareCode, Long fileId, HttpServletResponse response) {
+    public void downloadShare(String shareCode, Long fileId, String format, HttpServletRequest request,
+                              HttpServletResponse response) {
         ShareInfo share = getValidShare(shareCode);
 
         // 确定要下载的文件ID
@@ -409,10 +451,15 @@ public class ShareServiceImpl extends ServiceImpl<ShareMapper, ShareInfo> implem
         FileInfoDTO fileInfo = getFileInfo(targetFileId);
 
         try {
-            if (fileInfo.getIsFolder() == 1) {
+            if (fileInfo.getIsFolder() == 1 && "tar".equalsIgnoreCase(format)) {
+                // 文件夹：不压缩的 TAR，长度确定，可断点续传
+                proxyDownload("http://easypam-file/file/internal/" + targetFileId + "/download-tar",
+                        "application/x-tar", fileInfo.getFileName() + ".tar", shareCode, request, response);
+            } else if (fileInfo.getIsFolder() == 1) {
                 // 文件夹：通过 RestTemplate 转发流式下载
                 String url = "http://easypam-file/file/internal/" + targetFileId + "/download-zip";
-                restTemplate.execute(url, HttpMethod.GET, null, clientResponse -> {
+                RequestCallback shareCallback = clientRequest -> clientRequest.getHeaders().set(SHARE_CODE_HEADER, shareCode);
+                restTemplate.execute(url, HttpMethod.GET, shareCallback, clientResponse -> {
                     response.setContentType("application/zip");
                     String contentDisposition = clientResponse.getHeaders().getFirst("Content-Disposition");
                     if (contentDisposition != null) {
@@ -425,32 +472,88 @@ public class ShareServiceImpl extends ServiceImpl<ShareMapper, ShareInfo> implem
                     return null;
                 });
             } else {
-                // 文件：通过 RestTemplate 转发流式下载
-                String url = "http://easypam-file/file/internal/" + targetFileId + "/download";
-                restTemplate.execute(url, HttpMethod.GET, null, clientResponse -> {
-                    response.setContentType(fileInfo.getContentType() != null ? 
-                        fileInfo.getContentType() : "application/octet-stream");
-                    String contentDisposition = clientResponse.getHeaders().getFirst("Content-Disposition");
-                    if (contentDisposition != null) {
-                        response.setHeader("Content-Disposition", contentDisposition);
-                    } else {
-                        response.setHeader("Content-Disposition", 
-                            "attachment; filename=\"" + fileInfo.getFileName() + "\"");
-                    }
-                    StreamUtils.copy(clientResponse.getBody(), response.getOutputStream());
-                    return null;
-                });
+                // 文件：重定向模式下直接跳转到对象存储，不经过文件服务和分享服务转发
+                Result<String> redirect = fileFeignClient.getSharedRedirectUrl(targetFileId);
+                if (redirect.getCode() == 200 && redirect.getData() != null) {
+                    response.setHeader("Cache-Control", "no-store");
+                    response.sendRedirect(redirect.getData());
+                } else {
+                    proxyDownload("http://easypam-file/file/internal/" + targetFileId + "/download",
+                            fileInfo.getContentType() != null ? fileInfo.getContentType() : "application/octet-stream",
+                            fileInfo.getFileName(), shareCode, request, response);
+                }
             }
         } catch (Exception e) {
             log.error("下载分享文件失败", e);
             throw new BusinessException("下载失败: " + e.getMessage());
         }
 
+        // 断点续传的后续请求和未变化（304）的校验请求不重复计数
+        if (response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED || !isFirstRange(request.getHeader("Range"))) {
+            return;
+        }
+
         // 增加下载次数
         share.setDownloadCount(share.getDownloadCount() + 1);
         updateById(share);
     }
 
+    /**
+     * 通过 RestTemplate 转发流式下载，透传 Range / If-Range 支持断点续传，透传条件请求头支持 304
+     */
+    private void proxyDownload(String url, String contentType, String fileName, String shareCode,
+                               HttpServletRequest request, HttpServletResponse response) {
+        RequestCallback forwardCallback = clientRequest -> {
+            clientRequest.getHeaders().set(SHARE_CODE_HEADER, shareCode);
+            for (String header : FORWARD_REQUEST_HEADERS) {
+                String value = request.getHeader(header);
+                if (value != null) {
+                    clientRequest.getHeaders().set(header, value);
+                }
+            }
+        };
+        try {
+            restTemplate.execute(url, HttpMethod.GET, forwardCallback, clientResponse -> {
+                response.setStatus(clientResponse.getStatusCode().value());
+                copyHeaders(clientResponse.getHeaders(), response, FORWARD_RESPONSE_HEADERS);
+                if (response.getContentType() == null) {
+                    response.setContentType(contentType);
+                }
+                String contentDisposition = clientResponse.getHeaders().getFirst("Content-Disposition");
+                if (contentDisposition != null) {
+                    response.setHeader("Content-Disposition", contentDisposition);
+                } else {
+                    response.setHeader("Content-Disposition",
+                        "attachment; filename=\"" + fileName + "\"");
+                }
+                StreamUtils.copy(clientResponse.getBody(), response.getOutputStream());
+                return null;
+            });
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode().value() != HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                throw e;
+            }
+            // 区间不可满足，原样返回 416
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            if (e.getResponseHeaders() != null) {
+                copyHeaders(e.getResponseHeaders(), response, List.of("Content-Range"));
+            }
+        }
+    }
+
+    private void copyHeaders(HttpHeaders headers, HttpServletResponse response, List<String> names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                response.setHeader(name, value);
+            }
+        }
+    }
+
+    private boolean isFirstRange(String range) {
+        return range == null || !range.startsWith("bytes=") || range.substring(6).trim().startsWith("0-");
+    }
+
     /**
      * 判断文件是否在分享范围内（是分享文件夹的子文件）
      */
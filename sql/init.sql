@@ -32,7 +32,33 @@ CREATE TABLE IF NOT EXISTS t_file_storage (
     ref_count INT DEFAULT 1 COMMENT '引用计数，为0时可删除实际文件',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-    INDEX idx_md5 (md5)
+    INDEX idx_md5 (md5),
+    INDEX idx_create_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 数据块表（块级内容寻址存储，FastCDC 变长分块）
+CREATE TABLE IF NOT EXISTS t_file_block (
+    id BIGINT PRIMARY KEY,
+    block_hash VARCHAR(64) NOT NULL UNIQUE COMMENT '块内容SHA-256，块寻址的key',
+    storage_path VARCHAR(500) NOT NULL COMMENT 'MinIO存储路径',
+    block_size INT NOT NULL,
+    ref_count INT DEFAULT 0 COMMENT '引用计数，为0的块由定时任务回收',
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_ref_count (ref_count, update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 块清单表（分块存储文件的块组成）
+CREATE TABLE IF NOT EXISTS t_file_storage_block (
+    id BIGINT PRIMARY KEY,
+    storage_id BIGINT NOT NULL COMMENT '关联存储表ID',
+    block_index INT NOT NULL COMMENT '块序号，从0开始',
+    block_id BIGINT NOT NULL COMMENT '关联数据块ID',
+    block_path VARCHAR(500) NOT NULL COMMENT '冗余块存储路径，便于读取',
+    block_offset BIGINT NOT NULL COMMENT '块在文件中的起始偏移',
+    block_size INT NOT NULL,
+    UNIQUE KEY uk_storage_block (storage_id, block_index),
+    INDEX idx_block_id (block_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- 文件表（用户文件元数据，引用存储表）
@@ -40,6 +66,7 @@ CREATE TABLE IF NOT EXISTS t_file (
     id BIGINT PRIMARY KEY,
     user_id BIGINT NOT NULL,
     parent_id BIGINT DEFAULT 0 COMMENT '父文件夹ID，0表示根目录',
+    tree_path VARCHAR(2000) CHARACTER SET ascii COMMENT '物化路径：/祖先ID/.../自身ID/',
     file_name VARCHAR(255) NOT NULL,
     storage_id BIGINT COMMENT '关联存储表ID（文件夹为空）',
     file_path VARCHAR(500) COMMENT '冗余存储路径，便于查询',
@@ -48,13 +75,22 @@ CREATE TABLE IF NOT EXISTS t_file (
     content_type VARCHAR(100),
     md5 VARCHAR(32),
     is_folder TINYINT DEFAULT 0 COMMENT '0-文件 1-文件夹',
+    folder_size BIGINT DEFAULT 0 COMMENT '文件夹内（含子目录）未删除文件总大小，仅文件夹',
+    file_count INT DEFAULT 0 COMMENT '文件夹内（含子目录）未删除文件数量，仅文件夹',
     thumbnail_path VARCHAR(500) COMMENT '缩略图存储路径',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     deleted TINYINT DEFAULT 0 COMMENT '0-正常 1-回收站',
     delete_time DATETIME COMMENT '删除时间（移入回收站时间）',
-    -- 核心索引：文件列表查询 WHERE user_id=? AND parent_id=? AND deleted=0 ORDER BY is_folder DESC, create_time DESC
-    INDEX idx_user_parent_deleted (user_id, parent_id, deleted),
+    -- 文件列表（游标分页）：WHERE user_id=? AND parent_id=? AND deleted=0 AND is_folder=? ORDER BY 排序列, id
+    -- 每种排序一个索引，正序 / 倒序都走同一个索引；前缀同时服务按目录查询
+    INDEX idx_list_create_time (user_id, parent_id, deleted, is_folder, create_time, id),
+    INDEX idx_list_update_time (user_id, parent_id, deleted, is_folder, update_time, id),
+    INDEX idx_list_file_name (user_id, parent_id, deleted, is_folder, file_name, id),
+    INDEX idx_list_file_size (user_id, parent_id, deleted, is_folder, file_size, id),
+    INDEX idx_list_file_type (user_id, parent_id, deleted, is_folder, file_type, id),
+    -- 子树查询 / 更新 / 删除：WHERE user_id=? AND tree_path LIKE '/1/42/%'
+    INDEX idx_user_tree_path (user_id, tree_path),
     -- 秒传检测：WHERE md5=? AND deleted=0
     INDEX idx_md5 (md5),
     -- 回收站清理定时任务：WHERE deleted=1 AND delete_time < ?
@@ -89,7 +125,11 @@ CREATE TABLE IF NOT EXISTS t_chunk_upload (
     file_md5 VARCHAR(32) NOT NULL,
     chunk_size INT NOT NULL COMMENT '每个分片大小(字节)',
     chunk_count INT NOT NULL COMMENT '总分片数',
-    uploaded_chunks VARCHAR(2000) DEFAULT '' COMMENT '已上传分片索引,逗号分隔',
+    uploaded_chunks TEXT COMMENT '已上传分片索引,逗号分隔',
+    storage_path VARCHAR(500) COMMENT '最终对象存储路径',
+    multipart_upload_id VARCHAR(255) COMMENT 'MinIO分片上传会话ID',
+    part_etags TEXT COMMENT '已上传分片ETag,格式 index:etag,逗号分隔',
+    leader_upload_id BIGINT COMMENT '跟随的上传任务ID（相同内容正在上传时加入等待）',
     status TINYINT DEFAULT 0 COMMENT '0-上传中 1-已完成 2-已取消',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
@@ -110,6 +150,43 @@ CREATE TABLE IF NOT EXISTS t_file_version (
     INDEX idx_file_version (file_id, version_num)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- 后台文件任务表（大目录复制 / 删除等分批执行，检查点随每批提交）
+CREATE TABLE IF NOT EXISTS t_file_job (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    job_type VARCHAR(20) NOT NULL COMMENT 'COPY/SAVE_SHARED/TRASH/RESTORE/DELETE/EMPTY_TRASH',
+    file_id BIGINT COMMENT '操作的文件ID，清空回收站为空',
+    target_parent_id BIGINT COMMENT '复制 / 保存分享的目标文件夹ID',
+    result_file_id BIGINT COMMENT '复制产生的新子树根节点ID',
+    result_path VARCHAR(2000) CHARACTER SET ascii COMMENT '复制产生的新子树物化路径，撤销时按前缀删除',
+    result_name VARCHAR(255) COMMENT '复制产生的新子树根节点名称',
+    checkpoint_path VARCHAR(2000) CHARACTER SET ascii COMMENT '复制检查点：最后一个已复制的源节点的相对物化路径',
+    reserved_space BIGINT DEFAULT 0 COMMENT '复制任务预占的已用空间',
+    status TINYINT DEFAULT 0 COMMENT '0-排队中 1-执行中 2-已完成 3-失败 4-已取消',
+    phase TINYINT DEFAULT 0 COMMENT '检查点：0-准备 1-分批处理 2-收尾 3-撤销',
+    cancel_requested TINYINT DEFAULT 0 COMMENT '是否已请求取消',
+    total_count INT DEFAULT 0 COMMENT '需要处理的节点数',
+    processed_count INT DEFAULT 0 COMMENT '已处理的节点数',
+    error_msg VARCHAR(500) COMMENT '失败原因',
+    heartbeat_time DATETIME COMMENT '心跳时间，超时未刷新的任务由其他实例接管',
+    owner_token VARCHAR(100) COMMENT '执行者租约，认领或接管时换发，心跳和检查点按租约更新',
+    finish_time DATETIME,
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_user_create (user_id, create_time),
+    INDEX idx_status_heartbeat (status, heartbeat_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 复制任务的文件夹映射（源文件夹 -> 副本），分批复制时子节点据此找到上级副本，任务结束后删除
+CREATE TABLE IF NOT EXISTS t_file_job_folder (
+    id BIGINT PRIMARY KEY,
+    job_id BIGINT NOT NULL COMMENT '复制任务ID',
+    source_id BIGINT NOT NULL COMMENT '源文件夹ID',
+    copy_id BIGINT NOT NULL COMMENT '副本文件夹ID',
+    copy_path VARCHAR(2000) CHARACTER SET ascii NOT NULL COMMENT '副本文件夹物化路径',
+    UNIQUE KEY uk_job_source (job_id, source_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- 存储空间表
 USE easypam_storage;
 
@@ -0,0 +1,247 @@
+-- ============================================
+-- EasyPam 增量更新脚本 v3
+-- 新增功能：原生分片上传、块级去重存储、秒传布隆过滤器、相同内容并发上传合并、目录物化路径、文件夹统计、后台文件任务、文件列表游标分页
+-- ============================================
+
+USE easypam_file;
+
+-- 1. t_chunk_upload 表新增字段（MinIO 原生分片上传会话）
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_chunk_upload' AND COLUMN_NAME='storage_path');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_chunk_upload ADD COLUMN storage_path VARCHAR(500) COMMENT ''最终对象存储路径'' AFTER uploaded_chunks',
+    'SELECT ''storage_path already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_chunk_upload' AND COLUMN_NAME='multipart_upload_id');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_chunk_upload ADD COLUMN multipart_upload_id VARCHAR(255) COMMENT ''MinIO分片上传会话ID'' AFTER storage_path',
+    'SELECT ''multipart_upload_id already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_chunk_upload' AND COLUMN_NAME='part_etags');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_chunk_upload ADD COLUMN part_etags TEXT COMMENT ''已上传分片ETag,格式 index:etag,逗号分隔'' AFTER multipart_upload_id',
+    'SELECT ''part_etags already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 2. 块级去重存储
+-- 数据块表（块级内容寻址存储，FastCDC 变长分块）
+CREATE TABLE IF NOT EXISTS t_file_block (
+    id BIGINT PRIMARY KEY,
+    block_hash VARCHAR(64) NOT NULL UNIQUE COMMENT '块内容SHA-256，块寻址的key',
+    storage_path VARCHAR(500) NOT NULL COMMENT 'MinIO存储路径',
+    block_size INT NOT NULL,
+    ref_count INT DEFAULT 0 COMMENT '引用计数，为0的块由定时任务回收',
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_ref_count (ref_count, update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 块清单表（分块存储文件的块组成）
+CREATE TABLE IF NOT EXISTS t_file_storage_block (
+    id BIGINT PRIMARY KEY,
+    storage_id BIGINT NOT NULL COMMENT '关联存储表ID',
+    block_index INT NOT NULL COMMENT '块序号，从0开始',
+    block_id BIGINT NOT NULL COMMENT '关联数据块ID',
+    block_path VARCHAR(500) NOT NULL COMMENT '冗余块存储路径，便于读取',
+    block_offset BIGINT NOT NULL COMMENT '块在文件中的起始偏移',
+    block_size INT NOT NULL,
+    UNIQUE KEY uk_storage_block (storage_id, block_index),
+    INDEX idx_block_id (block_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 3. t_file_storage 新增索引（布隆过滤器增量同步）
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file_storage' AND INDEX_NAME='idx_create_time');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file_storage ADD INDEX idx_create_time (create_time)',
+    'SELECT ''idx_create_time already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 4. t_chunk_upload 新增字段（相同内容并发上传合并）
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_chunk_upload' AND COLUMN_NAME='leader_upload_id');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_chunk_upload ADD COLUMN leader_upload_id BIGINT COMMENT ''跟随的上传任务ID（相同内容正在上传时加入等待）'' AFTER part_etags',
+    'SELECT ''leader_upload_id already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 分片数上限为 10000，已上传分片索引可能超过 VARCHAR(2000)
+ALTER TABLE t_chunk_upload MODIFY COLUMN uploaded_chunks TEXT COMMENT '已上传分片索引,逗号分隔';
+
+-- 5. t_file 新增物化路径（子树查询 / 更新 / 删除改为单条范围语句）
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND COLUMN_NAME='tree_path');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD COLUMN tree_path VARCHAR(2000) CHARACTER SET ascii COMMENT ''物化路径：/祖先ID/.../自身ID/'' AFTER parent_id',
+    'SELECT ''tree_path already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_user_tree_path');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_user_tree_path (user_id, tree_path)',
+    'SELECT ''idx_user_tree_path already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 回填已有数据的物化路径（从根目录逐层向下，保持 update_time 不变）
+CREATE TEMPORARY TABLE IF NOT EXISTS tmp_file_tree_path (
+    id BIGINT PRIMARY KEY,
+    tree_path VARCHAR(2000) CHARACTER SET ascii
+);
+INSERT IGNORE INTO tmp_file_tree_path (id, tree_path)
+WITH RECURSIVE tree AS (
+    SELECT id, CAST(CONCAT('/', id, '/') AS CHAR(2000) CHARACTER SET ascii) AS tree_path
+    FROM t_file WHERE parent_id = 0 OR parent_id IS NULL
+    UNION ALL
+    SELECT c.id, CONCAT(t.tree_path, c.id, '/')
+    FROM t_file c JOIN tree t ON c.parent_id = t.id
+)
+SELECT id, tree_path FROM tree;
+UPDATE t_file f JOIN tmp_file_tree_path p ON f.id = p.id
+SET f.tree_path = p.tree_path, f.update_time = f.update_time
+WHERE f.tree_path IS NULL;
+DROP TEMPORARY TABLE tmp_file_tree_path;
+
+-- 6. t_file 新增文件夹统计（大小 / 文件数增量维护，配额校验和展示直接读取）
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND COLUMN_NAME='folder_size');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD COLUMN folder_size BIGINT DEFAULT 0 COMMENT ''文件夹内（含子目录）未删除文件总大小，仅文件夹'' AFTER is_folder',
+    'SELECT ''folder_size already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.COLUMNS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND COLUMN_NAME='file_count');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD COLUMN file_count INT DEFAULT 0 COMMENT ''文件夹内（含子目录）未删除文件数量，仅文件夹'' AFTER folder_size',
+    'SELECT ''file_count already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 按物化路径回填已有文件夹的统计（保持 update_time 不变）
+UPDATE t_file f JOIN (
+    SELECT d.id, COALESCE(SUM(c.file_size), 0) AS folder_size, COUNT(c.id) AS file_count
+    FROM t_file d LEFT JOIN t_file c ON c.user_id = d.user_id
+        AND c.tree_path LIKE CONCAT(d.tree_path, '%') AND c.is_folder = 0 AND c.deleted = 0
+    WHERE d.is_folder = 1 AND d.tree_path IS NOT NULL
+    GROUP BY d.id
+) s ON f.id = s.id
+SET f.folder_size = s.folder_size, f.file_count = s.file_count, f.update_time = f.update_time;
+
+-- 7. 后台文件任务表（大目录复制 / 删除改为后台分批执行）
+CREATE TABLE IF NOT EXISTS t_file_job (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    job_type VARCHAR(20) NOT NULL COMMENT 'COPY/SAVE_SHARED/TRASH/RESTORE/DELETE/EMPTY_TRASH',
+    file_id BIGINT COMMENT '操作的文件ID，清空回收站为空',
+    target_parent_id BIGINT COMMENT '复制 / 保存分享的目标文件夹ID',
+    result_file_id BIGINT COMMENT '复制产生的新子树根节点ID',
+    result_path VARCHAR(2000) CHARACTER SET ascii COMMENT '复制产生的新子树物化路径，撤销时按前缀删除',
+    result_name VARCHAR(255) COMMENT '复制产生的新子树根节点名称',
+    checkpoint_path VARCHAR(2000) CHARACTER SET ascii COMMENT '复制检查点：最后一个已复制的源节点的相对物化路径',
+    reserved_space BIGINT DEFAULT 0 COMMENT '复制任务预占的已用空间',
+    status TINYINT DEFAULT 0 COMMENT '0-排队中 1-执行中 2-已完成 3-失败 4-已取消',
+    phase TINYINT DEFAULT 0 COMMENT '检查点：0-准备 1-分批处理 2-收尾 3-撤销',
+    cancel_requested TINYINT DEFAULT 0 COMMENT '是否已请求取消',
+    total_count INT DEFAULT 0 COMMENT '需要处理的节点数',
+    processed_count INT DEFAULT 0 COMMENT '已处理的节点数',
+    error_msg VARCHAR(500) COMMENT '失败原因',
+    heartbeat_time DATETIME COMMENT '心跳时间，超时未刷新的任务由其他实例接管',
+    owner_token VARCHAR(100) COMMENT '执行者租约，认领或接管时换发，心跳和检查点按租约更新',
+    finish_time DATETIME,
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_user_create (user_id, create_time),
+    INDEX idx_status_heartbeat (status, heartbeat_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 复制任务的文件夹映射（源文件夹 -> 副本），分批复制时子节点据此找到上级副本，任务结束后删除
+CREATE TABLE IF NOT EXISTS t_file_job_folder (
+    id BIGINT PRIMARY KEY,
+    job_id BIGINT NOT NULL COMMENT '复制任务ID',
+    source_id BIGINT NOT NULL COMMENT '源文件夹ID',
+    copy_id BIGINT NOT NULL COMMENT '副本文件夹ID',
+    copy_path VARCHAR(2000) CHARACTER SET ascii NOT NULL COMMENT '副本文件夹物化路径',
+    UNIQUE KEY uk_job_source (job_id, source_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 8. t_file 新增文件列表索引（游标分页，每种排序一个索引），替换被其覆盖的 idx_user_parent_deleted
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_list_create_time');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_list_create_time (user_id, parent_id, deleted, is_folder, create_time, id)',
+    'SELECT ''idx_list_create_time already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_list_update_time');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_list_update_time (user_id, parent_id, deleted, is_folder, update_time, id)',
+    'SELECT ''idx_list_update_time already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_list_file_name');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_list_file_name (user_id, parent_id, deleted, is_folder, file_name, id)',
+    'SELECT ''idx_list_file_name already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_list_file_size');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_list_file_size (user_id, parent_id, deleted, is_folder, file_size, id)',
+    'SELECT ''idx_list_file_size already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_list_file_type');
+SET @sql := IF(@exist = 0, 
+    'ALTER TABLE t_file ADD INDEX idx_list_file_type (user_id, parent_id, deleted, is_folder, file_type, id)',
+    'SELECT ''idx_list_file_type already exists''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exist := (SELECT COUNT(*) FROM information_schema.STATISTICS 
+               WHERE TABLE_SCHEMA='easypam_file' AND TABLE_NAME='t_file' AND INDEX_NAME='idx_user_parent_deleted');
+SET @sql := IF(@exist > 0, 
+    'ALTER TABLE t_file DROP INDEX idx_user_parent_deleted',
+    'SELECT ''idx_user_parent_deleted already dropped''');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- ============================================
+-- 执行完成提示
+-- ============================================
+SELECT '升级完成！t_chunk_upload 表新增字段：storage_path, multipart_upload_id, part_etags, leader_upload_id；新增表：t_file_block, t_file_storage_block；t_file_storage 新增索引：idx_create_time；t_file 新增字段：tree_path, folder_size, file_count，新增索引：idx_user_tree_path；新增表：t_file_job, t_file_job_folder；t_file 新增索引：idx_list_create_time, idx_list_update_time, idx_list_file_name, idx_list_file_size, idx_list_file_type，删除索引：idx_user_parent_deleted' AS result;